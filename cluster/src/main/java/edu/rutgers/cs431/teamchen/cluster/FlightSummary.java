@@ -0,0 +1,213 @@
+package edu.rutgers.cs431.teamchen.cluster;
+
+import edu.rutgers.cs431.teamchen.proto.LatencyHistogram;
+import edu.rutgers.cs431.teamchen.util.ConcurrentHistogram;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Summarises a flight recording of the parking lot, see util.FlightEvents.
+//
+// Prints how long each of the lot's events took, where the threads blocked inside the token stores, and the
+// slowest token acquisitions with how much of each was spent blocked on a token store's lock, waiting for a token
+// to come back or asking peers for one. The JVM only records parks and monitor waits longer than its threshold,
+// 10ms with settings=profile, so the blocked times are at least what they say.
+public class FlightSummary {
+    private static final String LOT_EVENTS = "parkinglot.";
+    private static final String TOKEN_STORES = "edu.rutgers.cs431.teamchen.gate.token.";
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        options.addOption("f", "file", true, "The recording to summarise");
+        options.addOption("n", "top", true, "How many of the slowest token acquisitions to list. Default: 10");
+        options.addOption("h", "help", false, "Print this help message");
+
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("invalid arguments: " + e.toString());
+            System.exit(1);
+        }
+        if (cmd.hasOption("h") || !cmd.hasOption("f")) {
+            new HelpFormatter().printHelp("FlightSummary -f <recording.jfr>", options);
+            System.exit(cmd.hasOption("h") ? 0 : 1);
+        }
+        int top = Integer.parseInt(cmd.getOptionValue("n", "10"));
+
+        System.out.print(summarise(RecordingFile.readAllEvents(Paths.get(cmd.getOptionValue("f"))), top));
+    }
+
+    // how a thread blocked in a token store: waiting for its lock, waiting for a token on its condition, or
+    // parked on something else like a reply
+    private static final String LOCK = "lock";
+    private static final String AWAIT = "await";
+    private static final String PARK = "park";
+
+    // a stretch of a thread blocked in a token store
+    private static class Blocked {
+        final long start;
+        final long end;
+        final String kind;
+
+        Blocked(long start, long end, String kind) {
+            this.start = start;
+            this.end = end;
+            this.kind = kind;
+        }
+    }
+
+    public static String summarise(List<RecordedEvent> events, int top) {
+        Map<String, ConcurrentHistogram> durations = new TreeMap<>();
+        Map<String, Long> counts = new TreeMap<>();
+        Map<String, ConcurrentHistogram> blockedIn = new TreeMap<>();
+        // the token store blocks and the peer calls of each thread
+        Map<Long, List<Blocked>> blocked = new HashMap<>();
+        Map<Long, List<RecordedEvent>> shares = new HashMap<>();
+        ArrayList<RecordedEvent> acquisitions = new ArrayList<>();
+
+        for (RecordedEvent e : events) {
+            String type = e.getEventType().getName();
+            if (type.startsWith(LOT_EVENTS)) {
+                String name = type.substring(LOT_EVENTS.length());
+                if (type.equals("parkinglot.TokenShared") || type.equals("parkinglot.TransferDone") ||
+                        type.equals("parkinglot.CarDeparted")) {
+                    Object result = e.hasField("result") ? e.getValue("result") : e.getValue("succeeded");
+                    name += " " + (result instanceof Boolean ? ((Boolean) result ? "ok" : "failed") : result);
+                }
+                counts.merge(name, 1L, Long::sum);
+                durations.computeIfAbsent(name, k -> new ConcurrentHistogram()).record(micros(e.getDuration()));
+                if (type.equals("parkinglot.TokenAcquired")) {
+                    acquisitions.add(e);
+                } else if (type.equals("parkinglot.TokenShared") && e.getThread() != null) {
+                    shares.computeIfAbsent(e.getThread().getJavaThreadId(), k -> new ArrayList<>()).add(e);
+                }
+                continue;
+            }
+
+            RecordedClass blocker;
+            if (type.equals("jdk.ThreadPark")) {
+                blocker = e.getClass("parkedClass");
+            } else if (type.equals("jdk.JavaMonitorEnter")) {
+                blocker = e.getClass("monitorClass");
+            } else {
+                continue;
+            }
+            String where = tokenStoreFrame(e.getStackTrace());
+            RecordedThread thread = e.getThread();
+            if (where == null || thread == null) {
+                continue;
+            }
+            String blockerName = blocker != null ? blocker.getName() : "";
+            String kind;
+            if (blockerName.endsWith("$ConditionObject")) {
+                kind = AWAIT;
+            } else if (type.equals("jdk.JavaMonitorEnter") || blockerName.endsWith("Sync")) {
+                kind = LOCK;
+            } else {
+                kind = PARK;
+            }
+            String key = kind + " in " + where + (blocker != null ? " on " + simpleName(blockerName) : "");
+            blockedIn.computeIfAbsent(key, k -> new ConcurrentHistogram()).record(micros(e.getDuration()));
+            blocked.computeIfAbsent(thread.getJavaThreadId(), k -> new ArrayList<>()).add(new Blocked(nanos(e
+                    .getStartTime()), nanos(e.getEndTime()), kind));
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("Parking lot events (wall time in ms)\n");
+        out.append(String.format("  %-28s %8s %10s %10s %10s\n", "event", "count", "p50", "p99", "max"));
+        for (Map.Entry<String, ConcurrentHistogram> d : durations.entrySet()) {
+            LatencyHistogram h = d.getValue().snapshot();
+            out.append(String.format("  %-28s %8d %10.3f %10.3f %10.3f\n", d.getKey(), counts.get(d.getKey()),
+                    ms(h.percentile(0.5)), ms(h.percentile(0.99)), ms(h.max)));
+        }
+
+        out.append("\nBlocked in the token stores (ms)\n");
+        if (blockedIn.isEmpty()) {
+            out.append("  nothing over the recording's threshold\n");
+        }
+        for (Map.Entry<String, ConcurrentHistogram> b : blockedIn.entrySet()) {
+            LatencyHistogram h = b.getValue().snapshot();
+            out.append(String.format("  %s: %d times, %.3f total, %.3f max\n", b.getKey(), h.count(), ms(h.sum),
+                    ms(h.max)));
+        }
+
+        acquisitions.sort((a, b) -> b.getDuration().compareTo(a.getDuration()));
+        out.append("\nSlowest token acquisitions (ms)\n");
+        out.append(String.format("  %-16s %-20s %10s %10s %10s %10s\n", "gate", "thread", "took", "on lock",
+                "awaiting", "asking"));
+        for (RecordedEvent e : acquisitions.subList(0, Math.min(top, acquisitions.size()))) {
+            long start = nanos(e.getStartTime());
+            long end = nanos(e.getEndTime());
+            long onLock = 0;
+            long awaiting = 0;
+            long asking = 0;
+            RecordedThread thread = e.getThread();
+            if (thread != null) {
+                for (Blocked b : blocked.getOrDefault(thread.getJavaThreadId(), Collections.emptyList())) {
+                    long overlap = Math.min(end, b.end) - Math.max(start, b.start);
+                    if (overlap > 0 && b.kind.equals(LOCK)) {
+                        onLock += overlap;
+                    } else if (overlap > 0 && b.kind.equals(AWAIT)) {
+                        awaiting += overlap;
+                    }
+                }
+                for (RecordedEvent s : shares.getOrDefault(thread.getJavaThreadId(), Collections.emptyList())) {
+                    long overlap = Math.min(end, nanos(s.getEndTime())) - Math.max(start, nanos(s.getStartTime()));
+                    asking += Math.max(0L, overlap);
+                }
+            }
+            out.append(String.format("  %-16s %-20s %10.3f %10.3f %10.3f %10.3f\n", e.getString("gate"),
+                    thread != null ? thread.getJavaName() : "?", ms(micros(e.getDuration())),
+                    ms(TimeUnit.NANOSECONDS.toMicros(onLock)), ms(TimeUnit.NANOSECONDS.toMicros(awaiting)),
+                    ms(TimeUnit.NANOSECONDS.toMicros(asking))));
+        }
+        return out.toString();
+    }
+
+    // the innermost token store method on the stack, null if the thread wasn't in one
+    private static String tokenStoreFrame(RecordedStackTrace stack) {
+        if (stack == null) {
+            return null;
+        }
+        for (RecordedFrame f : stack.getFrames()) {
+            String cls = f.getMethod().getType().getName();
+            if (cls.startsWith(TOKEN_STORES)) {
+                return simpleName(cls) + "." + f.getMethod().getName();
+            }
+        }
+        return null;
+    }
+
+    private static String simpleName(String cls) {
+        return cls.substring(cls.lastIndexOf('.') + 1);
+    }
+
+    private static long nanos(Instant t) {
+        return TimeUnit.SECONDS.toNanos(t.getEpochSecond()) + t.getNano();
+    }
+
+    private static long micros(Duration d) {
+        return TimeUnit.NANOSECONDS.toMicros(d.toNanos());
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,169 @@
+package edu.rutgers.cs431.teamchen.cluster;
+
+import edu.rutgers.cs431.teamchen.trafficgen.TrafficGen;
+import edu.rutgers.cs431.teamchen.util.LocalTransport;
+import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transports;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+
+// Runs the monitor, the parking space, the gates and the traffic generator in one JVM.
+//
+// The components call each other through a LocalTransport, straight into each other's handlers, so what gets
+// measured is the token strategies and the queues rather than the network. The traffic generator still streams
+// cars to the gates and serves the time over loopback TCP, like it does for remote gates.
+public class Main {
+    private static final long STARTUP_TIMEOUT_IN_MILLISECONDS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption("g", "gates", true, "The number of gates. Default: 6");
+        options.addOption("s", "strategy", true, "The strategy to distribute tokens within the system, see the " +
+                "monitor. Default: 2");
+        options.addOption("pc", "parking-cap", true, "The parking capacity of the parking lot. Default: 200");
+        options.addOption("td", "transfer-duration", true, "The time it takes to transfer the car to the parking " +
+                "space. Default: 6000ms");
+        options.addOption("qb", "queue-bound", true, "The most cars waiting at a gate. Default: 0, no limit");
+        options.addOption("ts", "time-scale", true, "How many times faster than real time the simulated clock " +
+                "runs. Default: 1");
+        options.addOption("st", "staying-time", true, "How long a car stays parked in simulated seconds. " +
+                "Default: 7200");
+        options.addOption("lp", "load-profile", true, "The arrival rate over time, see the traffic generator. " +
+                "Default: steady:5");
+        options.addOption("r", "routing", true, "How cars pick a gate: random, p2c or jsq. Default: random");
+        options.addOption("bp", "base-port", true, "The monitor's http port, the parking space and the gates " +
+                "take the ports after it. Default: 9000");
+        options.addOption("net", "network", false, "Call between components over the network like separate " +
+                "processes do");
+        options.addOption("hg", "host-gates", false, "Run the gates in one GateHost sharing an http port, a clock " +
+                "and a car stream reader");
+        options.addOption("h", "help", false, "Print this help message");
+
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("invalid arguments: " + e.toString());
+            System.exit(1);
+        }
+        if (cmd.hasOption("h")) {
+            new HelpFormatter().printHelp("cluster", options);
+            System.exit(0);
+        }
+
+        String strategy = cmd.getOptionValue("s", "2");
+        String parkingCap = cmd.getOptionValue("pc", "200");
+        String transferDuration = cmd.getOptionValue("td", "6000");
+        String queueBound = cmd.getOptionValue("qb", "0");
+        int gates = Integer.parseInt(cmd.getOptionValue("g", "6"));
+        int basePort = Integer.parseInt(cmd.getOptionValue("bp", "9000"));
+        int parkingSpacePort = basePort + 1;
+        String monitorHttpAddr = "http://localhost:" + basePort;
+        String timeService = "localhost:" + SystemConfig.TRAFFIC_GENERATOR_CHRONOS_SERVICE_PORT;
+
+        if (!cmd.hasOption("net")) {
+            Transports.set(new LocalTransport(Transports.get()));
+        }
+
+        start("monitor", () -> edu.rutgers.cs431.teamchen.monitor.Main.main(new String[]{
+                "-http", Integer.toString(basePort),
+                "-s", strategy,
+                "-maxg", Integer.toString(gates),
+                "-pc", parkingCap}));
+        awaitService(basePort);
+        awaitPort(SystemConfig.MONITOR_ROSTER_PROTOBUF_SERVICE_PORT);
+
+        // the generator returns once its threads run
+        ArrayList<String> trafficArgs = new ArrayList<>();
+        trafficArgs.add("-m");
+        trafficArgs.add(monitorHttpAddr);
+        for (String opt : new String[]{"ts", "st", "lp", "r"}) {
+            if (cmd.hasOption(opt)) {
+                trafficArgs.add("-" + opt);
+                trafficArgs.add(cmd.getOptionValue(opt));
+            }
+        }
+        trafficArgs.add("localhost");
+        TrafficGen.main(trafficArgs.toArray(new String[0]));
+        awaitPort(SystemConfig.TRAFFIC_GENERATOR_CHRONOS_SERVICE_PORT);
+
+        // returns once the parking space is registered, the gates can't register before
+        edu.rutgers.cs431.teamchen.parkingspace.Main.main(new String[]{
+                "-m", monitorHttpAddr + "/",
+                "-http", Integer.toString(parkingSpacePort),
+                "-ts", timeService});
+
+        if (cmd.hasOption("hg")) {
+            int httpPort = basePort + 10;
+            start("gates", () -> edu.rutgers.cs431.teamchen.gate.Main.main(new String[]{
+                    "-m", monitorHttpAddr,
+                    "-n", Integer.toString(gates),
+                    "-http", Integer.toString(httpPort),
+                    "-acp", Integer.toString(httpPort + 1),
+                    "-td", transferDuration,
+                    "-qb", queueBound,
+                    "-ts", timeService}));
+            awaitService(httpPort);
+        } else {
+            for (int i = 0; i < gates; i++) {
+                int httpPort = basePort + 10 + 2 * i;
+                int carPort = httpPort + 1;
+                start("gate-" + i, () -> edu.rutgers.cs431.teamchen.gate.Main.main(new String[]{
+                        "-m", monitorHttpAddr,
+                        "-http", Integer.toString(httpPort),
+                        "-acp", Integer.toString(carPort),
+                        "-td", transferDuration,
+                        "-qb", queueBound,
+                        "-ts", timeService}));
+                awaitService(httpPort);
+            }
+        }
+        System.out.println("Cluster of " + gates + " gates is up" + (cmd.hasOption("net") ? "." : ", calling " +
+                "in memory."));
+    }
+
+    private interface Component {
+        void run() throws Exception;
+    }
+
+    private static void start(String name, Component component) {
+        new Thread(() -> {
+            try {
+                component.run();
+            } catch (Exception e) {
+                System.err.println(name + " stopped: " + e);
+            }
+        }, name).start();
+    }
+
+    // waits until a service of this JVM serves the http port
+    private static void awaitService(int httpPort) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_IN_MILLISECONDS;
+        while (!LocalTransport.serves(httpPort)) {
+            if (System.currentTimeMillis() > deadline) {
+                System.err.println("no service came up on port " + httpPort);
+                System.exit(1);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitPort(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_IN_MILLISECONDS;
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    System.err.println("nothing listens on port " + port);
+                    System.exit(1);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package edu.rutgers.cs431.teamchen.cluster;
+
+import edu.rutgers.cs431.teamchen.util.FlightEvents;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+public class FlightSummaryTest {
+
+    @Test
+    public void testSummarisesTheLotEvents() throws Exception {
+        Path file = Files.createTempFile("parkinglot", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightEvents.TokenAcquired.class);
+            recording.enable(FlightEvents.TokenShared.class);
+            recording.start();
+
+            for (int i = 0; i < 3; i++) {
+                FlightEvents.TokenAcquired acquired = new FlightEvents.TokenAcquired();
+                acquired.begin();
+                FlightEvents.TokenShared shared = new FlightEvents.TokenShared();
+                shared.begin();
+                Thread.sleep(20);
+                shared.end();
+                shared.peer = "http://localhost:9002";
+                shared.result = i == 0 ? "token" : "empty";
+                shared.commit();
+                acquired.end();
+                acquired.gate = "gate:" + i;
+                acquired.simulatedWait = 1200;
+                acquired.commit();
+            }
+
+            recording.stop();
+            recording.dump(file);
+            String summary = FlightSummary.summarise(RecordingFile.readAllEvents(file), 2);
+
+            Assert.assertTrue(summary, summary.matches("(?s).*\n  TokenAcquired +3 .*"));
+            Assert.assertTrue(summary, summary.matches("(?s).*\n  TokenShared empty +2 .*"));
+            Assert.assertTrue(summary, summary.matches("(?s).*\n  TokenShared token +1 .*"));
+            // the two slowest, each spent asking its peer
+            String slowest = summary.substring(summary.indexOf("Slowest token acquisitions"));
+            Assert.assertEquals(slowest, 4, slowest.split("\n").length);
+            Assert.assertTrue(slowest, slowest.matches("(?s).*gate:\\d .* 2\\d\\.\\d{3}\n.*"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
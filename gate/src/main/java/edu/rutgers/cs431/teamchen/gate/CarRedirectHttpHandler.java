@@ -0,0 +1,27 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectRequest;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectResponse;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+public class CarRedirectHttpHandler implements HttpHandler {
+
+    private final Gate gate;
+
+    public CarRedirectHttpHandler(Gate gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        CarRedirectRequest req = Wire.readRequest(ex, CarRedirectRequest.class, Codecs.CAR_REDIRECT_REQUEST);
+        CarRedirectResponse resp = gate.onCarRedirected(req);
+        Wire.sendResponse(ex, HttpURLConnection.HTTP_OK, resp, Codecs.CAR_REDIRECT_RESPONSE);
+    }
+}
@@ -0,0 +1,202 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import com.google.protobuf.CodedInputStream;
+import edu.rutgers.cs431.TrafficGeneratorProto.Car;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Accepts and reads the car streams of every gate of a GateHost on one selector thread.
+//
+// The streams carry the same delimited cars a gate of its own reads with Car.parseDelimitedFrom, they are cut
+// out of each connection's buffer as soon as a whole one is in.
+class CarStreamReader implements Runnable {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // a car is a couple of varints, anything this big is a broken stream
+    private static final int MAX_CAR_SIZE = 1024 * 1024;
+
+    private final Selector selector;
+    // the car ports waiting to be registered by the selector thread
+    private final ConcurrentLinkedQueue<Listener> pending = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Listener> listeners = new ConcurrentHashMap<>();
+
+    CarStreamReader() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    // accepts car streams on the port, every car goes to the gate's callback
+    void listen(int port, Consumer<Car> gate) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", port));
+        server.configureBlocking(false);
+        Listener l = new Listener(server, gate);
+        listeners.put(port, l);
+        pending.add(l);
+        selector.wakeup();
+    }
+
+    // stops taking cars on the port, the streams already open are dropped on their next read
+    void close(int port) {
+        Listener l = listeners.remove(port);
+        if (l == null) {
+            return;
+        }
+        l.closed = true;
+        try {
+            l.server.close();
+        } catch (IOException e) {
+            System.err.println("WARNING: Unable to close the car port " + port + ": " + e.getMessage());
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Listener l;
+                while ((l = pending.poll()) != null) {
+                    if (!l.closed) {
+                        l.server.register(selector, SelectionKey.OP_ACCEPT, l);
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((Listener) key.attachment());
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: car stream reader stopped: " + e.getMessage());
+        } catch (ClosedSelectorException e) {
+            // closed
+        }
+    }
+
+    private void accept(Listener l) {
+        try {
+            SocketChannel ch = l.server.accept();
+            if (ch == null) {
+                return;
+            }
+            ch.configureBlocking(false);
+            ch.register(selector, SelectionKey.OP_READ, new Stream(l));
+        } catch (IOException e) {
+            System.err.println("WARNING: Problem accepting a new car stream: " + e.getMessage());
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel ch = (SocketChannel) key.channel();
+        Stream s = (Stream) key.attachment();
+        try {
+            int n = ch.read(s.in);
+            if (n < 0 || s.listener.closed) {
+                drop(key);
+                return;
+            }
+            s.cutCars();
+        } catch (IOException e) {
+            System.err.println("WARNING: Problem reading a car stream: " + e.getMessage());
+            drop(key);
+        }
+    }
+
+    private static void drop(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.err.println("WARNING: Problem closing traffic generator socket: " + e.getMessage());
+        }
+    }
+
+    private static class Listener {
+        final ServerSocketChannel server;
+        final Consumer<Car> gate;
+        volatile boolean closed = false;
+
+        Listener(ServerSocketChannel server, Consumer<Car> gate) {
+            this.server = server;
+            this.gate = gate;
+        }
+    }
+
+    private static class Stream {
+        final Listener listener;
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        Stream(Listener listener) {
+            this.listener = listener;
+        }
+
+        // hands every whole car in the buffer to the gate and keeps the partial one
+        void cutCars() throws IOException {
+            in.flip();
+            byte[] buf = in.array();
+            while (true) {
+                int start = in.position();
+                int size = 0;
+                int shift = 0;
+                int pos = start;
+                boolean sized = false;
+                while (pos < in.limit() && shift < 35) {
+                    byte b = buf[pos++];
+                    size |= (b & 0x7f) << shift;
+                    shift += 7;
+                    if (b >= 0) {
+                        sized = true;
+                        break;
+                    }
+                }
+                if (!sized) {
+                    if (shift >= 35) {
+                        throw new IOException("malformed car size");
+                    }
+                    break;
+                }
+                if (size < 0 || size > MAX_CAR_SIZE) {
+                    throw new IOException("car of " + size + " bytes");
+                }
+                if (in.limit() - pos < size) {
+                    if (pos - start + size > in.capacity()) {
+                        grow(pos - start + size);
+                        return;
+                    }
+                    break;
+                }
+                listener.gate.accept(Car.parseFrom(CodedInputStream.newInstance(buf, pos, size)));
+                in.position(pos + size);
+            }
+            in.compact();
+        }
+
+        // makes room for a car bigger than the buffer, keeping the unread bytes
+        private void grow(int needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, in.capacity() * 2));
+            bigger.put(in);
+            in = bigger;
+        }
+    }
+}
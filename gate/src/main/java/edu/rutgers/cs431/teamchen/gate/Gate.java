@@ -1,28 +1,67 @@
 package edu.rutgers.cs431.teamchen.gate;
 
 
-import com.sun.net.httpserver.HttpServer;
 import edu.rutgers.cs431.TrafficGeneratorProto.Car;
 import edu.rutgers.cs431.teamchen.gate.token.DistributedTokenStore;
 import edu.rutgers.cs431.teamchen.gate.token.NoShareTokenStore;
+import edu.rutgers.cs431.teamchen.gate.token.TokenPool;
 import edu.rutgers.cs431.teamchen.gate.token.TokenStore;
 import edu.rutgers.cs431.teamchen.proto.CarWithToken;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectRequest;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectResponse;
+import edu.rutgers.cs431.teamchen.proto.GateHeartbeatRequest;
 import edu.rutgers.cs431.teamchen.proto.GateRegisterRequest;
 import edu.rutgers.cs431.teamchen.proto.GateRegisterResponse;
-import edu.rutgers.cs431.teamchen.util.DataFormatter;
+import edu.rutgers.cs431.teamchen.proto.LatencyHistogram;
+import edu.rutgers.cs431.teamchen.proto.TokenGrantRequest;
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+import edu.rutgers.cs431.teamchen.proto.TokenReleaseResponse;
+import edu.rutgers.cs431.teamchen.proto.TokenTransferResponse;
+import edu.rutgers.cs431.teamchen.util.ConcurrentHistogram;
+import edu.rutgers.cs431.teamchen.util.EventLog;
+import edu.rutgers.cs431.teamchen.util.FlightEvents;
 import edu.rutgers.cs431.teamchen.util.GateAddressBook;
+import edu.rutgers.cs431.teamchen.util.MetricsRegistry;
+import edu.rutgers.cs431.teamchen.util.ServiceHost;
+import edu.rutgers.cs431.teamchen.util.SlidingWindowCounter;
 import edu.rutgers.cs431.teamchen.util.SyncClock;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.TraceBuffer;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class Gate implements Runnable {
+    private static final int REDIRECT_THREADS = 4;
+    // the address book holds the gate's left and right neighbours on the ring, a car is offered to no others
+    private static final int REDIRECT_NEIGHBOURS = 2;
+    // the rates in the stats are over this many seconds
+    private static final int RATE_WINDOW_SECONDS = 60;
+    // how many times a gate offers tokens to a peer that doesn't answer
+    private static final int GRANT_ATTEMPTS = 3;
+    // how many of the latest grants a gate remembers to tell retries apart from new grants
+    private static final int GRANTS_REMEMBERED = 1024;
 
     public static boolean ErrorFlag = false;
     // port to listen to cars from traffic generator
@@ -33,39 +72,134 @@ public class Gate implements Runnable {
     private final long transferDuration;
     // the carsAcceptor's waiting queue
     private final Queue<CarArrival> waitingQueue;
+    // the most cars the waiting queue holds, 0 for no limit
+    private final int queueBound;
+    // the cars in or promised a place in the waiting queue
+    private final AtomicInteger queued = new AtomicInteger(0);
+    // hands the cars that don't fit in the waiting queue to the neighbours
+    private final ThreadPoolExecutor redirector;
+    // how many more cars each neighbour said it could take, to try the one with the most headroom first
+    private final ConcurrentHashMap<URL, Integer> neighbourHeadroom = new ConcurrentHashMap<>();
+    private final AtomicLong carsRedirectedCount = new AtomicLong(0L);
+    private final AtomicLong carsDroppedCount = new AtomicLong(0L);
     private final Lock waitingQLock = new ReentrantLock();
     private final Condition queueNotEmpty = waitingQLock.newCondition();
     private final MonitorConnection monitorConn;
     private final GateAddressBook gateAddressBook = new GateAddressBook();
     protected int gateWithErrorPort = 0;
-    private SyncClock clock;
-    private TokenStore tokenStore;
+    private final ScheduledExecutorService heartbeatExecutor;
+    private ScheduledFuture<?> heartbeat;
+    // the number of the latest heartbeat
+    private final AtomicLong heartbeatSeq = new AtomicLong(0L);
+    private final SyncClock clock;
+    // the host this gate shares its services with, null if the gate runs on its own
+    private final GateHost host;
+    // the path the gate's contexts are served under, empty if the gate has the whole http service
+    private final String httpPath;
+    private volatile boolean stopped = false;
+    private volatile Thread processingThread;
+    private final MetricsRegistry.Histogram tokenWaitMetric;
+    private final MetricsRegistry.Histogram waitingTimeMetric;
+    private final MetricsRegistry.Histogram transferMetric;
+    private final MetricsRegistry.Histogram parkingSpaceCallMetric;
+    private final MetricsRegistry.Counter departuresMetric;
+    private final MetricsRegistry.Counter expiredMetric;
+    private volatile TokenStore tokenStore;
+    // the id the monitor knows this gate by
+    private String gateId;
     private ParkingSpaceConnection parkingSpaceConn;
-    private volatile long totalWaitingTime = 0L;
-    private volatile int carsProcessedCount = 0;
-    private HttpServer httpServer;
+    private final AtomicLong totalWaitingTime = new AtomicLong(0L);
+    private final AtomicInteger carsProcessedCount = new AtomicInteger(0);
+    // simulated milliseconds in the queue and at its head waiting for a token, for every car
+    private final ConcurrentHistogram queueWait = new ConcurrentHistogram();
+    private final ConcurrentHistogram tokenWait = new ConcurrentHistogram();
+    private final SlidingWindowCounter arrivals = new SlidingWindowCounter(RATE_WINDOW_SECONDS);
+    private final SlidingWindowCounter processed = new SlidingWindowCounter(RATE_WINDOW_SECONDS);
+    // the gate's stages in the traces, the gates of a host share a buffer
+    private final String traceComponent;
+    private final AtomicLong carsArrivedCount = new AtomicLong(0L);
+    // the ids of the latest grants added to the token store
+    private final Set<Long> grantsApplied = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > GRANTS_REMEMBERED;
+        }
+    });
+    private ServiceHost httpServer;
     private ServerSocket carsAcceptor;
     private volatile long lastTimeProcessedCar = 0L;
 
     public Gate(String monitorHttpAddr, int gatePort, int httpPort, long tranferDuration, String trafGenAddr, int
             trafGenPort) {
+        this(monitorHttpAddr, gatePort, httpPort, tranferDuration, trafGenAddr, trafGenPort, false);
+    }
+
+    public Gate(String monitorHttpAddr, int gatePort, int httpPort, long tranferDuration, String trafGenAddr, int
+            trafGenPort, boolean timeBeacons) {
+        this(monitorHttpAddr, gatePort, httpPort, tranferDuration, trafGenAddr, trafGenPort, timeBeacons, 0);
+    }
+
+    public Gate(String monitorHttpAddr, int gatePort, int httpPort, long tranferDuration, String trafGenAddr, int
+            trafGenPort, boolean timeBeacons, int queueBound) {
+        this(null, "", monitorHttpAddr, gatePort, httpPort, tranferDuration, queueBound,
+                newClock(trafGenAddr, trafGenPort, timeBeacons), Executors.newSingleThreadScheduledExecutor());
+    }
+
+    // a gate that shares the host's http service, clock and scheduler, served under httpPath
+    Gate(GateHost host, String httpPath, String monitorHttpAddr, int gatePort, long tranferDuration, int queueBound) {
+        this(host, httpPath, monitorHttpAddr, gatePort, host.getHttpServer().getAddress().getPort(), tranferDuration,
+                queueBound, host.getClock(), host.getScheduler());
+    }
+
+    Gate(GateHost host, String httpPath, String monitorHttpAddr, int gatePort, int httpPort, long
+            tranferDuration, int queueBound, SyncClock clock, ScheduledExecutorService heartbeatExecutor) {
         if (!ErrorFlag && gateWithErrorPort == 0 && Math.random() > 0.5) {
             ErrorFlag = true;
             gateWithErrorPort = gatePort;
         }
 
         this.waitingQueue = new ConcurrentLinkedQueue<CarArrival>();
+        this.queueBound = queueBound;
+        // a car that can't even wait for a redirect is dropped
+        this.redirector = new ThreadPoolExecutor(1, REDIRECT_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueBound)), (task, executor) -> {
+            carsDroppedCount.incrementAndGet();
+            reportError("gate is full and so is its redirect queue, dropping a car");
+        });
+        // no thread sits idle between overflows, which adds up with many gates in a host
+        this.redirector.allowCoreThreadTimeOut(true);
         this.gateTcpPort = gatePort;
         this.gateHttpPort = httpPort;
         this.transferDuration = tranferDuration;
-
-        // set up the time service
-        try {
-            this.clock = new SyncClock(trafGenAddr, trafGenPort);
-        } catch (IOException e) {
-            reportError("unable to set up clock synchronization: " + e.getMessage());
-            System.exit(1);
-        }
+        this.host = host;
+        this.httpPath = httpPath;
+        this.clock = clock;
+        this.heartbeatExecutor = heartbeatExecutor;
+        this.traceComponent = "gate:" + gatePort;
+
+        // the gates of a host tell their metrics apart by their car port
+        MetricsRegistry metrics = MetricsRegistry.get();
+        String gate = Integer.toString(gatePort);
+        this.tokenWaitMetric = metrics.histogram("gate_token_wait_ms", "Simulated time a car at the head of the " +
+                "queue waited for a token", "gate", gate);
+        this.waitingTimeMetric = metrics.histogram("gate_waiting_time_ms", "Simulated time a car spent at the " +
+                "gate before it got a token or left", "gate", gate);
+        this.transferMetric = metrics.histogram("gate_transfer_ms", "Time from a car getting a token to the " +
+                "parking space taking it", "gate", gate);
+        this.parkingSpaceCallMetric = metrics.histogram("gate_parking_space_call_us", "Latency of handing a car " +
+                "to the parking space", "gate", gate);
+        this.departuresMetric = metrics.counter("gate_cars_departed_total", "Cars that left the parking lot " +
+                "through the gate", "gate", gate);
+        this.expiredMetric = metrics.counter("gate_cars_expired_total", "Cars whose departure time passed " +
+                "while they waited", "gate", gate);
+        metrics.gauge("gate_queue_length", "Cars waiting at the gate", queued::get, "gate", gate);
+        metrics.counter("gate_cars_arrived_total", "Cars queued at the gate", carsArrivedCount::get, "gate", gate);
+        metrics.counter("gate_cars_processed_total", "Cars taken off the queue", carsProcessedCount::get, "gate",
+                gate);
+        metrics.counter("gate_cars_redirected_total", "Cars handed to a neighbour", carsRedirectedCount::get,
+                "gate", gate);
+        metrics.counter("gate_cars_dropped_total", "Cars no gate had room for", carsDroppedCount::get, "gate",
+                gate);
 
         MonitorConnection mc = null;
         try {
@@ -77,12 +211,25 @@ public class Gate implements Runnable {
         this.monitorConn = mc;
     }
 
+    // set up the time service
+    private static SyncClock newClock(String trafGenAddr, int trafGenPort, boolean timeBeacons) {
+        try {
+            return new SyncClock(trafGenAddr, trafGenPort, timeBeacons);
+        } catch (IOException e) {
+            reportError("unable to set up clock synchronization: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    // through the event log like log, so warnings keep their place among the car lines too
     private static void reportError(String msg) {
-        System.err.println("WARNING: " + msg);
+        EventLog.warning(msg);
     }
 
+    // through the event log, so it keeps its place among the car lines
     private static void log(String msg) {
-        System.out.println("INFO: " + msg);
+        EventLog.info(msg);
     }
 
     public long getLastTimeProcessedCar() {
@@ -95,23 +242,60 @@ public class Gate implements Runnable {
     }
 
     public long getTotalWaitingTime() {
-        return totalWaitingTime;
+        return totalWaitingTime.get();
     }
 
     public int getCarsProcessedCount() {
-        return carsProcessedCount;
+        return carsProcessedCount.get();
     }
 
-    // registers with the monitor then sets up the state in order to start processing
-    public void registerThenInit() {
-        GateRegisterRequest req = null;
+    public LatencyHistogram getQueueWait() {
+        return queueWait.snapshot();
+    }
+
+    public LatencyHistogram getTokenWait() {
+        return tokenWait.snapshot();
+    }
+
+    // cars per second
+    public double getArrivalRate() {
+        return arrivals.rate();
+    }
+
+    public double getProcessRate() {
+        return processed.rate();
+    }
+
+    public long getCarsArrivedCount() {
+        return carsArrivedCount.get();
+    }
+
+    public int getQueueLength() {
+        return queued.get();
+    }
+
+    public long getCarsRedirectedCount() {
+        return carsRedirectedCount.get();
+    }
+
+    public long getCarsDroppedCount() {
+        return carsDroppedCount.get();
+    }
+
+    private GateRegisterRequest registerRequest() {
         try {
-            req = new GateRegisterRequest(
-                    InetAddress.getLocalHost().getHostName(), this.gateTcpPort, this.gateHttpPort);
+            return new GateRegisterRequest(
+                    InetAddress.getLocalHost().getHostName(), this.gateTcpPort, this.gateHttpPort, this.httpPath);
         } catch (UnknownHostException e) {
             reportError("can't identify localhost: " + e.getMessage());
             System.exit(1);
+            return null;
         }
+    }
+
+    // registers with the monitor then sets up the state in order to start processing
+    public void registerThenInit() {
+        GateRegisterRequest req = registerRequest();
         GateRegisterResponse resp = null;
         try {
             resp = this.monitorConn.registersGate(req);
@@ -133,28 +317,173 @@ public class Gate implements Runnable {
         // set up the token distribution strategy
         switch (resp.strategy) {
             case GateRegisterResponse.STRATEGY_NO_SHARED:
-                this.tokenStore = new NoShareTokenStore(resp.tokens);
+                this.tokenStore = new NoShareTokenStore(TokenPool.of(resp.tokens));
                 break;
             case GateRegisterResponse.STRATEGY_DISTRIBUTED:
-                this.tokenStore = new DistributedTokenStore(resp.tokens, gateAddressBook, this.httpServer);
+                this.tokenStore = new DistributedTokenStore(TokenPool.of(resp.tokens), gateAddressBook, this.httpServer,
+                        this.httpPath);
                 break;
         }
+
+        this.gateId = resp.gateId;
+        this.heartbeat = heartbeatExecutor.scheduleWithFixedDelay(() -> this.sendHeartbeat(), 0,
+                SystemConfig.GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
     }
 
-    // starts an http server
-    public void http() {
+    // tells the monitor this gate is still alive along with the tokens it holds
+    private void sendHeartbeat() {
         try {
-            httpServer = HttpServer.create();
-            httpServer.bind(new InetSocketAddress("localhost", this.gateHttpPort), SystemConfig
-                    .MAXIMUM_HTTP_CONNECTIONS/**/);
+            long seq = this.heartbeatSeq.incrementAndGet();
+            TokenPool.Report report = this.tokenStore.report(seq);
+            GateHeartbeatRequest req = new GateHeartbeatRequest(this.gateId, report.tokens);
+            req.reserved = report.reserved;
+            req.seq = seq;
+            req.queueLength = this.getQueueLength();
+            switch (this.monitorConn.heartbeat(req)) {
+                case DEAD:
+                    // our tokens have been handed to the other gates, keeping on would duplicate them
+                    reportError("the monitor has declared this gate dead, shutting down");
+                    this.shutDown();
+                    return;
+                case UNKNOWN:
+                    this.registerAgain();
+                    return;
+                case OK:
+                    this.tokenStore.reportAcked(seq);
+            }
         } catch (IOException e) {
-            reportError("unable to create the http service for gate: " + e.getMessage());
+            reportError("unable to send heartbeat to the monitor: " + e.getMessage());
+        }
+    }
+
+    // registers with a monitor that restarted and lost this gate, the next heartbeat tells it the tokens. The
+    // tokens the gate holds are already its share of the lot, the ones the new monitor hands out are left alone
+    // rather than counted twice
+    private void registerAgain() {
+        try {
+            GateRegisterResponse resp = this.monitorConn.registersGate(this.registerRequest());
+            this.gateId = resp.gateId;
+            log("The monitor didn't know this gate, registered again as " + resp.gateId);
+        } catch (IOException | RuntimeException e) {
+            reportError("unable to register this Gate again: " + e.getMessage());
+        }
+    }
+
+    // stops the gate for good: the whole process if the gate runs on its own, otherwise the gate stops taking and
+    // processing cars and leaves the host's other gates be
+    private void shutDown() {
+        if (this.host == null) {
             System.exit(1);
         }
-        httpServer.createContext(SystemConfig.GATE_GET_STATS_PATH, new GateStatsHttpHandler(this));
-        httpServer.createContext(SystemConfig.GATE_PEER_ADDRESS_CHANGE_PATH, this.gateAddressBook);
-        httpServer.createContext(SystemConfig.GATE_CAR_LEAVING_PATH, new CarLeavingHttpHandler(this));
-        httpServer.start();
+        this.stopped = true;
+        this.heartbeat.cancel(false);
+        this.host.getCarStreams().close(this.gateTcpPort);
+        Thread t = this.processingThread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    // adds the tokens the monitor or a peer granted to this gate, once per grant id,
+    // returns false if the gate has no token store yet
+    public boolean onTokensGranted(ArrayList<TokenRange> tokens, long grantId) {
+        TokenStore store = this.tokenStore;
+        if (store == null) {
+            return false;
+        }
+        synchronized (this.grantsApplied) {
+            if (grantId != 0L && !this.grantsApplied.add(grantId)) {
+                // a retry of a grant whose answer got lost
+                return true;
+            }
+            store.addTokens(tokens);
+        }
+        log("Granted " + TokenRange.count(tokens) + " tokens");
+        return true;
+    }
+
+    // hands at most n free tokens to the gate at @param toGateHttpAddr, returns the tokens that left this gate and
+    // how many of them moved, or null if the gate has no token store yet
+    public TokenTransferResponse onTokenTransfer(long n, String toGateHttpAddr) {
+        TokenStore store = this.tokenStore;
+        if (store == null) {
+            return null;
+        }
+        TokenTransferResponse resp = new TokenTransferResponse();
+        URL peer;
+        try {
+            peer = new URL(toGateHttpAddr);
+        } catch (MalformedURLException e) {
+            reportError("can't move tokens to gate " + toGateHttpAddr + ": " + e.getMessage());
+            return resp;
+        }
+        ArrayList<TokenRange> released = store.releaseTokens(n);
+        // read after the release, so the monitor keeps the tokens out of every heartbeat that might have them
+        resp.seq = this.heartbeatSeq.get();
+        if (released.size() == 0) {
+            return resp;
+        }
+        // the monitor counts them as gone even if they come back: they may come back spendable
+        resp.tokens = released;
+        TokenGrantRequest grant = new TokenGrantRequest(released);
+        IOException unanswered = null;
+        for (int i = 0; i < GRANT_ATTEMPTS; i++) {
+            try {
+                if (!PeerConnection.grantTokens(peer, grant)) {
+                    reportError("gate " + toGateHttpAddr + " refused the tokens, keeping them");
+                    store.addTokens(released);
+                    return resp;
+                }
+                resp.moved = TokenRange.count(released);
+                log("Moved " + resp.moved + " tokens to gate " + toGateHttpAddr);
+                return resp;
+            } catch (IOException e) {
+                unanswered = e;
+            }
+        }
+        // the peer may have added them before its answer got lost, keeping them too could duplicate them
+        reportError("gate " + toGateHttpAddr + " didn't answer a grant of " + TokenRange.count(released) + " tokens, " +
+                "giving them up: " + unanswered.getMessage());
+        return resp;
+    }
+
+    // gives up at most n free tokens for the monitor to hand to another gate,
+    // returns null if the gate has no token store yet
+    public TokenReleaseResponse onTokensReleased(long n) {
+        TokenStore store = this.tokenStore;
+        if (store == null) {
+            return null;
+        }
+        TokenReleaseResponse resp = new TokenReleaseResponse();
+        resp.tokens = store.releaseTokens(n);
+        resp.seq = this.heartbeatSeq.get();
+        log("Released " + TokenRange.count(resp.tokens) + " tokens to the monitor");
+        return resp;
+    }
+
+    // starts an http server, or adds this gate's contexts to the host's
+    public void http() {
+        if (this.host != null) {
+            httpServer = this.host.getHttpServer();
+        } else {
+            try {
+                httpServer = new ServiceHost("localhost", this.gateHttpPort);
+            } catch (IOException e) {
+                reportError("unable to create the http service for gate: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        httpServer.createContext(httpPath + SystemConfig.GATE_GET_STATS_PATH, new GateStatsHttpHandler(this));
+        httpServer.createContext(httpPath + SystemConfig.GATE_PEER_ADDRESS_CHANGE_PATH, this.gateAddressBook);
+        httpServer.createContext(httpPath + SystemConfig.GATE_CAR_LEAVING_PATH, new CarLeavingHttpHandler(this));
+        httpServer.createContext(httpPath + SystemConfig.GATE_TOKEN_GRANT_PATH, new TokenGrantHttpHandler(this));
+        httpServer.createContext(httpPath + SystemConfig.GATE_TOKEN_RELEASE_PATH, new TokenReleaseHttpHandler(this));
+        httpServer.createContext(httpPath + SystemConfig.GATE_TOKEN_TRANSFER_PATH, new TokenTransferHttpHandler
+                (this));
+        httpServer.createContext(httpPath + SystemConfig.GATE_CAR_REDIRECT_PATH, new CarRedirectHttpHandler(this));
+        if (this.host == null) {
+            httpServer.start();
+        }
     }
 
     // initiates a thread that listens to traffic generator(s?)
@@ -163,6 +492,11 @@ public class Gate implements Runnable {
         log("Starting to accept cars from traffic generator...");
 
         try {
+            if (this.host != null) {
+                // the host's reader thread takes the streams
+                this.host.getCarStreams().listen(this.gateTcpPort, this::onCarArrival);
+                return;
+            }
             this.carsAcceptor = new ServerSocket();
             this.carsAcceptor.bind(new InetSocketAddress("localhost", this.gateTcpPort));
             new Thread(() -> this.acceptsGeneratorCarStreams(this.carsAcceptor)).start();
@@ -173,29 +507,15 @@ public class Gate implements Runnable {
 
     }
 
-    // actively listens on the carsAcceptor, and expects a new car stream from
-    // a traffic generator
+    // actively listens on the carsAcceptor, and reads each traffic generator's car stream on its own thread
     private void acceptsGeneratorCarStreams(ServerSocket gateSocket) {
-        final Gate gate = this;
-        Socket carStream = null;
         while (true) {
             try {
-                carStream = gateSocket.accept();
-                Car car = Car.parseDelimitedFrom(carStream.getInputStream());
-                if (car == null) {
-                    return; // no longer be able to receive car from this socket
-                }
-                log("(TrafficGenerator->Gate): " + DataFormatter.format(car));
-                gate.queueIn(car);
-            } catch (Exception e) {
+                final Socket carStream = gateSocket.accept();
+                new Thread(() -> this.readsCarStream(carStream)).start();
+            } catch (IOException e) {
                 reportError("Problem accepting a new car stream: " + e.getMessage());
                 break;
-            } finally {
-                try {
-                    carStream.close();
-                } catch (IOException e) {
-                    reportError("Problem closing traffic generator socket: " + e.getMessage());
-                }
             }
         }
         try {
@@ -205,8 +525,35 @@ public class Gate implements Runnable {
         }
     }
 
+    // queues in every car on the stream until the traffic generator hangs up
+    private void readsCarStream(Socket carStream) {
+        try {
+            InputStream in = new BufferedInputStream(carStream.getInputStream());
+            Car car;
+            while ((car = Car.parseDelimitedFrom(in)) != null) {
+                this.onCarArrival(car);
+            }
+        } catch (IOException e) {
+            reportError("Problem reading a car stream: " + e.getMessage());
+        } finally {
+            try {
+                carStream.close();
+            } catch (IOException e) {
+                reportError("Problem closing traffic generator socket: " + e.getMessage());
+            }
+        }
+    }
+
+    // a car from the traffic generator
+    void onCarArrival(Car car) {
+        EventLog.info("(TrafficGenerator->Gate): ", car);
+        this.queueIn(car);
+    }
+
     public void onCarLeaving(CarWithToken cwt) {
-        log("(Gate -> __Traffic__) " + DataFormatter.format(cwt));
+        EventLog.info("(Gate -> __Traffic__) ", cwt);
+        TraceBuffer.get().record(cwt.traceId, TraceBuffer.RETURN, traceComponent, cwt.departedAt, clock.getTime());
+        this.departuresMetric.inc();
         this.tokenStore.addToken(cwt.token);
     }
 
@@ -222,56 +569,203 @@ public class Gate implements Runnable {
         long arrivalTime = 0L;
         arrivalTime = this.clock.getTime();
 
-        CarArrival newArrival = new CarArrival(car, arrivalTime);
+        CarArrival newArrival = new CarArrival(car, arrivalTime, TraceBuffer.newTraceId());
+        TraceBuffer.get().record(newArrival.traceId, TraceBuffer.ARRIVE, traceComponent, car.getArrivalTimestamp(),
+                arrivalTime);
+        if (!this.tryReserveQueueSpot()) {
+            // no room here, try the neighbours without holding up the car stream
+            this.redirector.execute(() -> this.redirect(newArrival));
+            return;
+        }
+        this.enqueue(newArrival, false);
+    }
+
+    // takes a spot in the waiting queue, returns false if the queue is full
+    boolean tryReserveQueueSpot() {
+        if (this.queued.incrementAndGet() > this.queueBound && this.queueBound > 0) {
+            this.queued.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // adds the car to the waiting queue, a spot must have been reserved for it
+    private void enqueue(CarArrival arrival, boolean redirected) {
+        carsArrivedCount.incrementAndGet();
+        arrivals.record();
         this.waitingQLock.lock();
-        this.waitingQueue.add(newArrival);
+        this.waitingQueue.add(arrival);
         this.queueNotEmpty.signal();
         this.waitingQLock.unlock();
+
+        if (FlightEvents.ENABLED) {
+            FlightEvents.CarQueued event = new FlightEvents.CarQueued();
+            if (event.shouldCommit()) {
+                event.gate = traceComponent;
+                event.traceId = arrival.traceId;
+                event.queueLength = queued.get();
+                event.redirected = redirected;
+                event.commit();
+            }
+        }
+    }
+
+    // offers the car to the ring neighbours, the one with the most headroom first, and drops it if none takes it.
+    // A neighbour with no room refuses the car rather than passing it on, so a car is offered at most twice
+    void redirect(CarArrival arrival) {
+        ArrayList<URL> neighbours = this.gateAddressBook.getAddresses();
+        if (neighbours != null) {
+            neighbours = new ArrayList<>(neighbours);
+            neighbours.sort((a, b) -> Integer.compare(neighbourHeadroom.getOrDefault(b, Integer.MAX_VALUE),
+                    neighbourHeadroom.getOrDefault(a, Integer.MAX_VALUE)));
+            if (neighbours.size() > REDIRECT_NEIGHBOURS) {
+                neighbours.subList(REDIRECT_NEIGHBOURS, neighbours.size()).clear();
+            }
+
+            CarRedirectRequest req = new CarRedirectRequest();
+            req.arrivalTimestamp = arrival.car.getArrivalTimestamp();
+            req.departureTimestamp = arrival.car.getDepartureTimestamp();
+            req.queuedAt = arrival.arrivalTime;
+            req.traceId = arrival.traceId;
+            for (URL peer : neighbours) {
+                try {
+                    CarRedirectResponse resp = PeerConnection.redirectCar(peer, req);
+                    neighbourHeadroom.put(peer, resp.headroom);
+                    if (resp.accepted) {
+                        carsRedirectedCount.incrementAndGet();
+                        return;
+                    }
+                } catch (IOException e) {
+                    reportError("unable to redirect a car to " + peer + ": " + e.getMessage());
+                }
+            }
+        }
+        carsDroppedCount.incrementAndGet();
+        reportError("gate and its neighbours are full, dropping a car");
+    }
+
+    // queues a car a neighbour had no room for, if there is room here
+    public CarRedirectResponse onCarRedirected(CarRedirectRequest req) {
+        CarRedirectResponse resp = new CarRedirectResponse();
+        resp.accepted = this.tryReserveQueueSpot();
+        if (resp.accepted) {
+            Car car = Car.newBuilder().setArrivalTimestamp(req.arrivalTimestamp)
+                    .setDepartureTimestamp(req.departureTimestamp).build();
+            EventLog.info("(Gate->Gate): ", car);
+            this.enqueue(new CarArrival(car, req.queuedAt, req.traceId), true);
+        }
+        resp.headroom = this.queueBound > 0 ? Math.max(0, this.queueBound - this.queued.get()) : Integer.MAX_VALUE;
+        return resp;
     }
 
     // processes the car stream, removes a ready-to-depart car or assigns a token to a car,
     // waits a transferDuration, then sends the car to the parking space
     public void processCarsInQueue() {
-        while (true) {
+        this.processingThread = Thread.currentThread();
+        while (!this.stopped) {
             CarArrival next = this.nextCarArrival();
+            if (next == null) {
+                continue;
+            }
             String token = null;
             long currentTime = 0L;
+            long tokenAt = 0L;
             try {
                 currentTime = this.clock.getTime();
+                TraceBuffer.get().record(next.traceId, TraceBuffer.QUEUE, traceComponent, next.arrivalTime,
+                        currentTime);
                 if (currentTime > next.car.getDepartureTimestamp()) {
-                    totalWaitingTime = currentTime - next.arrivalTime;
+                    this.expiredMetric.inc();
+                    this.recordProcessed(currentTime - next.arrivalTime);
                     this.lastTimeProcessedCar = currentTime;
-                    carsProcessedCount++;
                     continue;
                 }
+                FlightEvents.TokenAcquired acquired = FlightEvents.ENABLED ? new FlightEvents.TokenAcquired() : null;
+                if (acquired != null) {
+                    acquired.begin();
+                }
                 token = this.tokenStore.getToken();
+                tokenAt = this.clock.getTime();
+                if (acquired != null) {
+                    acquired.end();
+                }
+                if (acquired != null && acquired.shouldCommit()) {
+                    acquired.gate = traceComponent;
+                    acquired.traceId = next.traceId;
+                    acquired.simulatedWait = tokenAt - currentTime;
+                    acquired.commit();
+                }
+                this.tokenWait.record(tokenAt - currentTime);
+                this.tokenWaitMetric.record(tokenAt - currentTime);
+                TraceBuffer.get().record(next.traceId, TraceBuffer.TOKEN, traceComponent, currentTime, tokenAt);
             } catch (InterruptedException e) {
                 reportError("getting token is interrupted: " + e.getMessage());
                 continue;
             }
-            totalWaitingTime = currentTime - next.arrivalTime;
-            carsProcessedCount++;
+            this.recordProcessed(currentTime - next.arrivalTime);
             CarWithToken cwt = new CarWithToken(next.car, token);
+            cwt.traceId = next.traceId;
+            cwt.queuedAt = next.arrivalTime;
+            cwt.tokenAt = tokenAt;
             sendCarToParkingSpace(cwt);
         }
     }
 
+    // counts a car taken off the queue after waiting in it for waited simulated milliseconds
+    private void recordProcessed(long waited) {
+        this.waitingTimeMetric.record(waited);
+        this.queueWait.record(waited);
+        this.totalWaitingTime.addAndGet(waited);
+        this.carsProcessedCount.incrementAndGet();
+        this.processed.record();
+    }
+
     // waits a transferDurationTime then sends the car to the parking space.
     private void sendCarToParkingSpace(CarWithToken cwt) {
+        FlightEvents.TransferDone event = FlightEvents.ENABLED ? new FlightEvents.TransferDone() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
         long passedGateTime = this.clock.getTime() + this.transferDuration;
-        while (this.clock.getTime() < passedGateTime) {
-            continue;
+        try {
+            this.clock.awaitUntil(passedGateTime);
+        } catch (InterruptedException e) {
+            reportError("waiting for car with token " + cwt.token + " to pass the gate is interrupted");
+            this.tokenStore.addToken(cwt.token);
+            commitTransfer(event, cwt, false);
+            return;
         }
         try {
+            long callStart = System.nanoTime();
             this.parkingSpaceConn.sendCarToParkingSpace(cwt);
-            log("(Gate->ParkingSpace) " + DataFormatter.format(cwt));
+            long end = System.nanoTime();
+            this.parkingSpaceCallMetric.record(TimeUnit.NANOSECONDS.toMicros(end - callStart));
+            this.transferMetric.record(TimeUnit.NANOSECONDS.toMillis(end - start));
+            commitTransfer(event, cwt, true);
+            EventLog.info("(Gate->ParkingSpace) ", cwt);
         } catch (IOException e) {
+            commitTransfer(event, cwt, false);
             reportError("unable to send car with token " + cwt.token + " to the parking space: " + e.getMessage());
             log("Returning token " + cwt.token + " back to the storage");
             this.tokenStore.addToken(cwt.token);
         }
     }
 
+    private void commitTransfer(FlightEvents.TransferDone event, CarWithToken cwt, boolean succeeded) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.gate = traceComponent;
+            event.traceId = cwt.traceId;
+            event.token = cwt.token;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+
     // processes the car queue.
     // When encountering a car, the method takes it, removes from the queue for processing
     // Otherwise, it waits indefinitely til a car queues in
@@ -281,7 +775,9 @@ public class Gate implements Runnable {
             while (this.waitingQueue.size() == 0) {
                 this.queueNotEmpty.await();
             }
-            return this.waitingQueue.remove();
+            CarArrival next = this.waitingQueue.remove();
+            this.queued.decrementAndGet();
+            return next;
         } catch (InterruptedException e) {
         } finally {
             this.waitingQLock.unlock();
@@ -291,22 +787,24 @@ public class Gate implements Runnable {
 
     public void run() {
         this.http(); // http service
-        log("HTTP Service is up at " + httpServer.getAddress().toString() + ".");
+        log("HTTP Service is up at " + httpServer.getAddress().toString() + httpPath + ".");
         this.tcpListensToTrafficGens(); // listens for traffic generator car stream on a TCP/IP socket
-        log("Listening to Traffic Generator at " + this.carsAcceptor.getLocalSocketAddress().toString());
+        log("Listening to Traffic Generator at localhost:" + this.gateTcpPort);
         this.registerThenInit(); // registers this gate to the monitor
         log("Gate registered to the monitor.");
         log("Start processing cars... ");
         this.processCarsInQueue(); // runs forever as a main thread
     }
 
-    private static class CarArrival {
+    static class CarArrival {
         public Car car;
         public long arrivalTime;
+        public long traceId;
 
-        public CarArrival(Car car, long arrivalTime) {
+        public CarArrival(Car car, long arrivalTime, long traceId) {
             this.car = car;
             this.arrivalTime = arrivalTime;
+            this.traceId = traceId;
         }
     }
 
@@ -0,0 +1,72 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import edu.rutgers.cs431.teamchen.util.ServiceHost;
+import edu.rutgers.cs431.teamchen.util.SyncClock;
+import edu.rutgers.cs431.teamchen.util.SystemConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Runs many gates in one process.
+//
+// A gate of its own brings an http service with its rpc acceptor, a clock with its sync thread, a heartbeat
+// thread, a car acceptor and a reader per car stream besides the thread that processes its queue. The gates of
+// a host share one http service, each under SystemConfig.GATE_HOST_PATH_PREFIX and its index, one clock, one
+// scheduler for the heartbeats and one selector thread that reads every gate's car streams, so a hosted gate only
+// adds the thread that processes its queue. Each gate keeps its own car port and registers with the monitor as a
+// gate of its own. The calls to the parking space, the monitor and the peers go over the process' Transport,
+// which keeps one connection per service for all the gates.
+public class GateHost {
+    private final ServiceHost httpServer;
+    private final SyncClock clock;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final CarStreamReader carStreams;
+    private final ArrayList<Gate> gates = new ArrayList<>();
+
+    // gate i takes cars on firstCarPort + i
+    public GateHost(String monitorHttpAddr, int firstCarPort, int httpPort, int gateCount, long transferDuration,
+                    String trafGenAddr, int trafGenPort, boolean timeBeacons, int queueBound) throws IOException {
+        this.httpServer = new ServiceHost("localhost", httpPort);
+        this.clock = new SyncClock(trafGenAddr, trafGenPort, timeBeacons);
+        this.carStreams = new CarStreamReader();
+        for (int i = 0; i < gateCount; i++) {
+            this.gates.add(new Gate(this, SystemConfig.GATE_HOST_PATH_PREFIX + i, monitorHttpAddr, firstCarPort + i,
+                    transferDuration, queueBound));
+        }
+    }
+
+    public List<Gate> getGates() {
+        return Collections.unmodifiableList(gates);
+    }
+
+    ServiceHost getHttpServer() {
+        return httpServer;
+    }
+
+    SyncClock getClock() {
+        return clock;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    CarStreamReader getCarStreams() {
+        return carStreams;
+    }
+
+    // starts the shared services, then every gate on its own processing thread
+    public void start() {
+        httpServer.start();
+        Thread reader = new Thread(carStreams, "car-streams");
+        reader.setDaemon(true);
+        reader.start();
+        for (int i = 0; i < gates.size(); i++) {
+            new Thread(gates.get(i), "gate-" + i).start();
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package edu.rutgers.cs431.teamchen.gate;
 
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import edu.rutgers.cs431.teamchen.proto.GateStatRequest;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
 import edu.rutgers.cs431.teamchen.proto.GateStatResponse;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 
 public class GateStatsHttpHandler implements HttpHandler {
@@ -20,26 +18,32 @@ public class GateStatsHttpHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange exch) throws IOException {
-        Gson gson = new Gson();
-        InputStreamReader reader = new InputStreamReader(exch.getRequestBody());
-        gson.fromJson(reader, GateStatRequest.class);
-        reader.close();
+        // the request carries nothing
+        exch.getRequestBody().close();
 
-        exch.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
         // Construct a response
         GateStatResponse resp = new GateStatResponse();
         resp.totalWaitingTime = gate.getTotalWaitingTime();
         resp.totalCarsProcessed = gate.getCarsProcessedCount();
         resp.lastTimeProcessedCar = gate.getLastTimeProcessedCar();
+        resp.totalCarsArrived = gate.getCarsArrivedCount();
+        resp.queueLength = gate.getQueueLength();
+        resp.carsRedirected = gate.getCarsRedirectedCount();
+        resp.carsDropped = gate.getCarsDroppedCount();
+        resp.queueWait = gate.getQueueWait();
+        resp.tokenWait = gate.getTokenWait();
+        resp.arrivalRate = gate.getArrivalRate();
+        resp.processRate = gate.getProcessRate();
+        resp.queueWaitP50 = resp.queueWait.percentile(0.5);
+        resp.queueWaitP99 = resp.queueWait.percentile(0.99);
+        resp.queueWaitP999 = resp.queueWait.percentile(0.999);
+        resp.tokenWaitP50 = resp.tokenWait.percentile(0.5);
+        resp.tokenWaitP99 = resp.tokenWait.percentile(0.99);
+        resp.tokenWaitP999 = resp.tokenWait.percentile(0.999);
         if (gate.gateWithErrorPort == gate.gateTcpPort) {
             gate.fixError();
         }
 
-        OutputStreamWriter writer = new OutputStreamWriter(exch.getResponseBody());
-        gson.toJson(resp, writer);
-        writer.flush();
-        writer.close();
-
-        exch.close();
+        Wire.sendResponse(exch, HttpURLConnection.HTTP_OK, resp, Codecs.GATE_STAT_RESPONSE);
     }
 }
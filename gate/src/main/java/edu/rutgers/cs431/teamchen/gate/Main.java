@@ -2,6 +2,8 @@ package edu.rutgers.cs431.teamchen.gate;
 
 import org.apache.commons.cli.*;
 
+import java.io.IOException;
+
 public class Main {
     public static void main(String[] args) {
 
@@ -14,8 +16,14 @@ public class Main {
                 "space. Default: 6000ms");
         options.addOption("m", "monitor-http", true, "The http address of the monitor. Default: " +
                 "\"http://localhost:8080\"");
+        options.addOption("qb", "queue-bound", true, "The most cars waiting at the gate, more are redirected to " +
+                "the ring neighbours. Default: 0, no limit");
+        options.addOption("n", "gates", true, "The number of gates to run in this process, sharing the http port " +
+                "and taking cars on the ports from -acp on. Default: 1");
         options.addOption("h", "help", false, "Print this help message");
         options.addOption("ts", "time-service", true, "The tcp address of the time service in \"host:port\"");
+        options.addOption("tb", "time-beacons", false, "Follow the time service's multicast beacons instead of " +
+                "polling it");
 
         CommandLine cmd = null;
         try {
@@ -35,6 +43,7 @@ public class Main {
         int gateHttpPort = 9002;
         long transferDuration = 6000;
         String monitorHttpAddr = "http://localhost:8080";
+        int queueBound = 0;
 
         if (cmd.hasOption("acp")) {
             acceptCarPort = Integer.parseInt(cmd.getOptionValue("acp"));
@@ -52,6 +61,10 @@ public class Main {
             monitorHttpAddr = cmd.getOptionValue("m");
         }
 
+        if (cmd.hasOption("qb")) {
+            queueBound = Integer.parseInt(cmd.getOptionValue("qb"));
+        }
+
         if (!cmd.hasOption("ts")) {
             System.err.println("no time service address -ts provided.");
             System.exit(1);
@@ -63,8 +76,20 @@ public class Main {
             System.exit(1);
         }
 
+        int gates = Integer.parseInt(cmd.getOptionValue("n", "1"));
+        if (gates > 1) {
+            try {
+                new GateHost(monitorHttpAddr, acceptCarPort, gateHttpPort, gates, transferDuration, addr[0], Integer
+                        .parseInt(addr[1]), cmd.hasOption("tb"), queueBound).start();
+            } catch (IOException e) {
+                System.err.println("unable to start the gate host: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
         Gate gate = new Gate(monitorHttpAddr, acceptCarPort, gateHttpPort, transferDuration, addr[0], Integer.parseInt
-                (addr[1]));
+                (addr[1]), cmd.hasOption("tb"), queueBound);
         gate.run();
     }
 }
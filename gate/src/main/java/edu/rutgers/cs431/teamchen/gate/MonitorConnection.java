@@ -1,13 +1,14 @@
 package edu.rutgers.cs431.teamchen.gate;
 
-import com.google.gson.Gson;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.GateHeartbeatRequest;
 import edu.rutgers.cs431.teamchen.proto.GateRegisterRequest;
 import edu.rutgers.cs431.teamchen.proto.GateRegisterResponse;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -20,6 +21,15 @@ public class MonitorConnection {
     private static final Logger logger = Logger.getLogger("MonitorConnection");
     private final URL monitor;
 
+    // how the monitor took a heartbeat
+    public enum Heartbeat {
+        OK,
+        // the monitor declared this gate dead and is handing its tokens out
+        DEAD,
+        // the monitor doesn't know this gate, it restarted since the gate registered
+        UNKNOWN
+    }
+
     public MonitorConnection(String monitorUrl) throws MalformedURLException {
         this(new URL(monitorUrl));
     }
@@ -29,27 +39,27 @@ public class MonitorConnection {
     }
 
     public GateRegisterResponse registersGate(GateRegisterRequest req) throws IOException, RuntimeException {
-        Gson gson = new Gson();
-
-        HttpURLConnection conn = (HttpURLConnection) (new URL(this.monitor, SystemConfig.MONITOR_GATE_REGISTER_PATH)).openConnection();
-        conn.setDoOutput(true);
-        OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-        gson.toJson(req, writer);
-        writer.flush();
-        writer.close();
-
-        GateRegisterResponse grr = null;
-        int code = conn.getResponseCode();
-        if (code == HttpURLConnection.HTTP_OK) { // success
-            InputStreamReader reader = new InputStreamReader(conn.getInputStream());
-            grr = gson.fromJson(reader, GateRegisterResponse.class);
-            reader.close();
-            conn.disconnect();
-        } else {
+        Transport.Reply reply = Wire.call(this.monitor, SystemConfig.MONITOR_GATE_REGISTER_PATH, req);
+        if (reply.code != HttpURLConnection.HTTP_OK) {
             throw new RuntimeException("cannot register gate: code is not HTTP_OK");
         }
+        GateRegisterResponse grr = Wire.decode(reply, GateRegisterResponse.class);
 
         return grr;
     }
 
+    // tells the monitor this gate is alive
+    public Heartbeat heartbeat(GateHeartbeatRequest req) throws IOException {
+        int code = Wire.call(this.monitor, SystemConfig.MONITOR_GATE_HEARTBEAT_PATH, req, Codecs
+                .GATE_HEARTBEAT_REQUEST).code;
+        if (code == HttpURLConnection.HTTP_GONE) {
+            return Heartbeat.DEAD;
+        } else if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+            return Heartbeat.UNKNOWN;
+        } else if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("heartbeat: code is not HTTP_OK");
+        }
+        return Heartbeat.OK;
+    }
+
 }
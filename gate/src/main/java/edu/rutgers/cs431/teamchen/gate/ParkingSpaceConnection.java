@@ -1,11 +1,12 @@
 package edu.rutgers.cs431.teamchen.gate;
 
-import com.google.gson.Gson;
 import edu.rutgers.cs431.teamchen.proto.CarWithToken;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -25,23 +26,11 @@ public class ParkingSpaceConnection {
 
     // sends car to the parking lot
     public void sendCarToParkingSpace(CarWithToken cwt) throws IOException {
-        // Construct a connection
-        HttpURLConnection conn = (HttpURLConnection) new URL(this.parkingSpace, SystemConfig.PARKING_SPACE_CAR_ENTERING_PATH).openConnection();
-        conn.setDoOutput(true); // For POST requests
-        // Write to body
-        OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-        Gson gson = new Gson();
-        gson.toJson(cwt, writer);
-
-        writer.flush();
-        writer.close();
-
-        int code = conn.getResponseCode();
-        if (code != HttpURLConnection.HTTP_OK) {
+        Transport.Reply reply = Wire.call(this.parkingSpace, SystemConfig.PARKING_SPACE_CAR_ENTERING_PATH, cwt, Codecs
+                .CAR_WITH_TOKEN);
+        if (reply.code != HttpURLConnection.HTTP_OK) {
             throw new IOException("send car to parking space: code is not OK.");
         }
-
-        conn.disconnect();
     }
 
 }
@@ -0,0 +1,33 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import edu.rutgers.cs431.teamchen.proto.CarRedirectRequest;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectResponse;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.TokenGrantRequest;
+import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// abstracts the communication with the other gates
+public class PeerConnection {
+
+    // hands the tokens of the grant to the gate at @param peer, returns false if the peer refused them.
+    // An IOException leaves it open whether the peer took them, send the same grant again to find out
+    public static boolean grantTokens(URL peer, TokenGrantRequest grant) throws IOException {
+        return Wire.call(peer, SystemConfig.GATE_TOKEN_GRANT_PATH, grant, Codecs.TOKEN_GRANT_REQUEST).code ==
+                HttpURLConnection.HTTP_OK;
+    }
+
+    // offers the car to the gate at @param peer
+    public static CarRedirectResponse redirectCar(URL peer, CarRedirectRequest req) throws IOException {
+        Transport.Reply reply = Wire.call(peer, SystemConfig.GATE_CAR_REDIRECT_PATH, req, Codecs.CAR_REDIRECT_REQUEST);
+        if (reply.code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("redirect car: code is not OK.");
+        }
+        return Wire.decode(reply, CarRedirectResponse.class, Codecs.CAR_REDIRECT_RESPONSE);
+    }
+}
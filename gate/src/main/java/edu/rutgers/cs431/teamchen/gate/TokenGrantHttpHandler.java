@@ -0,0 +1,33 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.TokenGrantRequest;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+public class TokenGrantHttpHandler implements HttpHandler {
+
+    private final Gate gate;
+
+    public TokenGrantHttpHandler(Gate gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        TokenGrantRequest req = Wire.readRequest(ex, TokenGrantRequest.class, Codecs.TOKEN_GRANT_REQUEST);
+
+        if (!this.gate.onTokensGranted(req.tokens, req.grantId)) {
+            // not registered yet, there is no token store to put the tokens in
+            ex.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            ex.close();
+            return;
+        }
+        ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+        ex.close();
+    }
+}
@@ -0,0 +1,33 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.TokenReleaseRequest;
+import edu.rutgers.cs431.teamchen.proto.TokenReleaseResponse;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+public class TokenReleaseHttpHandler implements HttpHandler {
+
+    private final Gate gate;
+
+    public TokenReleaseHttpHandler(Gate gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        TokenReleaseRequest req = Wire.readRequest(ex, TokenReleaseRequest.class, Codecs.TOKEN_RELEASE_REQUEST);
+
+        TokenReleaseResponse resp = this.gate.onTokensReleased(req.count);
+        if (resp == null) {
+            ex.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            ex.close();
+            return;
+        }
+        Wire.sendResponse(ex, HttpURLConnection.HTTP_OK, resp, Codecs.TOKEN_RELEASE_RESPONSE);
+    }
+}
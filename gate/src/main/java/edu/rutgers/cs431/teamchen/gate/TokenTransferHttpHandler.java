@@ -0,0 +1,33 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.TokenTransferRequest;
+import edu.rutgers.cs431.teamchen.proto.TokenTransferResponse;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+public class TokenTransferHttpHandler implements HttpHandler {
+
+    private final Gate gate;
+
+    public TokenTransferHttpHandler(Gate gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        TokenTransferRequest req = Wire.readRequest(ex, TokenTransferRequest.class, Codecs.TOKEN_TRANSFER_REQUEST);
+
+        TokenTransferResponse resp = this.gate.onTokenTransfer(req.count, req.toGateHttpAddr);
+        if (resp == null) {
+            ex.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            ex.close();
+            return;
+        }
+        Wire.sendResponse(ex, HttpURLConnection.HTTP_OK, resp, Codecs.TOKEN_TRANSFER_RESPONSE);
+    }
+}
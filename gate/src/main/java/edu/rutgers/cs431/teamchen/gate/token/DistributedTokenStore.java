@@ -1,20 +1,27 @@
 package edu.rutgers.cs431.teamchen.gate.token;
 
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
 import edu.rutgers.cs431.teamchen.proto.ShareTokenRequest;
 import edu.rutgers.cs431.teamchen.proto.ShareTokenResponse;
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+import edu.rutgers.cs431.teamchen.util.EventLog;
+import edu.rutgers.cs431.teamchen.util.FlightEvents;
+import edu.rutgers.cs431.teamchen.util.MetricsRegistry;
 import edu.rutgers.cs431.teamchen.util.PeerHttpAddressProvider;
+import edu.rutgers.cs431.teamchen.util.ServiceHost;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,38 +30,47 @@ import java.util.concurrent.locks.ReentrantLock;
 //
 // Implements strategy 2
 public class DistributedTokenStore implements TokenStore, HttpHandler {
+    private static final MetricsRegistry.Histogram shareCallMetric = MetricsRegistry.get().histogram(
+            "gate_token_share_call_us", "Latency of asking a peer for a token");
+    private static final MetricsRegistry.Counter sharedMetric = MetricsRegistry.get().counter(
+            "gate_token_share_calls_total", "Peers asked for a token, by answer", "result", "token");
+    private static final MetricsRegistry.Counter notSharedMetric = MetricsRegistry.get().counter(
+            "gate_token_share_calls_total", "Peers asked for a token, by answer", "result", "empty");
+    private static final MetricsRegistry.Counter shareFailedMetric = MetricsRegistry.get().counter(
+            "gate_token_share_calls_total", "Peers asked for a token, by answer", "result", "error");
+    private static final MetricsRegistry.Counter servedMetric = MetricsRegistry.get().counter(
+            "gate_token_share_served_total", "Tokens handed to peers that asked");
 
     private final Lock lock = new ReentrantLock();
     private final Condition notEmpty = lock.newCondition();
     private final PeerHttpAddressProvider addressProvider;
-    private ArrayList<String> tokens;
+    private final TokenPool tokens;
+    // whether a thread is asking the peers for a token, the waiting cars share it
+    private final AtomicBoolean asking = new AtomicBoolean(false);
 
-    public DistributedTokenStore(ArrayList<String> tokens, PeerHttpAddressProvider addrProvider, HttpServer server) {
+    public DistributedTokenStore(TokenPool tokens, PeerHttpAddressProvider addrProvider, ServiceHost server) {
+        this(tokens, addrProvider, server, "");
+    }
+
+    // serves the peers under the gate's path prefix, see GateHost
+    public DistributedTokenStore(TokenPool tokens, PeerHttpAddressProvider addrProvider, ServiceHost server,
+                                 String pathPrefix) {
         this.addressProvider = addrProvider;
         this.tokens = tokens;
         // registers the http handler for sharing token with other DistributedTokenStore
-        server.createContext(SystemConfig.GATE_SHARE_TOKEN_PATH, this);
+        server.createContext(pathPrefix + SystemConfig.GATE_SHARE_TOKEN_PATH, this);
     }
 
-    // make an HTTP connection to the gate peer for a token exchange
+    // asks the gate peer for a token
     private static String contactPeerForToken(URL peerAddr) throws IOException {
-        Gson gson = new Gson();
-        HttpURLConnection conn = (HttpURLConnection) (new URL(peerAddr, SystemConfig.GATE_SHARE_TOKEN_PATH)).openConnection();
-        // Write a request to the server
-        conn.setDoOutput(true);
-        OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-        gson.toJson(new ShareTokenRequest(), writer);
-        writer.flush();
-        writer.close();
-
-        if (conn.getResponseCode() != 200) {
+        Transport.Reply reply = Wire.call(peerAddr, SystemConfig.GATE_SHARE_TOKEN_PATH, new ShareTokenRequest(),
+                Codecs.SHARE_TOKEN_REQUEST);
+        if (reply.code != 200) {
             throw new IOException("can't get token");
         }
 
         // receives a token response
-        InputStreamReader reader = new InputStreamReader(conn.getInputStream());
-        ShareTokenResponse resp = gson.fromJson(reader, ShareTokenResponse.class);
-        reader.close();
+        ShareTokenResponse resp = Wire.decode(reply, ShareTokenResponse.class, Codecs.SHARE_TOKEN_RESPONSE);
         return resp.token;
     }
 
@@ -62,57 +78,84 @@ public class DistributedTokenStore implements TokenStore, HttpHandler {
     public void addToken(String token) {
         lock.lock();
         tokens.add(token);
-        synchronized (notEmpty) {
-            notEmpty.notify();
-        }
+        notEmpty.signal();
+        lock.unlock();
+    }
+
+    @Override
+    public void addTokens(List<TokenRange> ranges) {
+        lock.lock();
+        tokens.addAll(ranges);
+        notEmpty.signalAll();
         lock.unlock();
     }
 
+    @Override
+    public ArrayList<TokenRange> releaseTokens(long n) {
+        lock.lock();
+        try {
+            return tokens.release(n);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     // serves token to other gate peer upon request
     @Override
     public void handle(HttpExchange ex) throws IOException {
-        Gson gson = new Gson();
-
         // Read request
-        InputStreamReader reqBody = new InputStreamReader(ex.getRequestBody());
-        gson.fromJson(reqBody, ShareTokenRequest.class);
-        reqBody.close();
+        Wire.readRequest(ex, ShareTokenRequest.class, Codecs.SHARE_TOKEN_REQUEST);
 
         // Get the token
         String sharedToken = null;
         lock.lock();
-        if (this.tokens.size() != 0) {
-            sharedToken = this.tokens.get(0);
-            this.tokens.remove(0);
+        if (this.tokens.canTake()) {
+            sharedToken = this.tokens.take();
         }
         lock.unlock();
+        if (sharedToken != null) {
+            servedMetric.inc();
+        }
 
         // Construct a response with the token if there's any
-        ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
         ShareTokenResponse resp = new ShareTokenResponse();
         resp.token = sharedToken;
 
         // Reply with the token
-        OutputStreamWriter writer = new OutputStreamWriter(ex.getResponseBody());
-        gson.toJson(resp, writer);
-        writer.flush();
-        writer.close();
-
-        ex.close();
+        Wire.sendResponse(ex, HttpURLConnection.HTTP_OK, resp, Codecs.SHARE_TOKEN_RESPONSE);
     }
 
     // request the peers for a token, this might not return a token from the peers
     private void requestPeersForToken() {
         for (URL addr : addressProvider.getAddresses()) {   // contact each peers til we get at most 1 token
             String token = null;
+            FlightEvents.TokenShared event = FlightEvents.ENABLED ? new FlightEvents.TokenShared() : null;
+            if (event != null) {
+                event.begin();
+            }
+            String result;
+            long start = System.nanoTime();
             try {
                 token = contactPeerForToken(addr);
+                shareCallMetric.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                (token != null ? sharedMetric : notSharedMetric).inc();
+                result = token != null ? "token" : "empty";
             } catch (IOException ex) {
+                shareFailedMetric.inc();
+                result = "error";
                 System.err.println("DistributeTokenStore: can't get token from peer " + addr.toString() + ": " + ex
                         .getMessage());
             }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.peer = addr.toString();
+                    event.result = result;
+                    event.commit();
+                }
+            }
             if (token != null) { // has received a token from one peer, add it to the pool
-                System.out.println("Received token " + token + " from gate " + addr);
+                EventLog.info("Received token " + token + " from gate " + addr);
                 this.addToken(token);
                 break;
             }
@@ -125,12 +168,20 @@ public class DistributedTokenStore implements TokenStore, HttpHandler {
 
         lock.lock();
         try {
-            while (tokens.size() == 0) {
-                new Thread(() -> requestPeersForToken()).start(); // asks a peer for a token from another thread
+            while (!tokens.canTake()) {
+                if (asking.compareAndSet(false, true)) {
+                    // asks a peer for a token from another thread
+                    new Thread(() -> {
+                        try {
+                            requestPeersForToken();
+                        } finally {
+                            asking.set(false);
+                        }
+                    }).start();
+                }
                 notEmpty.await(); // puts this thread to sleep
             }
-            token = tokens.get(0);
-            tokens.remove(0);
+            token = tokens.take();
         } finally {
             lock.unlock();
         }
@@ -140,7 +191,34 @@ public class DistributedTokenStore implements TokenStore, HttpHandler {
 
     @Override
     public int count() {
-        return tokens.size();
+        return (int) tokens.size();
+    }
+
+    @Override
+    public TokenPool.Report report(long seq) {
+        lock.lock();
+        try {
+            TokenPool.Report report = tokens.report(seq);
+            if (tokens.monitorUnanswered()) {
+                // the held back tokens are free now
+                notEmpty.signalAll();
+            }
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reportAcked(long seq) {
+        lock.lock();
+        try {
+            if (tokens.reportAcked(seq)) {
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -1,6 +1,9 @@
 package edu.rutgers.cs431.teamchen.gate.token;
 
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -12,12 +15,16 @@ public class NoShareTokenStore implements TokenStore {
 
     private final Lock lock = new ReentrantLock();
     private final Condition notEmpty = lock.newCondition();
-    private ArrayList<String> tokens;
+    private final TokenPool tokens;
 
-    public NoShareTokenStore(ArrayList<String> tokens) {
+    public NoShareTokenStore(TokenPool tokens) {
         this.tokens = tokens;
     }
 
+    public NoShareTokenStore(ArrayList<String> tokens) {
+        this(TokenPool.ofTokens(tokens));
+    }
+
     @Override
     public void addToken(String token) {
         lock.lock();
@@ -26,16 +33,33 @@ public class NoShareTokenStore implements TokenStore {
         lock.unlock();
     }
 
+    @Override
+    public void addTokens(List<TokenRange> ranges) {
+        lock.lock();
+        tokens.addAll(ranges);
+        notEmpty.signalAll();
+        lock.unlock();
+    }
+
+    @Override
+    public ArrayList<TokenRange> releaseTokens(long n) {
+        lock.lock();
+        try {
+            return tokens.release(n);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public String getToken() throws InterruptedException {
         String retrieved;
         lock.lock();
         try {
-            while (tokens.size() == 0) {
+            while (!tokens.canTake()) {
                 notEmpty.await();
             }
-            retrieved = tokens.get(0);
-            tokens.remove(0);
+            retrieved = tokens.take();
         } finally {
             lock.unlock();
         }
@@ -44,6 +68,33 @@ public class NoShareTokenStore implements TokenStore {
 
     public int count() {
         // TODO: should we wait with lock?
-        return tokens.size();
+        return (int) tokens.size();
+    }
+
+    @Override
+    public TokenPool.Report report(long seq) {
+        lock.lock();
+        try {
+            TokenPool.Report report = tokens.report(seq);
+            if (tokens.monitorUnanswered()) {
+                // the held back tokens are free now
+                notEmpty.signalAll();
+            }
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reportAcked(long seq) {
+        lock.lock();
+        try {
+            if (tokens.reportAcked(seq)) {
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -0,0 +1,248 @@
+package edu.rutgers.cs431.teamchen.gate.token;
+
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// The free tokens of a gate.
+// Tokens handed out by the monitor are kept as ranges and turned into strings one at a time from the front
+// of a range, tokens coming back from cars are kept as they are.
+//
+// Every heartbeat reports the free tokens to the monitor, which takes them back if the gate dies, and the reserve
+// among them the gate may hand out before the monitor hears from it again. The monitor takes back only the tokens
+// outside the reserve, so those are held back: they are handed out once a later heartbeat reserves them and the
+// monitor has it. Tokens that come in after a report are the gate's to hand out, that report doesn't have them.
+//
+// A monitor that answers none of the reports for a while would leave the gate with its reserve only, so after
+// UNANSWERED_REPORTS_BEFORE_FALLBACK of them nothing is held back any more: the monitor's failure detector gave up on
+// the gate long before, and if it is up but can't be reached it may reissue tokens the gate hands out too. Cars
+// keep being admitted at the cost of maybe overfilling the lot until the monitor answers again.
+// Not thread safe, the token stores guard it with their own lock.
+public class TokenPool {
+    // the least tokens a report reserves, more if the gate handed out more since the last one
+    static final long MIN_RESERVE = 8;
+    // twice the heartbeats the monitor misses before declaring a gate dead
+    static final int UNANSWERED_REPORTS_BEFORE_FALLBACK = 24;
+
+    // what the gate may hand out
+    private final Tokens spendable = new Tokens();
+    // reserved by the report in flight, spendable once the monitor has it
+    private final Tokens reserved = new Tokens();
+    private final Tokens heldBack = new Tokens();
+    private long reportSeq = 0L;
+    private long takenSinceReport = 0L;
+    // the reports since the last one the monitor answered
+    private int unanswered = 0;
+    // whether a car waited for a token while some were held back
+    private boolean starved = false;
+
+    // the free tokens a heartbeat reports and the ones among them the gate may hand out
+    public static class Report {
+        public final ArrayList<TokenRange> tokens;
+        public final ArrayList<TokenRange> reserved;
+
+        Report(ArrayList<TokenRange> tokens, ArrayList<TokenRange> reserved) {
+            this.tokens = tokens;
+            this.reserved = reserved;
+        }
+    }
+
+    public static TokenPool of(List<TokenRange> ranges) {
+        TokenPool pool = new TokenPool();
+        pool.addAll(ranges);
+        return pool;
+    }
+
+    public static TokenPool ofTokens(List<String> tokens) {
+        TokenPool pool = new TokenPool();
+        for (String token : tokens) {
+            pool.add(token);
+        }
+        return pool;
+    }
+
+    public void add(String token) {
+        spendable.add(token);
+    }
+
+    public void addAll(List<TokenRange> tokens) {
+        spendable.addAll(tokens);
+    }
+
+    public long size() {
+        return spendable.count + reserved.count + heldBack.count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // whether a token can be taken out now
+    public boolean canTake() {
+        if (spendable.count == 0 && size() > 0) {
+            starved = true;
+        }
+        return spendable.count > 0;
+    }
+
+    // takes one token out, canTake must be true
+    public String take() {
+        takenSinceReport++;
+        return spendable.take();
+    }
+
+    // takes at most n tokens out, the held back ones first, cutting from the back of the ranges before touching the
+    // loose tokens
+    public ArrayList<TokenRange> release(long n) {
+        ArrayList<TokenRange> out = heldBack.release(n);
+        out.addAll(reserved.release(n - TokenRange.count(out)));
+        out.addAll(spendable.release(n - TokenRange.count(out)));
+        return out;
+    }
+
+    // reports the tokens for heartbeat @param seq: the reserve is what the gate spends until the monitor answers,
+    // twice what it handed out since the last report or more if that wasn't enough
+    public Report report(long seq) {
+        // the monitor never answered the last report, its reserve is off
+        heldBack.addAll(reserved.release(reserved.count));
+        long target = Math.max(MIN_RESERVE, 2 * takenSinceReport) * (starved ? 2 : 1);
+        takenSinceReport = 0L;
+        starved = false;
+        if (++unanswered > UNANSWERED_REPORTS_BEFORE_FALLBACK) {
+            // the monitor is gone, the whole pool is the reserve
+            spendable.addAll(heldBack.release(heldBack.count));
+        } else if (spendable.count > target) {
+            heldBack.addAll(spendable.release(spendable.count - target));
+        } else {
+            reserved.addAll(heldBack.release(target - spendable.count));
+        }
+        reportSeq = seq;
+
+        ArrayList<TokenRange> mayHandOut = spendable.snapshot();
+        mayHandOut.addAll(reserved.snapshot());
+        ArrayList<TokenRange> all = new ArrayList<>(mayHandOut);
+        all.addAll(heldBack.snapshot());
+        return new Report(all, mayHandOut);
+    }
+
+    // whether the monitor left so many reports unanswered that nothing is held back
+    public boolean monitorUnanswered() {
+        return unanswered > UNANSWERED_REPORTS_BEFORE_FALLBACK;
+    }
+
+    // the monitor has the report of heartbeat @param seq, returns whether more tokens can be taken out now
+    public boolean reportAcked(long seq) {
+        if (seq != reportSeq) {
+            return false;
+        }
+        unanswered = 0;
+        if (reserved.count == 0) {
+            return false;
+        }
+        spendable.addAll(reserved.release(reserved.count));
+        return true;
+    }
+
+    // returns a copy of the tokens as ranges
+    public ArrayList<TokenRange> snapshot() {
+        ArrayList<TokenRange> out = spendable.snapshot();
+        out.addAll(reserved.snapshot());
+        out.addAll(heldBack.snapshot());
+        return out;
+    }
+
+    private static class Tokens {
+        private final ArrayDeque<TokenRange> ranges = new ArrayDeque<>();
+        private final ArrayDeque<String> loose = new ArrayDeque<>();
+        private long count = 0L;
+
+        void add(String token) {
+            loose.add(token);
+            count++;
+        }
+
+        void addAll(List<TokenRange> tokens) {
+            if (tokens == null) {
+                return;
+            }
+            for (TokenRange r : tokens) {
+                if (r.length > 0) {
+                    ranges.add(new TokenRange(r.start, r.length));
+                    count += r.length;
+                }
+            }
+        }
+
+        String take() {
+            count--;
+            if (!loose.isEmpty()) {
+                return loose.poll();
+            }
+            TokenRange r = ranges.peekFirst();
+            String token = Long.toString(r.start);
+            r.start++;
+            r.length--;
+            if (r.length == 0) {
+                ranges.pollFirst();
+            }
+            return token;
+        }
+
+        ArrayList<TokenRange> release(long n) {
+            ArrayList<TokenRange> out = new ArrayList<>();
+            while (n > 0 && !ranges.isEmpty()) {
+                TokenRange r = ranges.peekLast();
+                long cut = Math.min(n, r.length);
+                out.add(new TokenRange(r.start + r.length - cut, cut));
+                r.length -= cut;
+                if (r.length == 0) {
+                    ranges.pollLast();
+                }
+                count -= cut;
+                n -= cut;
+            }
+            ArrayList<String> tokens = new ArrayList<>();
+            while (n > 0 && !loose.isEmpty()) {
+                tokens.add(loose.pollLast());
+                count--;
+                n--;
+            }
+            out.addAll(compact(tokens));
+            return out;
+        }
+
+        ArrayList<TokenRange> snapshot() {
+            ArrayList<TokenRange> out = new ArrayList<>();
+            for (TokenRange r : ranges) {
+                out.add(new TokenRange(r.start, r.length));
+            }
+            out.addAll(compact(loose));
+            return out;
+        }
+    }
+
+    // merges single tokens into as few ranges as possible
+    private static ArrayList<TokenRange> compact(Iterable<String> tokens) {
+        ArrayList<Long> sorted = new ArrayList<>();
+        for (String token : tokens) {
+            sorted.add(Long.parseLong(token));
+        }
+        Collections.sort(sorted, Comparator.naturalOrder());
+
+        ArrayList<TokenRange> out = new ArrayList<>();
+        TokenRange cur = null;
+        for (long t : sorted) {
+            if (cur != null && cur.start + cur.length == t) {
+                cur.length++;
+            } else {
+                cur = new TokenRange(t, 1);
+                out.add(cur);
+            }
+        }
+        return out;
+    }
+}
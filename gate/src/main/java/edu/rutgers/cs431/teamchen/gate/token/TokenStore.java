@@ -1,5 +1,10 @@
 package edu.rutgers.cs431.teamchen.gate.token;
 
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public interface TokenStore {
     // returns a token, if there is no token then synchronously wait
     // until there is one
@@ -8,7 +13,19 @@ public interface TokenStore {
     // adds a token back into the store
     void addToken(String token);
 
+    // adds the tokens the monitor handed to this gate
+    void addTokens(List<TokenRange> tokens);
+
+    // takes at most n free tokens out of the store so the monitor can give them to another gate
+    ArrayList<TokenRange> releaseTokens(long n);
+
     // returns the number of tokens currently inside the system.
     // Idempotent and for statistics purpose only, DO NOT USE for the program logic.
     int count();
+
+    // reports the tokens currently inside the store for heartbeat @param seq, see TokenPool
+    TokenPool.Report report(long seq);
+
+    // the monitor has the report of heartbeat @param seq
+    void reportAcked(long seq);
 }
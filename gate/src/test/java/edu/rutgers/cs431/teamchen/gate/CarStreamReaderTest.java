@@ -0,0 +1,61 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.Car;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class CarStreamReaderTest {
+    private static final int PORT = 18934;
+    private static final int CARS = 5000;
+
+    @Test
+    public void testCarsSplitAcrossWrites() throws Exception {
+        LinkedBlockingQueue<Car> received = new LinkedBlockingQueue<>();
+        CarStreamReader reader = new CarStreamReader();
+        reader.listen(PORT, received::add);
+        Thread t = new Thread(reader);
+        t.setDaemon(true);
+        t.start();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < CARS; i++) {
+            Car.newBuilder().setArrivalTimestamp(i).setDepartureTimestamp(Long.MAX_VALUE - i).build()
+                    .writeDelimitedTo(bytes);
+        }
+        byte[] stream = bytes.toByteArray();
+
+        Socket s = null;
+        for (int tries = 0; s == null; tries++) {
+            try {
+                s = new Socket("localhost", PORT);
+            } catch (ConnectException e) {
+                if (tries > 100) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+        // odd sized writes cut cars and their sizes in two
+        OutputStream out = s.getOutputStream();
+        for (int off = 0; off < stream.length; off += 7) {
+            out.write(stream, off, Math.min(7, stream.length - off));
+            out.flush();
+        }
+
+        for (int i = 0; i < CARS; i++) {
+            Car car = received.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("car " + i + " never arrived", car);
+            Assert.assertEquals(i, car.getArrivalTimestamp());
+            Assert.assertEquals(Long.MAX_VALUE - i, car.getDepartureTimestamp());
+        }
+        s.close();
+        reader.close(PORT);
+    }
+}
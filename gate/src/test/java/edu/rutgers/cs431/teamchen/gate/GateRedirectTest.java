@@ -0,0 +1,107 @@
+package edu.rutgers.cs431.teamchen.gate;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.Car;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectRequest;
+import edu.rutgers.cs431.teamchen.proto.CarRedirectResponse;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.GateHttpAddressesChangeRequest;
+import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Wire;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+public class GateRedirectTest {
+
+    // a gate with no monitor and no clock, serving http if httpPort isn't 0
+    private static Gate gate(int httpPort, int queueBound) {
+        Gate gate = new Gate(null, "", "http://localhost:1", 0, httpPort, 0L, queueBound, null, Executors
+                .newSingleThreadScheduledExecutor());
+        if (httpPort != 0) {
+            gate.http();
+        }
+        return gate;
+    }
+
+    private static CarRedirectRequest redirectRequest() {
+        CarRedirectRequest req = new CarRedirectRequest();
+        req.arrivalTimestamp = 1L;
+        req.departureTimestamp = Long.MAX_VALUE;
+        return req;
+    }
+
+    private static Gate.CarArrival arrival() {
+        return new Gate.CarArrival(Car.newBuilder().setArrivalTimestamp(1L).setDepartureTimestamp(Long.MAX_VALUE)
+                .build(), 1L, 42L);
+    }
+
+    private static void setNeighbours(int httpPort, String... neighbours) throws IOException {
+        int code = Wire.call(new URL("http://localhost:" + httpPort), SystemConfig.GATE_PEER_ADDRESS_CHANGE_PATH,
+                new GateHttpAddressesChangeRequest(new ArrayList<>(Arrays.asList(neighbours)), 1L), Codecs
+                        .GATE_HTTP_ADDRESSES_CHANGE_REQUEST).code;
+        Assert.assertEquals(200, code);
+    }
+
+    @Test
+    public void testReservesUpToTheBound() {
+        Gate g = gate(0, 2);
+        Assert.assertTrue(g.tryReserveQueueSpot());
+        Assert.assertTrue(g.tryReserveQueueSpot());
+        Assert.assertFalse(g.tryReserveQueueSpot());
+        Assert.assertEquals(2, g.getQueueLength());
+
+        Gate unbounded = gate(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(unbounded.tryReserveQueueSpot());
+        }
+    }
+
+    @Test
+    public void testAcceptsRedirectedCarsWhileThereIsRoom() {
+        Gate g = gate(0, 2);
+        CarRedirectResponse first = g.onCarRedirected(redirectRequest());
+        Assert.assertTrue(first.accepted);
+        Assert.assertEquals(1, first.headroom);
+        CarRedirectResponse second = g.onCarRedirected(redirectRequest());
+        Assert.assertTrue(second.accepted);
+        Assert.assertEquals(0, second.headroom);
+
+        // a full gate refuses, and doesn't pass the car on to its own neighbours
+        CarRedirectResponse third = g.onCarRedirected(redirectRequest());
+        Assert.assertFalse(third.accepted);
+        Assert.assertEquals(0, third.headroom);
+        Assert.assertEquals(2, g.getQueueLength());
+        Assert.assertEquals(0, g.getCarsRedirectedCount());
+        Assert.assertEquals(0, g.getCarsDroppedCount());
+    }
+
+    @Test
+    public void testRedirectsToANeighbourWithRoomThenDrops() throws IOException {
+        Gate full = gate(18951, 1);
+        Gate neighbour = gate(18952, 1);
+        setNeighbours(18951, "http://localhost:18952");
+
+        full.redirect(arrival());
+        Assert.assertEquals(1, full.getCarsRedirectedCount());
+        Assert.assertEquals(1, neighbour.getQueueLength());
+
+        // the neighbour is full now too
+        full.redirect(arrival());
+        Assert.assertEquals(1, full.getCarsRedirectedCount());
+        Assert.assertEquals(1, full.getCarsDroppedCount());
+        Assert.assertEquals(1, neighbour.getQueueLength());
+    }
+
+    @Test
+    public void testDropsWithoutNeighbours() {
+        Gate g = gate(0, 1);
+        g.redirect(arrival());
+        Assert.assertEquals(0, g.getCarsRedirectedCount());
+        Assert.assertEquals(1, g.getCarsDroppedCount());
+    }
+}
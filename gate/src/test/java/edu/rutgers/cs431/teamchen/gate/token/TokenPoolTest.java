@@ -0,0 +1,187 @@
+package edu.rutgers.cs431.teamchen.gate.token;
+
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+
+public class TokenPoolTest {
+
+    @Test
+    public void testTakesFromTheFrontOfRanges() {
+        TokenPool pool = TokenPool.of(Arrays.asList(new TokenRange(10, 3), new TokenRange(100, 1)));
+        Assert.assertEquals(4, pool.size());
+        Assert.assertEquals("10", pool.take());
+        Assert.assertEquals("11", pool.take());
+        Assert.assertEquals("12", pool.take());
+        Assert.assertEquals("100", pool.take());
+        Assert.assertTrue(pool.isEmpty());
+    }
+
+    @Test
+    public void testReleaseCutsFromTheBack() {
+        TokenPool pool = TokenPool.of(Arrays.asList(new TokenRange(0, 10)));
+        pool.add("42");
+
+        ArrayList<TokenRange> released = pool.release(4);
+        Assert.assertEquals(1, released.size());
+        Assert.assertEquals(6, released.get(0).start);
+        Assert.assertEquals(4, released.get(0).length);
+        Assert.assertEquals(7, pool.size());
+
+        // the returned token is handed out before the ranges
+        Assert.assertEquals("42", pool.take());
+        Assert.assertEquals("0", pool.take());
+    }
+
+    @Test
+    public void testSnapshotMergesReturnedTokens() {
+        TokenPool pool = new TokenPool();
+        pool.add("7");
+        pool.add("5");
+        pool.add("6");
+        pool.add("9");
+
+        ArrayList<TokenRange> snapshot = pool.snapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals(5, snapshot.get(0).start);
+        Assert.assertEquals(3, snapshot.get(0).length);
+        Assert.assertEquals(9, snapshot.get(1).start);
+        Assert.assertEquals(4, TokenRange.count(snapshot));
+        Assert.assertEquals(4, pool.size());
+    }
+
+    private static boolean contains(List<TokenRange> ranges, String token) {
+        long t = Long.parseLong(token);
+        for (TokenRange r : ranges) {
+            if (t >= r.start && t < r.start + r.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testTokenHandedOutAfterAHeartbeatIsNotTakenBack() {
+        TokenPool pool = TokenPool.of(Collections.singletonList(new TokenRange(0, 20)));
+        TokenPool.Report report = pool.report(1);
+        Assert.assertEquals(20, TokenRange.count(report.tokens));
+        Assert.assertEquals(TokenPool.MIN_RESERVE, TokenRange.count(report.reserved));
+
+        // the gate dies after handing out a token, the monitor takes back what is outside the reserve
+        String token = pool.take();
+        ArrayList<TokenRange> reclaimed = TokenRange.subtract(report.tokens, report.reserved);
+        Assert.assertTrue(contains(report.tokens, token));
+        Assert.assertFalse(contains(reclaimed, token));
+    }
+
+    @Test
+    public void testHeldBackTokensWaitForTheMonitor() {
+        TokenPool pool = TokenPool.of(Collections.singletonList(new TokenRange(0, 20)));
+        pool.report(1);
+        pool.reportAcked(1);
+        for (int i = 0; i < TokenPool.MIN_RESERVE; i++) {
+            Assert.assertTrue(pool.canTake());
+            pool.take();
+        }
+        Assert.assertFalse(pool.canTake());
+        Assert.assertEquals(12, pool.size());
+
+        // the next report reserves more, they can be taken once the monitor has it
+        TokenPool.Report report = pool.report(2);
+        Assert.assertEquals(12, TokenRange.count(report.reserved));
+        Assert.assertFalse(pool.canTake());
+        Assert.assertFalse(pool.reportAcked(1));
+        Assert.assertTrue(pool.reportAcked(2));
+        Assert.assertTrue(pool.canTake());
+    }
+
+    @Test
+    public void testReleaseTakesTheHeldBackTokensFirst() {
+        TokenPool pool = TokenPool.of(Collections.singletonList(new TokenRange(0, 20)));
+        TokenPool.Report report = pool.report(1);
+        ArrayList<TokenRange> released = pool.release(5);
+        ArrayList<TokenRange> heldBack = TokenRange.subtract(report.tokens, report.reserved);
+        Assert.assertEquals(5, TokenRange.count(released));
+        Assert.assertTrue(TokenRange.subtract(released, heldBack).isEmpty());
+        Assert.assertEquals(TokenPool.MIN_RESERVE, TokenRange.count(pool.report(2).reserved));
+    }
+
+    @Test
+    public void testHandsOutNothingTheMonitorWouldTakeBack() {
+        Random rnd = new Random(431);
+        TokenPool pool = TokenPool.of(Collections.singletonList(new TokenRange(0, 200)));
+        // the reports from the last one the monitor answered on, any of them may be the latest it has
+        ArrayList<TokenPool.Report> reports = new ArrayList<>();
+        ArrayList<String> parked = new ArrayList<>();
+        long seq = 0;
+        for (int i = 0; i < 20000; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 5 && pool.canTake()) {
+                String token = pool.take();
+                for (TokenPool.Report r : reports) {
+                    Assert.assertFalse("token " + token + " handed out outside the reserve",
+                            contains(r.tokens, token) && !contains(r.reserved, token));
+                }
+                parked.add(token);
+            } else if (op < 7 && !parked.isEmpty()) {
+                pool.add(parked.remove(rnd.nextInt(parked.size())));
+            } else if (op == 7) {
+                seq++;
+                reports.add(pool.report(seq));
+            } else if (op == 8 && seq > 0 && rnd.nextBoolean()) {
+                // the monitor answered the latest report, it goes by that one from now on
+                pool.reportAcked(seq);
+                reports.subList(0, reports.size() - 1).clear();
+            } else if (op == 9) {
+                // released tokens are the monitor's, it keeps them out of what it takes back
+                pool.release(rnd.nextInt(3));
+            }
+        }
+    }
+
+    @Test
+    public void testMonitorUnreachable() {
+        TokenPool pool = TokenPool.of(Collections.singletonList(new TokenRange(0, 20)));
+        pool.report(1);
+        pool.reportAcked(1);
+        for (int i = 0; i < TokenPool.MIN_RESERVE; i++) {
+            pool.take();
+        }
+
+        // the heartbeats fail from here on, the held back tokens wait a while
+        long seq = 1;
+        for (int i = 0; i < TokenPool.UNANSWERED_REPORTS_BEFORE_FALLBACK; i++) {
+            seq++;
+            pool.report(seq);
+        }
+        Assert.assertFalse(pool.canTake());
+        Assert.assertFalse(pool.monitorUnanswered());
+
+        // then the whole pool can be handed out, a report the monitor gets late reserves all of it
+        seq++;
+        TokenPool.Report report = pool.report(seq);
+        Assert.assertTrue(pool.monitorUnanswered());
+        Assert.assertEquals(12, TokenRange.count(report.reserved));
+        Assert.assertTrue(TokenRange.subtract(report.tokens, report.reserved).isEmpty());
+        for (int i = 0; i < 12; i++) {
+            Assert.assertTrue(pool.canTake());
+            pool.take();
+        }
+        Assert.assertTrue(pool.isEmpty());
+
+        // once the monitor answers the gate holds tokens back again
+        pool.add("100");
+        pool.reportAcked(seq);
+        Assert.assertFalse(pool.monitorUnanswered());
+        pool.addAll(Collections.singletonList(new TokenRange(200, 40)));
+        report = pool.report(seq + 1);
+        Assert.assertTrue(TokenRange.count(report.reserved) < TokenRange.count(report.tokens));
+    }
+}
@@ -0,0 +1,25 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.proto.GateHeartbeatRequest;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+
+public class GateHeartbeatHttpHandler implements HttpHandler {
+
+    private final Monitor mon;
+
+    public GateHeartbeatHttpHandler(Monitor mon) {
+        this.mon = mon;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        GateHeartbeatRequest req = Wire.readRequest(ex, GateHeartbeatRequest.class, Codecs.GATE_HEARTBEAT_REQUEST);
+        ex.sendResponseHeaders(mon.onGateHeartbeat(req), -1);
+        ex.close();
+    }
+}
@@ -1,6 +1,12 @@
 package edu.rutgers.cs431.teamchen.monitor;
 
 import edu.rutgers.cs431.TrafficGeneratorProto;
+import edu.rutgers.cs431.teamchen.proto.LatencyHistogram;
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class GateInfo {
     public volatile String httpAddress;
@@ -9,4 +15,100 @@ public class GateInfo {
     public volatile int totalCarsProcessed;
 
     public volatile long lastTimeProcessedCar;
+
+    // the id handed to the gate on registration
+    public volatile String id;
+    public PhiAccrualFailureDetector failureDetector;
+    public volatile long freeTokens;
+    // the tokens the gate is still owed since the reservoir ran dry when it registered
+    public final AtomicLong tokenDeficit = new AtomicLong(0L);
+
+    // the smoothed demand on the gate in cars per second, see TokenRebalancer
+    public volatile double demand;
+    public volatile long lastCarsArrived;
+    public volatile long lastStatsAt;
+    public volatile int queueLength;
+
+    // the cars the gate had no room for, handed to a neighbour or dropped
+    public volatile long carsRedirected;
+    public volatile long carsDropped;
+
+    // the waits and rates from the gate's last stats
+    public volatile LatencyHistogram queueWait = new LatencyHistogram();
+    public volatile LatencyHistogram tokenWait = new LatencyHistogram();
+    public volatile double arrivalRate;
+    public volatile double processRate;
+
+    // how long after a token move the gate didn't answer a later heartbeat may still not know of it
+    static final long MOVE_SETTLE_MILLIS = 60_000L;
+
+    // the gate's latest heartbeat: its number, the free tokens it reported and the ones among them it may still
+    // hand out, see the gate's TokenPool
+    private long reportSeq = 0L;
+    private ArrayList<TokenRange> reportedTokens = new ArrayList<>();
+    private ArrayList<TokenRange> reservedTokens = new ArrayList<>();
+    private long reportedAt = 0L;
+    // the tokens moved off the gate that its latest heartbeat might still have
+    private final ArrayList<MovedOut> movedOut = new ArrayList<>();
+    // a move the gate didn't answer keeps its tokens from being taken back until a heartbeat after this
+    private long unsureUntil = 0L;
+    private boolean dead = false;
+
+    private static class MovedOut {
+        final long seq;
+        final List<TokenRange> tokens;
+
+        MovedOut(long seq, List<TokenRange> tokens) {
+            this.seq = seq;
+            this.tokens = tokens;
+        }
+    }
+
+    // records the tokens of heartbeat @param seq received at @param now, older heartbeats are ignored.
+    // Returns false once the gate is dead: its tokens are being handed out, the gate must not spend its reserve
+    public synchronized boolean onReport(long seq, List<TokenRange> tokens, List<TokenRange> reserved, long now) {
+        if (dead) {
+            return false;
+        }
+        if (seq <= reportSeq || tokens == null) {
+            return true;
+        }
+        reportSeq = seq;
+        reportedTokens = new ArrayList<>(tokens);
+        reservedTokens = reserved != null ? new ArrayList<>(reserved) : new ArrayList<>();
+        reportedAt = now;
+        freeTokens = TokenRange.count(tokens);
+        movedOut.removeIf(m -> m.seq < seq);
+        return true;
+    }
+
+    // records the tokens the gate gave up for a move, @param seq is its latest heartbeat when they left
+    public synchronized void onMovedOut(long seq, List<TokenRange> tokens) {
+        if (tokens != null && tokens.size() > 0 && seq >= reportSeq) {
+            movedOut.add(new MovedOut(seq, tokens));
+        }
+    }
+
+    // the gate didn't answer a move at @param now, it may have given up tokens no one knows of
+    public synchronized void onMoveUnanswered(long now) {
+        unsureUntil = Math.max(unsureUntil, now + MOVE_SETTLE_MILLIS);
+    }
+
+    // declares the gate dead, its heartbeats are refused from now on
+    public synchronized void markDead() {
+        dead = true;
+    }
+
+    // the tokens to take back from the dead gate: the ones of its latest heartbeat, less the reserve it could have
+    // handed out since and the ones moved off it. Nothing if a move it didn't answer may have taken some
+    public synchronized ArrayList<TokenRange> tokensToReclaim() {
+        if (reportedAt < unsureUntil) {
+            return new ArrayList<>();
+        }
+        ArrayList<TokenRange> gone = new ArrayList<>(reservedTokens);
+        for (MovedOut m : movedOut) {
+            gone.addAll(m.tokens);
+        }
+        return TokenRange.subtract(reportedTokens, gone);
+    }
 }
@@ -0,0 +1,116 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import edu.rutgers.cs431.TrafficGeneratorProto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The gates in the system keyed by gate id, and the ring they form in registration order.
+//
+// Writers rebuild an immutable Ring on every change, readers take the current one without locking.
+// Membership changes are rare next to reads (heartbeats, stats, roster requests), so copying on write
+// keeps every read O(1).
+public class GateRegistry {
+
+    private final ConcurrentHashMap<String, GateInfo> byId = new ConcurrentHashMap<>();
+    // the ids of the gates taken out of the ring, until a gate registers under the id again
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+    private volatile Ring ring = new Ring(new ArrayList<>());
+
+    public GateInfo get(String id) {
+        return byId.get(id);
+    }
+
+    // whether the gate with the id was taken out of the ring, rather than never known
+    public boolean wasRemoved(String id) {
+        return removed.contains(id);
+    }
+
+    public int size() {
+        return ring.gates.size();
+    }
+
+    // returns an immutable view of the ring
+    public Ring snapshot() {
+        return ring;
+    }
+
+    // appends the gate at the end of the ring, returns the gate it replaced under the same id or null
+    public GateInfo add(GateInfo gi) {
+        synchronized (writeLock) {
+            ArrayList<GateInfo> gates = new ArrayList<>(ring.gates);
+            GateInfo old = byId.put(gi.id, gi);
+            removed.remove(gi.id);
+            if (old != null) {
+                gates.remove(old);
+            }
+            gates.add(gi);
+            ring = new Ring(gates);
+            return old;
+        }
+    }
+
+    // removes the gates from the ring, returns the new ring
+    public Ring removeAll(List<GateInfo> dead) {
+        synchronized (writeLock) {
+            ArrayList<GateInfo> gates = new ArrayList<>(ring.gates);
+            for (GateInfo gi : dead) {
+                if (byId.remove(gi.id, gi)) {
+                    removed.add(gi.id);
+                }
+            }
+            gates.removeAll(dead);
+            ring = new Ring(gates);
+            return ring;
+        }
+    }
+
+    public static class Ring {
+        public final List<GateInfo> gates;
+        private final Map<String, Integer> positions = new HashMap<>();
+        private volatile TrafficGeneratorProto.GateAddressListResponse roster;
+
+        private Ring(ArrayList<GateInfo> gates) {
+            this.gates = Collections.unmodifiableList(gates);
+            for (int i = 0; i < gates.size(); i++) {
+                positions.put(gates.get(i).id, i);
+            }
+        }
+
+        // returns the http addresses of the left and right neighbours of the gate,
+        // empty if the gate is alone or not in this ring
+        public ArrayList<String> neighbourAddrs(String id) {
+            ArrayList<String> addrs = new ArrayList<>();
+            Integer i = positions.get(id);
+            int len = gates.size();
+            if (i == null || len < 2) {
+                return addrs;
+            }
+            int left = (i + len - 1) % len;
+            int right = (i + 1) % len;
+            addrs.add(gates.get(left).httpAddress);
+            if (left != right) {
+                addrs.add(gates.get(right).httpAddress);
+            }
+            return addrs;
+        }
+
+        // the gate list for the traffic generators, built once per ring
+        public TrafficGeneratorProto.GateAddressListResponse roster() {
+            if (roster == null) {
+                ArrayList<TrafficGeneratorProto.GateAddress> al = new ArrayList<>();
+                for (GateInfo gi : gates) {
+                    al.add(gi.addr);
+                }
+                roster = TrafficGeneratorProto.GateAddressListResponse.newBuilder().addAllGateAddress(al).build();
+            }
+            return roster;
+        }
+    }
+}
@@ -13,7 +13,7 @@ public class Main {
         options.addOption("http", "monitor-http", true, "The port number to serve the http service. Default: 8080");
         options.addOption("s", "strategy", true, "The strategy to distribute tokens within the system. 1 for no " +
                 "token sharing between gates, and 2 for sharing tokens. Default: 2");
-        options.addOption("maxg", "max-gates", true, "The maximum number of gates. Default: 6 ");
+        options.addOption("maxg", "max-gates", true, "The number of gates the parking capacity is split over, more may join. Default: 6 ");
         options.addOption("pc", "parking-cap", true, "The parking capacity of the parking lot. Default: 200");
         options.addOption("h", "help", false, "Print this help message");
 
@@ -32,7 +32,7 @@ public class Main {
 
         int httpPort = 8080;
         int strategy = 2;
-        int maxGate = 6;
+        int expectedGates = 6;
         long maxParkingCap = 200;
 
         if (cmd.hasOption("http")) {
@@ -44,7 +44,7 @@ public class Main {
         }
 
         if (cmd.hasOption("maxg")) {
-            maxGate = Integer.parseInt(cmd.getOptionValue("maxg"));
+            expectedGates = Integer.parseInt(cmd.getOptionValue("maxg"));
         }
 
         if (cmd.hasOption("pc")) {
@@ -52,7 +52,7 @@ public class Main {
         }
 
         try {
-            new Monitor(httpPort, interpretStrategy(strategy), maxGate, maxParkingCap).run();
+            new Monitor(httpPort, interpretStrategy(strategy), expectedGates, maxParkingCap).run();
         } catch (UnknownHostException e) {
             System.err.println("can't get hostname: " + e.getMessage());
             System.exit(1);
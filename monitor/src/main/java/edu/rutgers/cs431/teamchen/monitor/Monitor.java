@@ -1,59 +1,114 @@
 package edu.rutgers.cs431.teamchen.monitor;
 
-import com.google.gson.Gson;
-import com.sun.net.httpserver.HttpServer;
 import edu.rutgers.cs431.TrafficGeneratorProto;
 import edu.rutgers.cs431.teamchen.proto.*;
+import edu.rutgers.cs431.teamchen.util.FlightEvents;
+import edu.rutgers.cs431.teamchen.util.MetricsRegistry;
+import edu.rutgers.cs431.teamchen.util.ServiceHost;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Transports;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.*;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Monitor implements Runnable {
 
-	private static final int DEFAULT_MAX_GATE = 6;
+	private static final int DEFAULT_EXPECTED_GATES = 6;
 	private static final int DEFAULT_MAX_PARKING_CAPACITY = 200;
 
 	private static final long STATS_UPDATE_INTERVAL_IN_MILLISECONDS = 2000;
+	private static final int STATS_POLLERS = 8;
 
+	// membership changes within this window are sent out as a single ring update
+	private static final long RING_UPDATE_COALESCE_WINDOW_IN_MILLISECONDS = 50;
+	private static final int RING_UPDATE_SENDERS = 4;
+	private static final int RING_UPDATE_QUEUE_CAPACITY = 256;
 
-	// the list of gate in the system
-	private final List<GateInfo> gates;
-	private final Lock gatesLock = new ReentrantLock();
+	// a gate whose heartbeat silence reaches this suspicion level is declared dead.
+	// With exponentially distributed intervals, 5 is about 11.5 heartbeat intervals of silence.
+	private static final double GATE_FAILURE_PHI_THRESHOLD = 5.0;
+
+	// how often token quota is moved toward the busy gates
+	private static final long REBALANCE_INTERVAL_IN_MILLISECONDS = 10000;
+	private static final long MIN_TOKEN_MOVE = 2;
+	// how many times a grant is sent to a gate that doesn't answer
+	private static final int GRANT_ATTEMPTS = 3;
+
+
+	// the gates in the system
+	private final GateRegistry gates = new GateRegistry();
 
 	// the monitor's http address
 	private final String monitorHttpAddr;
 	private final int httpPort;
 	private final int tcpPort = SystemConfig.MONITOR_ROSTER_PROTOBUF_SERVICE_PORT;
 	private final int strategy;
-	private final TokenReservoir.Basic tokenReservoir;
-	private final int maxGate;
+	private final TokenReservoir tokenReservoir;
+	// the number of gates the parking capacity is split over on registration, more can still join
+	private final int expectedGates;
 	private final long maxParkingCapacity;
 	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+	private final ExecutorService statsPoller = Executors.newFixedThreadPool(STATS_POLLERS);
+	// serves the traffic generators' roster requests, one thread per connection
+	private final ExecutorService rosterServer = Executors.newCachedThreadPool();
+	// sends ring updates and reissued tokens; when the queue is full the submitting thread sends by itself
+	private final ThreadPoolExecutor gateUpdateSender = new ThreadPoolExecutor(
+			RING_UPDATE_SENDERS, RING_UPDATE_SENDERS, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(RING_UPDATE_QUEUE_CAPACITY), new ThreadPoolExecutor.CallerRunsPolicy());
+	// moves tokens between the gates one move at a time, and takes back the tokens of the dead gates in between, on
+	// a thread of its own so a slow gate holds up neither failure detection nor the ring updates
+	private final ScheduledExecutorService tokenMover = Executors.newSingleThreadScheduledExecutor();
+	// the version of the ring membership, bumped on every ring update sent out
+	private final AtomicLong ringEpoch = new AtomicLong(0L);
+	private final AtomicBoolean ringUpdatePending = new AtomicBoolean(false);
+	// the neighbours last sent to each gate, keyed by the gate's http address.
+	// Written by the coalescing thread, a send that fails takes its entry out so the update goes out again.
+	private final Map<String, ArrayList<String>> sentNeighbours = new ConcurrentHashMap<>();
+	private final TokenRebalancer rebalancer = new TokenRebalancer(MIN_TOKEN_MOVE, REBALANCE_INTERVAL_IN_MILLISECONDS);
 	private volatile String parkingSpaceHttpAddr;
-	private HttpServer httpServ;
-	public Monitor(int httpPort, int strategy, int maxGate, long maxParkingCapacity) throws UnknownHostException {
-		this.gates = Collections.synchronizedList(new ArrayList<>());
+	private ServiceHost httpServ;
+	private final MetricsRegistry.Counter heartbeatsMetric = MetricsRegistry.get().counter(
+			"monitor_heartbeats_total", "Gate heartbeats received");
+	private final MetricsRegistry.Counter gatesFailedMetric = MetricsRegistry.get().counter(
+			"monitor_gates_failed_total", "Gates declared dead");
+	private final MetricsRegistry.Counter tokensRebalancedMetric = MetricsRegistry.get().counter(
+			"monitor_tokens_rebalanced_total", "Tokens the rebalancer moved between gates");
+	public Monitor(int httpPort, int strategy, int expectedGates, long maxParkingCapacity) throws UnknownHostException {
 		this.httpPort = httpPort;
 		this.monitorHttpAddr = "http://" + InetAddress.getLocalHost().getHostName() + ":" + Integer.toString(httpPort);
 		this.strategy = strategy;
-		this.maxGate = maxGate;
+		this.expectedGates = expectedGates;
 		this.maxParkingCapacity = maxParkingCapacity;
-		this.tokenReservoir = new TokenReservoir.Basic(this.maxParkingCapacity, this.maxGate);
+		this.tokenReservoir = new TokenReservoir.Ranged(this.maxParkingCapacity, this.expectedGates);
+		MetricsRegistry.get().gauge("monitor_gates", "Live gates", () -> gates.size());
+		MetricsRegistry.get().gauge("monitor_reservoir_tokens", "Tokens no gate holds", () -> tokenReservoir
+				.available());
+		for (String q : new String[]{"0.5", "0.99", "0.999"}) {
+			final double quantile = Double.parseDouble(q);
+			MetricsRegistry.get().gauge("monitor_queue_wait_ms", "Simulated time cars spent in the queue, " +
+					"across all gates", () -> mergedQueueWait().percentile(quantile), "quantile", q);
+			MetricsRegistry.get().gauge("monitor_token_wait_ms", "Simulated time cars waited for a token, " +
+					"across all gates", () -> mergedTokenWait().percentile(quantile), "quantile", q);
+		}
 	}
 	public Monitor(int httpPort, int strategy) throws UnknownHostException {
-		this(httpPort, strategy, DEFAULT_MAX_GATE, DEFAULT_MAX_PARKING_CAPACITY);
+		this(httpPort, strategy, DEFAULT_EXPECTED_GATES, DEFAULT_MAX_PARKING_CAPACITY);
 	}
 
 	private static void reportError(String msg) {
@@ -65,47 +120,142 @@ public class Monitor implements Runnable {
 	}
 
 	private static void sendAddrChangeToParkingSpace(GateHttpAddressesChangeRequest req, String parkingSpaceHttpAddr) {
-		URL gateUrl = null;
 		try {
-			gateUrl = new URL(new URL(parkingSpaceHttpAddr), SystemConfig.PARKING_SPACE_PEER_ADDRESS_CHANGE_PATH);
-			HttpURLConnection conn = (HttpURLConnection) gateUrl.openConnection();
-
-			conn.setDoOutput(true);
-			OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-			Gson gson = new Gson();
-			gson.toJson(req, writer);
-			writer.flush();
-			writer.close();
-
-			if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			Transport.Reply reply = Wire.call(new URL(parkingSpaceHttpAddr), SystemConfig
+					.PARKING_SPACE_PEER_ADDRESS_CHANGE_PATH, req, Codecs.GATE_HTTP_ADDRESSES_CHANGE_REQUEST);
+			if (reply.code != HttpURLConnection.HTTP_OK) {
 				reportError("cannot update the gate list to the parking space");
 			}
-
-			conn.disconnect();
 		} catch (MalformedURLException e) {
 			reportError("sendAddrChangeToGate: invalid parking space URL? How does this happen");
 		} catch (IOException e) {
-			reportError("problem sending peer update request to the parking space " + gateUrl.toString() +
+			reportError("problem sending peer update request to the parking space " + parkingSpaceHttpAddr +
 					": " + e
 					.getMessage());
 		}
 	}
 
+	// what became of a grant of tokens
+	private enum Grant {
+		TAKEN,
+		REFUSED,
+		// the gate never answered, it may or may not have the tokens
+		UNANSWERED
+	}
+
+	// hands the tokens to the gate, sending the same grant again while the gate doesn't answer.
+	// The gate adds the tokens of a grant once, so a retry after a lost answer doesn't duplicate them
+	private static Grant sendTokenGrantToGate(TokenGrantRequest req, String gateURL) {
+		URL url;
+		try {
+			url = new URL(gateURL);
+		} catch (MalformedURLException e) {
+			reportError("sendTokenGrantToGate: invalid gate URL? " + e.getMessage());
+			return Grant.REFUSED;
+		}
+		for (int i = 0; i < GRANT_ATTEMPTS; i++) {
+			try {
+				if (Wire.call(url, SystemConfig.GATE_TOKEN_GRANT_PATH, req, Codecs.TOKEN_GRANT_REQUEST).code !=
+						HttpURLConnection.HTTP_OK) {
+					reportError("Can't grant tokens to gate " + gateURL + ": code not OK");
+					return Grant.REFUSED;
+				}
+				return Grant.TAKEN;
+			} catch (IOException e) {
+				reportError("problem granting tokens to gate " + gateURL + ": " + e.getMessage());
+			}
+		}
+		return Grant.UNANSWERED;
+	}
+
+	// puts the tokens of a grant the gate didn't take back in the reservoir. Tokens the gate never answered
+	// for are left out: the gate may have them, and reissuing them could duplicate them
+	private void settleGrant(Grant grant, ArrayList<TokenRange> tokens, String gateURL) {
+		if (grant == Grant.REFUSED) {
+			this.tokenReservoir.reclaim(tokens);
+		} else if (grant == Grant.UNANSWERED) {
+			reportError("gate " + gateURL + " never answered a grant, leaving its " + TokenRange.count(tokens) +
+					" tokens out");
+		}
+	}
+
+	// asks the gate to hand tokens straight to another gate, returns the number of tokens moved.
+	// The tokens that left the gate are kept out of what it holds if it dies
+	private static long sendTokenTransferToGate(TokenTransferRequest req, GateInfo gate) {
+		String gateURL = gate.httpAddress;
+		try {
+			Transport.Reply reply = Wire.call(new URL(gateURL), SystemConfig.GATE_TOKEN_TRANSFER_PATH, req, Codecs
+					.TOKEN_TRANSFER_REQUEST);
+			if (reply.code != HttpURLConnection.HTTP_OK) {
+				reportError("Can't move tokens from gate " + gateURL + ": code not OK");
+				return 0;
+			}
+			TokenTransferResponse resp = Wire.decode(reply, TokenTransferResponse.class, Codecs
+					.TOKEN_TRANSFER_RESPONSE);
+			gate.onMovedOut(resp.seq, resp.tokens);
+			return resp.moved;
+		} catch (MalformedURLException e) {
+			reportError("sendTokenTransferToGate: invalid gate URL? " + e.getMessage());
+		} catch (IOException e) {
+			gate.onMoveUnanswered(now());
+			reportError("problem moving tokens from gate " + gateURL + ": " + e.getMessage());
+		}
+		return 0;
+	}
+
+	// asks the gate to give up some free tokens, returns null if it didn't.
+	// The tokens are kept out of what the gate holds if it dies
+	private static ArrayList<TokenRange> sendTokenReleaseToGate(TokenReleaseRequest req, GateInfo gate) {
+		String gateURL = gate.httpAddress;
+		try {
+			Transport.Reply reply = Wire.call(new URL(gateURL), SystemConfig.GATE_TOKEN_RELEASE_PATH, req, Codecs
+					.TOKEN_RELEASE_REQUEST);
+			if (reply.code != HttpURLConnection.HTTP_OK) {
+				reportError("Can't take tokens from gate " + gateURL + ": code not OK");
+				return null;
+			}
+			TokenReleaseResponse resp = Wire.decode(reply, TokenReleaseResponse.class, Codecs
+					.TOKEN_RELEASE_RESPONSE);
+			gate.onMovedOut(resp.seq, resp.tokens);
+			return resp.tokens;
+		} catch (MalformedURLException e) {
+			reportError("sendTokenReleaseToGate: invalid gate URL? " + e.getMessage());
+		} catch (IOException e) {
+			gate.onMoveUnanswered(now());
+			reportError("problem taking tokens from gate " + gateURL + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
 	// using the address in GateInfo updates this gate
-	private static void updateStatsFromGateAt(GateInfo info) {
-		URL gateUrl = null;
+	private void updateStatsFromGateAt(GateInfo info) {
 		try {
-			gateUrl = new URL(new URL(info.httpAddress), SystemConfig.GATE_GET_STATS_PATH);
-			HttpURLConnection conn = (HttpURLConnection) gateUrl.openConnection();
-
-			InputStreamReader in = new InputStreamReader(conn.getInputStream());
-			Gson gson = new Gson();
-			GateStatResponse gsr = gson.fromJson(in, GateStatResponse.class);
-			in.close();
-			conn.disconnect();
+			// the request carries nothing
+			Transport.Reply reply = Transports.get().call(new URL(info.httpAddress), SystemConfig
+					.GATE_GET_STATS_PATH, Wire.preferred(), new byte[0]);
+			if (reply.code != HttpURLConnection.HTTP_OK) {
+				throw new IOException("code not OK");
+			}
+			GateStatResponse gsr = Wire.decode(reply, GateStatResponse.class, Codecs.GATE_STAT_RESPONSE);
 			info.totalWaitingTime = gsr.totalWaitingTime;
 			info.totalCarsProcessed = gsr.totalCarsProcessed;
 			info.lastTimeProcessedCar = gsr.lastTimeProcessedCar;
+			info.carsRedirected = gsr.carsRedirected;
+			info.carsDropped = gsr.carsDropped;
+			// gates from before the histograms send none
+			if (gsr.queueWait != null) {
+				info.queueWait = gsr.queueWait;
+			}
+			if (gsr.tokenWait != null) {
+				info.tokenWait = gsr.tokenWait;
+			}
+			info.arrivalRate = gsr.arrivalRate;
+			info.processRate = gsr.processRate;
+			rebalancer.observe(info, gsr, now());
 		} catch (MalformedURLException ex) {
 			reportError("updateStatesFromGateAt " + info.httpAddress + ": invalid url? " + ex.getMessage());
 			return;
@@ -117,14 +267,18 @@ public class Monitor implements Runnable {
 	}
 
 	public void checkForError() {
+		List<GateInfo> gates = this.gates.snapshot().gates;
+		if (gates.size() == 0) {
+			return;
+		}
 		long totalTime = 0;
-		for (GateInfo gi : this.gates) {
+		for (GateInfo gi : gates) {
 			totalTime += gi.lastTimeProcessedCar;
 		}
-		long averageTime = totalTime / this.gates.size();
+		long averageTime = totalTime / gates.size();
 
 		ArrayList<Long> timeDiff = new ArrayList<Long>();
-		for (GateInfo gi : this.gates) {
+		for (GateInfo gi : gates) {
 			timeDiff.add(averageTime - gi.lastTimeProcessedCar);
 		}
 
@@ -133,141 +287,150 @@ public class Monitor implements Runnable {
 		for (int i = 0; i < timeDiff.size(); i++) {
 			if (timeDiff.get(i) < lowestTime) {
 				lowestTime = timeDiff.get(i);
-				errorGate = this.gates.get(i);
+				errorGate = gates.get(i);
 			}
 		}
 		reportError("Gate with Byzantine error: " + errorGate.httpAddress);
 
 	}
 
-	private void sendAddrChangeToGate(GateHttpAddressesChangeRequest req, String gateURL) {
-		URL gateUrl = null;
+	// returns whether the gate has this ring view or a newer one
+	private boolean sendAddrChangeToGate(GateHttpAddressesChangeRequest req, String gateURL) {
 		try {
-			gateUrl = new URL(new URL(gateURL), SystemConfig
-					.GATE_PEER_ADDRESS_CHANGE_PATH);
-			HttpURLConnection conn = (HttpURLConnection) gateUrl.openConnection();
-
-			conn.setDoOutput(true);
-			OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-			Gson gson = new Gson();
-			gson.toJson(req, writer);
-			writer.flush();
-			writer.close();
-
-			if (conn.getResponseCode() != 200) {
+			int code = Wire.call(new URL(gateURL), SystemConfig.GATE_PEER_ADDRESS_CHANGE_PATH, req, Codecs
+					.GATE_HTTP_ADDRESSES_CHANGE_REQUEST).code;
+			if (code == HttpURLConnection.HTTP_CONFLICT) {
+				log("gate " + gateURL + " already has a newer ring view than epoch " + req.epoch);
+			} else if (code != 200) {
 				reportError("Can't update gate list to gate " + gateURL + ": code not OK");
+				return false;
 			}
-
-			conn.disconnect();
+			return true;
 		} catch (MalformedURLException e) {
 			reportError("sendAddrChangeToGate: invalid gate URL? How does this happen? " + e.getMessage());
 		} catch (IOException e) {
-			reportError("problem sending peer update request to gate " + gateUrl.toString() + ": " + e
+			reportError("problem sending peer update request to gate " + gateURL + ": " + e
 					.getMessage());
 		}
+		return false;
 	}
 
-	// sends to gates that need to have the address change and notifies the parking space
-	// For a gate ring, the address change includes the first & the last gate in the list
-	public void onGateListAppended() {
-		gatesLock.lock();
-		// update the gates in the ring
-		if (gates.size() > 1) {
-			if (gates.size() == 2) {
-				// send update to two gate
-				new Thread(() -> sendAddrChangeToGate(newGateAddrChangeReqFor(0), gates.get(0).httpAddress)).start();
-				new Thread(() -> sendAddrChangeToGate(newGateAddrChangeReqFor(1), gates.get(1).httpAddress)).start();
-			} else {
-				new Thread(() -> sendAddrChangeToGate(newGateAddrChangeReqFor(gates.size() - 1), gates.get(gates.size() - 1).httpAddress)).start();
-				new Thread(() -> sendAddrChangeToGate(newGateAddrChangeReqFor(gates.size() - 2), gates.get(gates.size() - 2).httpAddress)).start();
-				new Thread(() -> sendAddrChangeToGate(newGateAddrChangeReqFor(0), gates.get(0).httpAddress)).start();
-			}
+	// schedules a ring update. Changes arriving within the coalescing window are sent out together
+	// under a single epoch, so a burst of registrations doesn't turn into a burst of updates
+	public void onGateListChanged() {
+		if (ringUpdatePending.compareAndSet(false, true)) {
+			executor.schedule(() -> flushRingUpdate(),
+					RING_UPDATE_COALESCE_WINDOW_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
 		}
-
-		// tell the parking space to update the gate list
-		final ArrayList<String> gateAddrs = new ArrayList<>();
-		for (GateInfo gi : gates) {
-			gateAddrs.add(gi.httpAddress);
-		}
-		new Thread(() -> sendAddrChangeToParkingSpace(new GateHttpAddressesChangeRequest(gateAddrs), this.parkingSpaceHttpAddr)).start();
-		gatesLock.unlock();
-
 	}
 
-	/**
-	 * make a GateHttpAddressesChangeRequest for the gate at @param index. The addresses to change to
-	 * are the adjacent left and right gates
-	 * IMPORTANT: Assuming the gates list lock is acquired
-	 **/
-	private GateHttpAddressesChangeRequest newGateAddrChangeReqFor(int index) {
-		final int len = this.gates.size();
-		if (len == 0) {
-			throw new RuntimeException("Expect a non-empty gate list");
-		}
-
-		Function<Integer, Boolean> inRange = (in) -> in >= 0 && in < len;
-		if (!inRange.apply(index)) {
-			throw new RuntimeException("Expect an address in range");
-		}
-		ArrayList<String> addrs = new ArrayList<>();
+	// sends the current ring view to the gates whose neighbours changed and notifies the parking space
+	private void flushRingUpdate() {
+		// changes made from now on need another update
+		ringUpdatePending.set(false);
 
-		int left, right;
-		if (index == 0) {
-			left = len - 1;
-			right = index + 1;
-		} else if (index == len - 1) {
-			left = index - 1;
-			right = 0;
-		} else {
-			left = index - 1;
-			right = index + 1;
+		final ArrayList<String> gateAddrs = new ArrayList<>();
+		final HashMap<String, ArrayList<String>> neighbours = new HashMap<>();
+		final long epoch = ringEpoch.incrementAndGet();
+		GateRegistry.Ring ring = this.gates.snapshot();
+		for (GateInfo gi : ring.gates) {
+			gateAddrs.add(gi.httpAddress);
+			// empty for a gate left on its own, so it stops asking the dead ones
+			neighbours.put(gi.httpAddress, ring.neighbourAddrs(gi.id));
 		}
 
-		if (left == right) {
-			if (inRange.apply(left)) {
-				addrs.add(this.gates.get(left).httpAddress);
-			}
-		} else {
-			if (inRange.apply(left)) {
-				addrs.add(this.gates.get(left).httpAddress);
-			}
-			if (inRange.apply(right)) {
-				addrs.add(this.gates.get(right).httpAddress);
+		// update the gates in the ring
+		sentNeighbours.keySet().retainAll(neighbours.keySet());
+		for (Map.Entry<String, ArrayList<String>> e : neighbours.entrySet()) {
+			if (e.getValue().equals(sentNeighbours.get(e.getKey()))) {
+				continue;
 			}
+			sentNeighbours.put(e.getKey(), e.getValue());
+			final ArrayList<String> sent = e.getValue();
+			final GateHttpAddressesChangeRequest req = new GateHttpAddressesChangeRequest(sent, epoch);
+			final String gateAddr = e.getKey();
+			gateUpdateSender.execute(() -> {
+				if (!sendAddrChangeToGate(req, gateAddr)) {
+					// the gate keeps its old view until an update gets through, try again in a heartbeat
+					sentNeighbours.remove(gateAddr, sent);
+					executor.schedule(() -> onGateListChanged(), SystemConfig.GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS,
+							TimeUnit.MILLISECONDS);
+				}
+			});
 		}
 
-		GateHttpAddressesChangeRequest nq = new GateHttpAddressesChangeRequest(addrs);
-		return nq;
+		// tell the parking space to update the gate list
+		final String psAddr = this.parkingSpaceHttpAddr;
+		gateUpdateSender.execute(() -> sendAddrChangeToParkingSpace(new GateHttpAddressesChangeRequest(gateAddrs,
+				epoch), psAddr));
 	}
 
 	public void updateStatsFromGates() {
-		gatesLock.lock();
-		for (GateInfo gateInfo : this.gates) {
-			final GateInfo gi = gateInfo;
-			new Thread(() -> updateStatsFromGateAt(gi)).start();
+		List<GateInfo> gates = this.gates.snapshot().gates;
+		CompletableFuture<?>[] polls = new CompletableFuture<?>[gates.size()];
+		for (int i = 0; i < gates.size(); i++) {
+			final GateInfo gi = gates.get(i);
+			polls[i] = CompletableFuture.runAsync(() -> updateStatsFromGateAt(gi), statsPoller);
 		}
-		gatesLock.unlock();
 		checkForError();
 
+		// prints this round once every gate answered, or with what came back by the time the next round is due
+		CompletableFuture<Void> due = new CompletableFuture<>();
+		executor.schedule(() -> due.complete(null), STATS_UPDATE_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+		CompletableFuture.anyOf(CompletableFuture.allOf(polls), due).whenComplete((r, e) -> printStats(gates));
+	}
+
+	private void printStats(List<GateInfo> gates) {
 		System.out.println("\n");
 		System.out.println("Monitor Update");
 		System.out.println("_______________________________________________________");
 		System.out.println("\n");
-		for(GateInfo gate : this.gates)
+		for(GateInfo gate : gates)
 		{
 			 System.out.println("--Gate Update--");
 			 System.out.println("\nGate:\n"+ gate.addr+
 					 			"\nWait time: "+gate.totalWaitingTime+
-					 			"\nCars processed: "+gate.totalCarsProcessed);
+					 			"\nCars processed: "+gate.totalCarsProcessed+
+					 			"\nCars redirected: "+gate.carsRedirected+
+					 			"\nCars dropped: "+gate.carsDropped+
+					 			"\nQueue wait: "+formatPercentiles(gate.queueWait)+
+					 			"\nToken wait: "+formatPercentiles(gate.tokenWait)+
+					 			"\nCars/s in: "+String.format("%.2f", gate.arrivalRate)+
+					 			" out: "+String.format("%.2f", gate.processRate));
 
 			 System.out.println("____________________\n");
 		}
+		System.out.println("--All Gates--");
+		System.out.println("\nQueue wait: "+formatPercentiles(mergedQueueWait())+
+				"\nToken wait: "+formatPercentiles(mergedTokenWait()));
 		System.out.println("\n");
 		System.out.println("\n");
 
 
 	}
 
+	// the queue waits of all the live gates in one histogram
+	private LatencyHistogram mergedQueueWait() {
+		LatencyHistogram all = new LatencyHistogram();
+		for (GateInfo gi : this.gates.snapshot().gates) {
+			all = all.merge(gi.queueWait);
+		}
+		return all;
+	}
+
+	private LatencyHistogram mergedTokenWait() {
+		LatencyHistogram all = new LatencyHistogram();
+		for (GateInfo gi : this.gates.snapshot().gates) {
+			all = all.merge(gi.tokenWait);
+		}
+		return all;
+	}
+
+	private static String formatPercentiles(LatencyHistogram h) {
+		return "p50 " + h.percentile(0.5) + " p99 " + h.percentile(0.99) + " p999 " + h.percentile(0.999) +
+				" max " + h.max + " ms over " + h.count() + " cars";
+	}
+
 	public boolean ableToStart() {
 		return this.parkingSpaceHttpAddr != null;
 	}
@@ -282,32 +445,207 @@ public class Monitor implements Runnable {
 		}
 
 		GateInfo gi = new GateInfo();
-		gi.httpAddress = "http://" + grr.hostname + ":" + Integer.toString(grr.httpPort);
+		gi.httpAddress = "http://" + grr.hostname + ":" + Integer.toString(grr.httpPort) +
+				(grr.httpPath == null ? "" : grr.httpPath);
 		gi.addr = TrafficGeneratorProto.GateAddress.newBuilder()
 				.setHostname(grr.hostname)
 				.setPort(grr.tcpPort).build();
 		gi.totalCarsProcessed = 0;
 		gi.totalWaitingTime = 0;
-
-		gatesLock.lock();
-		gates.add(gi);
+		gi.id = gi.httpAddress;
+		gi.failureDetector = new PhiAccrualFailureDetector(SystemConfig.GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS, now());
+
+		final GateInfo replaced = gates.add(gi);
+		int size = gates.size();
+		if (replaced != null) {
+			// the gate restarted on the same address, the tokens of its last run went with it
+			replaced.markDead();
+			reportError("gate " + gi.httpAddress + " registered again, taking back the tokens of its last run");
+			tokenMover.execute(() -> {
+				this.tokenReservoir.reclaim(replaced.tokensToReclaim());
+				this.reissueReclaimedTokens();
+			});
+		}
 
 		GateRegisterResponse resp = new GateRegisterResponse();
 		resp.parkingSpaceHttpUrl = this.parkingSpaceHttpAddr;
 		resp.strategy = this.strategy;
-		try {
-			resp.tokens = tokenReservoir.next();
-		} catch (Exception e) {
-			reportError("can't get the next list of token: " + e.getMessage());
-			gates.remove(gi);
-			return null;
-		} finally {
-			gatesLock.unlock();
+		resp.gateId = gi.id;
+		resp.tokens = tokenReservoir.next();
+		long owed = tokenReservoir.fairShare(size) - TokenRange.count(resp.tokens);
+		if (owed > 0) {
+			// the reservoir ran short: take some from the idle gates once this gate is up
+			log("token reservoir ran short, gate " + gi.httpAddress + " is owed " + owed + " tokens");
+			gi.tokenDeficit.set(owed);
+		}
+		onGateListChanged();
+		return resp;
+	}
+
+	// records a heartbeat, returns the http status to answer it with: gone if the gate was declared dead, not found
+	// if this monitor never heard of it, like after a restart, so the gate registers again
+	public int onGateHeartbeat(GateHeartbeatRequest req) {
+		GateInfo gi = this.gates.get(req.gateId);
+		if (gi == null) {
+			return this.gates.wasRemoved(req.gateId) ? HttpURLConnection.HTTP_GONE : HttpURLConnection.HTTP_NOT_FOUND;
+		}
+		if (!gi.onReport(req.seq, req.tokens, req.reserved, now())) {
+			return HttpURLConnection.HTTP_GONE;
+		}
+		gi.failureDetector.heartbeat(now());
+		this.heartbeatsMetric.inc();
+		gi.queueLength = req.queueLength;
+		// the gate is up and can take tokens now
+		final long owed = gi.tokenDeficit.getAndSet(0L);
+		if (owed > 0) {
+			final GateInfo target = gi;
+			tokenMover.execute(() -> moveTokensTo(target, owed));
+		}
+		return HttpURLConnection.HTTP_OK;
+	}
+
+	// the load on every gate, for the traffic generators' routing
+	public RosterLoadResponse getRosterLoad() {
+		RosterLoadResponse resp = new RosterLoadResponse();
+		resp.gates = new ArrayList<>();
+		for (GateInfo gi : this.gates.snapshot().gates) {
+			GateLoad load = new GateLoad();
+			load.hostname = gi.addr.getHostname();
+			load.port = gi.addr.getPort();
+			load.queueLength = gi.queueLength;
+			load.freeTokens = gi.freeTokens;
+			resp.gates.add(load);
 		}
-		new Thread(() -> onGateListAppended()).start();
 		return resp;
 	}
 
+	// moves up to @param needed tokens to the gate, taking about half of the free tokens of the idlest
+	// gates first
+	private void moveTokensTo(GateInfo target, long needed) {
+		ArrayList<GateInfo> donors = new ArrayList<>(this.gates.snapshot().gates);
+		donors.remove(target);
+		donors.sort((a, b) -> Long.compare(b.freeTokens, a.freeTokens));
+
+		for (GateInfo donor : donors) {
+			long ask = Math.min(needed, donor.freeTokens / 2);
+			if (ask <= 0) {
+				break;
+			}
+			ArrayList<TokenRange> released = sendTokenReleaseToGate(new TokenReleaseRequest(ask), donor);
+			if (released == null || released.size() == 0) {
+				continue;
+			}
+			long moved = TokenRange.count(released);
+			donor.freeTokens -= moved;
+			Grant grant = sendTokenGrantToGate(new TokenGrantRequest(released), target.httpAddress);
+			if (grant != Grant.TAKEN) {
+				settleGrant(grant, released, target.httpAddress);
+				return;
+			}
+			log("Moved " + moved + " tokens from gate " + donor.httpAddress + " to gate " + target.httpAddress);
+			recordTokensMoved(donor, target, moved, "deficit");
+			needed -= moved;
+			if (needed <= 0) {
+				return;
+			}
+		}
+	}
+
+	// declares dead the gates that stayed silent for too long
+	private void detectGateFailures() {
+		ArrayList<GateInfo> dead = new ArrayList<>();
+		long now = now();
+		for (GateInfo gi : this.gates.snapshot().gates) {
+			if (gi.failureDetector.phi(now) >= GATE_FAILURE_PHI_THRESHOLD) {
+				dead.add(gi);
+			}
+		}
+		if (dead.size() == 0) {
+			return;
+		}
+		for (GateInfo gi : dead) {
+			gi.markDead();
+		}
+		this.gates.removeAll(dead);
+		this.gatesFailedMetric.add(dead.size());
+		for (GateInfo gi : dead) {
+			reportError("gate " + gi.httpAddress + " stopped sending heartbeats, removing it from the ring");
+		}
+		this.onGateListChanged();
+		// after the moves under way, so the tokens they took off the dead gates are known
+		tokenMover.execute(() -> {
+			for (GateInfo gi : dead) {
+				this.tokenReservoir.reclaim(gi.tokensToReclaim());
+			}
+			this.reissueReclaimedTokens();
+		});
+	}
+
+	// splits the tokens left in the reservoir among the live gates.
+	// Tokens a gate doesn't take go back to the reservoir for the next gate to register
+	private void reissueReclaimedTokens() {
+		List<GateInfo> alive = this.gates.snapshot().gates;
+		if (alive.size() == 0) {
+			return;
+		}
+
+		long available = this.tokenReservoir.available();
+		long share = (available + alive.size() - 1) / alive.size();
+		for (GateInfo g : alive) {
+			final ArrayList<TokenRange> part = this.tokenReservoir.take(share);
+			if (part.size() == 0) {
+				break;
+			}
+			final GateInfo gi = g;
+			log("Reissuing " + TokenRange.count(part) + " reclaimed tokens to gate " + gi.httpAddress);
+			gateUpdateSender.execute(() -> {
+				settleGrant(sendTokenGrantToGate(new TokenGrantRequest(part), gi.httpAddress), part, gi.httpAddress);
+			});
+		}
+	}
+
+	private static void recordTokensMoved(GateInfo from, GateInfo to, long moved, String reason) {
+		if (!FlightEvents.ENABLED) {
+			return;
+		}
+		FlightEvents.TokensMoved event = new FlightEvents.TokensMoved();
+		if (event.shouldCommit()) {
+			event.from = from.httpAddress;
+			event.to = to.httpAddress;
+			event.count = moved;
+			event.reason = reason;
+			event.commit();
+		}
+	}
+
+	// moves token quota from the gates with little demand to the ones with a lot
+	private void rebalanceTokens() {
+		for (TokenRebalancer.Move move : rebalancer.plan(this.gates.snapshot().gates)) {
+			long moved = sendTokenTransferToGate(new TokenTransferRequest(move.count, move.to.httpAddress),
+					move.from);
+			if (moved > 0) {
+				this.tokensRebalancedMetric.add(moved);
+				recordTokensMoved(move.from, move.to, moved, "rebalance");
+				// keep the estimates sane until the next heartbeats
+				move.from.freeTokens -= moved;
+				move.to.freeTokens += moved;
+				log("Rebalanced " + moved + " tokens from gate " + move.from.httpAddress + " to gate " +
+						move.to.httpAddress);
+			}
+		}
+	}
+
+	private void scheduleRebalancing() {
+		tokenMover.scheduleWithFixedDelay(() -> rebalanceTokens(),
+				REBALANCE_INTERVAL_IN_MILLISECONDS, REBALANCE_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+	}
+
+	private void scheduleFailureDetection() {
+		executor.scheduleWithFixedDelay(() -> detectGateFailures(),
+				SystemConfig.GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS,
+				SystemConfig.GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+	}
+
 	public void onParkingSpaceRegister(ParkingSpaceRegisterRequest req) {
 		this.parkingSpaceHttpAddr = "http://" + req.hostname + ":" + Integer.toString(req.httpPort);
 		log("A Parking Space registered at " + this.parkingSpaceHttpAddr);
@@ -316,14 +654,14 @@ public class Monitor implements Runnable {
 	private void http() {
 		httpServ = null;
 		try {
-			httpServ = HttpServer.create();
-			httpServ.bind(new InetSocketAddress("localhost", this.httpPort), SystemConfig
-					.MAXIMUM_HTTP_CONNECTIONS);
+			httpServ = new ServiceHost("localhost", this.httpPort);
 		} catch (IOException e) {
 			reportError("unable to set up an http server: " + e.getMessage());
 		}
 		httpServ.createContext(SystemConfig.MONITOR_GATE_REGISTER_PATH, new GateRegisterHttpHandler(this));
 		httpServ.createContext(SystemConfig.MONITOR_PARKING_SPACE_REGISTER_PATH, new ParkingSpaceRegisterHttpHandler(this));
+		httpServ.createContext(SystemConfig.MONITOR_GATE_HEARTBEAT_PATH, new GateHeartbeatHttpHandler(this));
+		httpServ.createContext(SystemConfig.MONITOR_ROSTER_LOAD_PATH, new RosterLoadHttpHandler(this));
 		httpServ.start();
 	}
 
@@ -335,20 +673,7 @@ public class Monitor implements Runnable {
 			log("Accepting Traffic Generator connections at " + serv.getLocalSocketAddress());
 			while (true) {
 				final Socket socket = serv.accept();
-				TrafficGeneratorProto.GateAddressListRequest galr = TrafficGeneratorProto.GateAddressListRequest
-						.parseDelimitedFrom(socket.getInputStream());
-				if (galr == null) {
-					continue;
-				}
-				ArrayList<TrafficGeneratorProto.GateAddress> al = new ArrayList<>();
-				this.gatesLock.lock();
-				for (GateInfo gi : this.gates) {
-					al.add(gi.addr);
-				}
-				this.gatesLock.unlock();
-				TrafficGeneratorProto.GateAddressListResponse.newBuilder().addAllGateAddress(al)
-						.build().writeDelimitedTo(socket.getOutputStream());
-
+				rosterServer.execute(() -> serveRosterRequests(socket));
 			}
 		} catch (IOException e) {
 			reportError("unable to set up TCP server socket: " + e.getMessage());
@@ -356,6 +681,23 @@ public class Monitor implements Runnable {
 		}
 	}
 
+	// answers the roster requests of a traffic generator until it hangs up
+	private void serveRosterRequests(Socket socket) {
+		try {
+			while (TrafficGeneratorProto.GateAddressListRequest.parseDelimitedFrom(socket.getInputStream()) != null) {
+				this.gates.snapshot().roster().writeDelimitedTo(socket.getOutputStream());
+			}
+		} catch (IOException e) {
+			reportError("problem serving the gate list to a traffic generator: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				reportError("problem closing a traffic generator socket: " + e.getMessage());
+			}
+		}
+	}
+
 	private void scheduleStatsUpdate() {
 		executor.scheduleWithFixedDelay(() -> updateStatsFromGates(),
 				0, STATS_UPDATE_INTERVAL_IN_MILLISECONDS,
@@ -367,6 +709,10 @@ public class Monitor implements Runnable {
 		log("HTTP Service is up at " + httpServ.getAddress().toString());
 		this.scheduleStatsUpdate();
 		log("Periodically update gate's status.");
+		this.scheduleFailureDetection();
+		log("Watching gate heartbeats.");
+		this.scheduleRebalancing();
+		log("Periodically rebalance tokens by demand.");
 		this.listensTCPForTrafGen();
 	}
 
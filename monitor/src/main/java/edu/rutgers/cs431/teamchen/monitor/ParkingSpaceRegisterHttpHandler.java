@@ -5,6 +5,7 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import edu.rutgers.cs431.teamchen.proto.ParkingSpaceRegisterRequest;
 import edu.rutgers.cs431.teamchen.proto.ParkingSpaceRegisterResponse;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -22,7 +23,7 @@ public class ParkingSpaceRegisterHttpHandler implements HttpHandler {
     @Override
     public void handle(HttpExchange ex) throws IOException {
         InputStreamReader in = new InputStreamReader(ex.getRequestBody());
-        Gson gson = new Gson();
+        Gson gson = Wire.GSON;
         ParkingSpaceRegisterRequest reg = gson.fromJson(in, ParkingSpaceRegisterRequest.class);
         in.close();
         ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
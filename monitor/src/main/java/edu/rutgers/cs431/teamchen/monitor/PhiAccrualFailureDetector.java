@@ -0,0 +1,47 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+// Phi accrual failure detector over a gate's heartbeats.
+//
+// Instead of a yes/no timeout, it tells how suspicious the silence since the last heartbeat is given the
+// intervals seen so far: phi = -log10(P(no heartbeat for that long)). Intervals are taken as exponentially
+// distributed, which gives phi = elapsed / mean interval * log10(e).
+public class PhiAccrualFailureDetector {
+    private static final double PHI_FACTOR = 1.0 / Math.log(10.0);
+    private static final int MAX_SAMPLES = 100;
+
+    private final long[] intervals = new long[MAX_SAMPLES];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private long intervalSum = 0L;
+    private long lastHeartbeat;
+
+    // @param expectedInterval the heartbeat interval to assume until heartbeats arrive
+    // @param now the time the monitoring starts at, in milliseconds
+    public PhiAccrualFailureDetector(long expectedInterval, long now) {
+        this.lastHeartbeat = now;
+        this.addInterval(expectedInterval);
+    }
+
+    private void addInterval(long interval) {
+        if (sampleCount == MAX_SAMPLES) {
+            intervalSum -= intervals[nextSample];
+        } else {
+            sampleCount++;
+        }
+        intervals[nextSample] = interval;
+        intervalSum += interval;
+        nextSample = (nextSample + 1) % MAX_SAMPLES;
+    }
+
+    // records a heartbeat arriving at @param now
+    public synchronized void heartbeat(long now) {
+        this.addInterval(Math.max(now - lastHeartbeat, 1L));
+        this.lastHeartbeat = now;
+    }
+
+    // returns the suspicion level at @param now, the higher the more likely the gate is dead
+    public synchronized double phi(long now) {
+        double mean = (double) intervalSum / sampleCount;
+        return Math.max(now - lastHeartbeat, 0L) / mean * PHI_FACTOR;
+    }
+}
@@ -0,0 +1,31 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.RosterLoadResponse;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+
+public class RosterLoadHttpHandler implements HttpHandler {
+
+    private final Monitor mon;
+
+    public RosterLoadHttpHandler(Monitor mon) {
+        this.mon = mon;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        ex.getRequestBody().close();
+        RosterLoadResponse resp = mon.getRosterLoad();
+        ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+        OutputStreamWriter writer = new OutputStreamWriter(ex.getResponseBody());
+        Wire.GSON.toJson(resp, writer);
+        writer.flush();
+        writer.close();
+        ex.close();
+    }
+}
@@ -0,0 +1,103 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import edu.rutgers.cs431.teamchen.proto.GateStatResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Works out the token moves that bring each gate's free tokens in line with its share of the demand
+public class TokenRebalancer {
+    // weight of the newest sample in the smoothed demand
+    private static final double DEMAND_SMOOTHING = 0.3;
+    // deviations under this fraction of all free tokens are left alone
+    private static final double TOLERANCE = 0.05;
+
+    // moves smaller than this are not worth a round trip
+    private final long minMove;
+    // the time the queued cars should be served within, in milliseconds
+    private final long backlogHorizon;
+
+    public TokenRebalancer(long minMove, long backlogHorizon) {
+        this.minMove = Math.max(minMove, 1L);
+        this.backlogHorizon = backlogHorizon;
+    }
+
+    // folds fresh gate stats into the gate's smoothed demand, in cars per second.
+    // The demand is the arrival rate plus what it takes to drain the queue within the backlog horizon,
+    // so a gate starved of tokens still looks busy
+    public void observe(GateInfo info, GateStatResponse stats, long now) {
+        if (info.lastStatsAt != 0L && now > info.lastStatsAt) {
+            double seconds = (now - info.lastStatsAt) / 1000.0;
+            double arrivals = Math.max(stats.totalCarsArrived - info.lastCarsArrived, 0L) / seconds;
+            double backlog = stats.queueLength * 1000.0 / backlogHorizon;
+            info.demand = DEMAND_SMOOTHING * (arrivals + backlog) + (1 - DEMAND_SMOOTHING) * info.demand;
+        }
+        info.lastStatsAt = now;
+        info.lastCarsArrived = stats.totalCarsArrived;
+        info.queueLength = stats.queueLength;
+    }
+
+    // returns the moves from the gates holding more free tokens than their demand calls for
+    // to the ones holding fewer
+    public ArrayList<Move> plan(List<GateInfo> gates) {
+        ArrayList<Move> moves = new ArrayList<>();
+        double totalDemand = 0;
+        long totalFree = 0;
+        for (GateInfo gi : gates) {
+            totalDemand += gi.demand;
+            totalFree += gi.freeTokens;
+        }
+        if (totalDemand <= 0 || totalFree == 0) {
+            return moves;
+        }
+        long threshold = Math.max(minMove, (long) (totalFree * TOLERANCE));
+
+        // indices of the gates with too many and too few free tokens
+        ArrayList<Integer> donors = new ArrayList<>();
+        ArrayList<Integer> receivers = new ArrayList<>();
+        final long[] surplus = new long[gates.size()];
+        for (int i = 0; i < gates.size(); i++) {
+            GateInfo gi = gates.get(i);
+            long target = Math.round(totalFree * gi.demand / totalDemand);
+            surplus[i] = gi.freeTokens - target;
+            if (surplus[i] >= threshold) {
+                donors.add(i);
+            } else if (-surplus[i] >= threshold) {
+                receivers.add(i);
+            }
+        }
+        // pair the largest surpluses with the largest deficits
+        donors.sort((a, b) -> Long.compare(surplus[b], surplus[a]));
+        receivers.sort((a, b) -> Long.compare(surplus[a], surplus[b]));
+
+        int d = 0, r = 0;
+        while (d < donors.size() && r < receivers.size()) {
+            int from = donors.get(d), to = receivers.get(r);
+            long count = Math.min(surplus[from], -surplus[to]);
+            if (count >= minMove) {
+                moves.add(new Move(gates.get(from), gates.get(to), count));
+            }
+            surplus[from] -= count;
+            surplus[to] += count;
+            if (surplus[from] < minMove) {
+                d++;
+            }
+            if (-surplus[to] < minMove) {
+                r++;
+            }
+        }
+        return moves;
+    }
+
+    public static class Move {
+        public final GateInfo from;
+        public final GateInfo to;
+        public final long count;
+
+        public Move(GateInfo from, GateInfo to, long count) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+        }
+    }
+}
@@ -1,52 +1,98 @@
 package edu.rutgers.cs431.teamchen.monitor;
 
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 
 public interface TokenReservoir {
-    // gets the next batch of token,
-    // make sure they are unique
-    ArrayList<String> next() throws Exception;
+    // gets the initial tokens of a newly registered gate,
+    // make sure they are unique. Empty once every token is held by a gate
+    ArrayList<TokenRange> next();
+
+    // the least number of tokens a gate is owed in a ring of @param gates gates: the capacity split evenly over
+    // them, or over the expected gates while there are fewer
+    long fairShare(int gates);
 
-    class Basic implements TokenReservoir {
-        // total number of batches to generate
-        private long maxBatch;
-        private long total;
+    // takes back tokens no longer held by any gate, .ie the tokens of a dead gate,
+    // so they can be issued again
+    void reclaim(List<TokenRange> tokens);
 
-        private int batchCounter = 0;
-        private long leftOut;
+    // takes at most n tokens out of the reservoir
+    ArrayList<TokenRange> take(long n);
 
+    // the number of tokens not held by any gate
+    long available();
 
-        private long trackingNum = 0L;
+    // Keeps the tokens not held by any gate as ranges, so handing out a batch costs the same
+    // no matter how large the parking capacity is
+    class Ranged implements TokenReservoir {
+        private final long total;
+        // the number of gates the capacity is split over on registration
+        private final int expectedGates;
+        private final ArrayDeque<TokenRange> free = new ArrayDeque<>();
+        private long available;
+        // the gates registered so far
+        private int registered = 0;
 
-        public Basic(long total, long maxBatch) {
+        public Ranged(long total, int expectedGates) {
             this.total = total;
-            this.maxBatch = maxBatch;
-            this.leftOut = total % maxBatch;
+            this.expectedGates = Math.max(expectedGates, 1);
+            this.available = total;
+            if (total > 0) {
+                free.add(new TokenRange(0L, total));
+            }
         }
 
-        private long getJumpingRate() {
-            return (total - leftOut) / maxBatch;
+        // the capacity split over the expected gates, the first total % expectedGates of them get a token more
+        // so every token is handed out
+        @Override
+        public synchronized ArrayList<TokenRange> next() {
+            long share = total / expectedGates + (registered < total % expectedGates ? 1 : 0);
+            registered++;
+            return this.take(share);
         }
 
+        @Override
+        public long fairShare(int gates) {
+            return total / Math.max(gates, expectedGates);
+        }
 
         @Override
-        public synchronized ArrayList<String> next() throws Exception {
-            ArrayList<String> batch = new ArrayList<>();
-            long upperBound = 0;
-            if (batchCounter == maxBatch) {
-                throw new Exception("token capacity exceeded.");
-            } else if (batchCounter == maxBatch - 1) {
-                upperBound = this.getJumpingRate();
-
-            } else {
-                upperBound = this.getJumpingRate() + this.leftOut;
+        public synchronized void reclaim(List<TokenRange> tokens) {
+            if (tokens == null) {
+                return;
             }
+            for (TokenRange r : tokens) {
+                if (r.length > 0) {
+                    free.add(new TokenRange(r.start, r.length));
+                    available += r.length;
+                }
+            }
+        }
 
-            for (long i = 0; i < upperBound; i++) {
-                batch.add(Long.toString(trackingNum));
-                trackingNum++;
+        @Override
+        public synchronized ArrayList<TokenRange> take(long n) {
+            ArrayList<TokenRange> batch = new ArrayList<>();
+            while (n > 0 && !free.isEmpty()) {
+                TokenRange r = free.peekFirst();
+                long cut = Math.min(n, r.length);
+                batch.add(new TokenRange(r.start, cut));
+                r.start += cut;
+                r.length -= cut;
+                if (r.length == 0) {
+                    free.pollFirst();
+                }
+                available -= cut;
+                n -= cut;
             }
             return batch;
         }
+
+        @Override
+        public synchronized long available() {
+            return available;
+        }
     }
 }
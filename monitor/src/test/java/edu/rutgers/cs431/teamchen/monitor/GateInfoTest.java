@@ -0,0 +1,80 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+public class GateInfoTest {
+
+    private static List<TokenRange> range(long start, long length) {
+        return Collections.singletonList(new TokenRange(start, length));
+    }
+
+    private static String format(ArrayList<TokenRange> ranges) {
+        StringBuilder sb = new StringBuilder();
+        for (TokenRange r : ranges) {
+            sb.append(r.start).append('+').append(r.length).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void testTokenHandedOutAfterTheLastHeartbeatIsNotReclaimed() {
+        GateInfo gi = new GateInfo();
+        // the gate reports 0..19 and may hand out 0..7 until the monitor hears from it again
+        Assert.assertTrue(gi.onReport(1L, range(0, 20), range(0, 8), 0L));
+        Assert.assertEquals(20, gi.freeTokens);
+
+        // the gate hands out token 3 and dies before its next heartbeat
+        gi.markDead();
+        ArrayList<TokenRange> reclaimed = gi.tokensToReclaim();
+        Assert.assertEquals("8+12", format(reclaimed));
+    }
+
+    @Test
+    public void testStaleHeartbeatIsIgnored() {
+        GateInfo gi = new GateInfo();
+        gi.onReport(2L, range(0, 20), range(0, 8), 0L);
+        Assert.assertTrue(gi.onReport(1L, range(0, 30), range(0, 0), 0L));
+        Assert.assertEquals("8+12", format(gi.tokensToReclaim()));
+    }
+
+    @Test
+    public void testTokensMovedOffAreNotReclaimed() {
+        GateInfo gi = new GateInfo();
+        gi.onReport(1L, range(0, 20), range(0, 8), 0L);
+        gi.onMovedOut(1L, range(15, 5));
+        Assert.assertEquals("8+7", format(gi.tokensToReclaim()));
+
+        // a heartbeat after the move no longer has them
+        gi.onReport(2L, range(0, 15), range(0, 8), 0L);
+        gi.onMovedOut(1L, range(0, 1));
+        Assert.assertEquals("8+7", format(gi.tokensToReclaim()));
+    }
+
+    @Test
+    public void testNothingReclaimedAfterAnUnansweredMove() {
+        GateInfo gi = new GateInfo();
+        gi.onReport(1L, range(0, 20), range(0, 8), 0L);
+        gi.onMoveUnanswered(1000L);
+        Assert.assertTrue(gi.tokensToReclaim().isEmpty());
+
+        // a heartbeat long enough after the move has what it left
+        gi.onReport(2L, range(0, 20), range(0, 8), 1000L + GateInfo.MOVE_SETTLE_MILLIS);
+        Assert.assertEquals("8+12", format(gi.tokensToReclaim()));
+    }
+
+    @Test
+    public void testDeadGateHeartbeatsAreRefused() {
+        GateInfo gi = new GateInfo();
+        gi.onReport(1L, range(0, 20), range(0, 8), 0L);
+        gi.markDead();
+        Assert.assertFalse(gi.onReport(2L, range(0, 20), range(0, 20), 0L));
+        Assert.assertEquals("8+12", format(gi.tokensToReclaim()));
+    }
+}
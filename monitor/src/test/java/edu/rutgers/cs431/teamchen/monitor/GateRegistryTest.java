@@ -0,0 +1,76 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class GateRegistryTest {
+
+    private static GateInfo gate(String addr) {
+        GateInfo gi = new GateInfo();
+        gi.httpAddress = addr;
+        gi.id = addr;
+        return gi;
+    }
+
+    @Test
+    public void testNeighboursWrapAround() {
+        GateRegistry registry = new GateRegistry();
+        GateInfo a = gate("a"), b = gate("b"), c = gate("c");
+        registry.add(a);
+        registry.add(b);
+        registry.add(c);
+        GateRegistry.Ring ring = registry.snapshot();
+
+        Assert.assertEquals(Arrays.asList("c", "b"), ring.neighbourAddrs("a"));
+        Assert.assertEquals(Arrays.asList("b", "a"), ring.neighbourAddrs("c"));
+        Assert.assertSame(b, registry.get("b"));
+    }
+
+    @Test
+    public void testSnapshotUnchangedByRemoval() {
+        GateRegistry registry = new GateRegistry();
+        GateInfo a = gate("a"), b = gate("b");
+        registry.add(a);
+        registry.add(b);
+        GateRegistry.Ring before = registry.snapshot();
+
+        GateRegistry.Ring after = registry.removeAll(Collections.singletonList(a));
+
+        Assert.assertEquals(2, before.gates.size());
+        Assert.assertEquals(1, after.gates.size());
+        Assert.assertNull(registry.get("a"));
+        Assert.assertEquals(new ArrayList<String>(), after.neighbourAddrs("b"));
+    }
+
+    @Test
+    public void testReRegisterHandsBackTheReplacedGate() {
+        GateRegistry registry = new GateRegistry();
+        GateInfo first = gate("a");
+        Assert.assertNull(registry.add(first));
+        GateInfo again = gate("a");
+
+        // the monitor takes back the tokens of the replaced gate
+        Assert.assertSame(first, registry.add(again));
+        Assert.assertEquals(1, registry.size());
+        Assert.assertSame(again, registry.get("a"));
+        Assert.assertFalse(registry.wasRemoved("a"));
+    }
+
+    @Test
+    public void testRemembersRemovedGatesUntilTheyRegisterAgain() {
+        GateRegistry registry = new GateRegistry();
+        GateInfo a = gate("a");
+        registry.add(a);
+        registry.removeAll(Collections.singletonList(a));
+
+        Assert.assertTrue(registry.wasRemoved("a"));
+        Assert.assertFalse(registry.wasRemoved("b"));
+        registry.add(gate("a"));
+        Assert.assertFalse(registry.wasRemoved("a"));
+    }
+}
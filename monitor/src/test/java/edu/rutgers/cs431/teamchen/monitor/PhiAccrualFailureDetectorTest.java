@@ -0,0 +1,43 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PhiAccrualFailureDetectorTest {
+
+    private static final long INTERVAL = 500;
+
+    @Test
+    public void testSuspicionGrowsWithSilence() {
+        PhiAccrualFailureDetector fd = new PhiAccrualFailureDetector(INTERVAL, 0);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            now += INTERVAL;
+            fd.heartbeat(now);
+        }
+
+        Assert.assertEquals(0.0, fd.phi(now), 1e-9);
+        Assert.assertTrue(fd.phi(now + INTERVAL) < 1.0);
+        Assert.assertTrue(fd.phi(now + 20 * INTERVAL) > 5.0);
+        Assert.assertTrue(fd.phi(now + 20 * INTERVAL) > fd.phi(now + 10 * INTERVAL));
+    }
+
+    @Test
+    public void testAdaptsToSlowerHeartbeats() {
+        PhiAccrualFailureDetector fast = new PhiAccrualFailureDetector(INTERVAL, 0);
+        PhiAccrualFailureDetector slow = new PhiAccrualFailureDetector(INTERVAL, 0);
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            now += INTERVAL;
+            fast.heartbeat(now);
+            if (i % 4 == 3) {
+                slow.heartbeat(now);
+            }
+        }
+
+        // the same silence is less suspicious from a gate that usually beats slowly
+        Assert.assertTrue(slow.phi(now + 8 * INTERVAL) < fast.phi(now + 8 * INTERVAL));
+    }
+
+}
@@ -0,0 +1,40 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+public class TokenRebalancerTest {
+
+    private static GateInfo gate(String addr, double demand, long freeTokens) {
+        GateInfo gi = new GateInfo();
+        gi.httpAddress = addr;
+        gi.demand = demand;
+        gi.freeTokens = freeTokens;
+        return gi;
+    }
+
+    @Test
+    public void testMovesTokensTowardDemand() {
+        GateInfo idle = gate("idle", 1.0, 90);
+        GateInfo busy = gate("busy", 9.0, 10);
+        TokenRebalancer rb = new TokenRebalancer(2, 10000);
+
+        ArrayList<TokenRebalancer.Move> moves = rb.plan(Arrays.asList(idle, busy));
+        Assert.assertEquals(1, moves.size());
+        Assert.assertSame(idle, moves.get(0).from);
+        Assert.assertSame(busy, moves.get(0).to);
+        Assert.assertEquals(80, moves.get(0).count);
+    }
+
+    @Test
+    public void testLeavesBalancedGatesAlone() {
+        TokenRebalancer rb = new TokenRebalancer(2, 10000);
+        Assert.assertEquals(0, rb.plan(Arrays.asList(gate("a", 5.0, 51), gate("b", 5.0, 49))).size());
+        Assert.assertEquals(0, rb.plan(Arrays.asList(gate("a", 0.0, 100), gate("b", 0.0, 0))).size());
+    }
+
+}
@@ -0,0 +1,37 @@
+package edu.rutgers.cs431.teamchen.monitor;
+
+import edu.rutgers.cs431.teamchen.proto.TokenRange;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TokenReservoirTest {
+
+    @Test
+    public void testRemainderGoesToTheFirstGates() {
+        TokenReservoir reservoir = new TokenReservoir.Ranged(11, 3);
+        Assert.assertEquals(4, TokenRange.count(reservoir.next()));
+        Assert.assertEquals(4, TokenRange.count(reservoir.next()));
+        Assert.assertEquals(3, TokenRange.count(reservoir.next()));
+        Assert.assertEquals(0, reservoir.available());
+        Assert.assertEquals(0, TokenRange.count(reservoir.next()));
+    }
+
+    @Test
+    public void testFairShareSplitsOverTheExpectedGatesAtLeast() {
+        TokenReservoir reservoir = new TokenReservoir.Ranged(12, 3);
+        Assert.assertEquals(4, reservoir.fairShare(1));
+        Assert.assertEquals(4, reservoir.fairShare(3));
+        Assert.assertEquals(3, reservoir.fairShare(4));
+    }
+
+    @Test
+    public void testShortGrantAfterTokensWentElsewhere() {
+        TokenReservoir reservoir = new TokenReservoir.Ranged(12, 3);
+        reservoir.next();
+        reservoir.take(6);
+        // the second gate gets what is left, short of its share by 2
+        Assert.assertEquals(2, TokenRange.count(reservoir.next()));
+        Assert.assertEquals(2, reservoir.fairShare(2) - 2);
+    }
+}
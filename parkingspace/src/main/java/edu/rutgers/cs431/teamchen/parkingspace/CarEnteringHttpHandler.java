@@ -1,12 +1,12 @@
 package edu.rutgers.cs431.teamchen.parkingspace;
 
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import edu.rutgers.cs431.teamchen.proto.CarWithToken;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 
 public class CarEnteringHttpHandler implements HttpHandler {
@@ -19,10 +19,7 @@ public class CarEnteringHttpHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange ex) throws IOException {
-        Gson gson = new Gson();
-        InputStreamReader reqBody = new InputStreamReader(ex.getRequestBody());
-        CarWithToken cwt = gson.fromJson(reqBody, CarWithToken.class);
-        reqBody.close();
+        CarWithToken cwt = Wire.readRequest(ex, CarWithToken.class, Codecs.CAR_WITH_TOKEN);
 
         ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
         // close the http connection
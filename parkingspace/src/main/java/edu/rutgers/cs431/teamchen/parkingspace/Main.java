@@ -15,6 +15,8 @@ public class Main {
                 ": 8081");
         options.addOption("h", "help", false, "Print this help message");
         options.addOption("ts", "time-service", true, "The tcp address of the time service in \"host:port\"");
+        options.addOption("tb", "time-beacons", false, "Follow the time service's multicast beacons instead of " +
+                "polling it");
 
         CommandLine cmd = null;
         try {
@@ -56,7 +58,7 @@ public class Main {
 
         try {
             ParkingSpace parkingSpace = new ParkingSpace(monitorHttpAddr, httpPort, timeServiceAddr[0], Integer
-                    .parseInt(timeServiceAddr[1]));
+                    .parseInt(timeServiceAddr[1]), cmd.hasOption("tb"));
             parkingSpace.run();
         } catch (MalformedURLException e) {
             System.err.println("Invalid URL: " + e.getMessage());
@@ -1,115 +1,152 @@
 package edu.rutgers.cs431.teamchen.parkingspace;
 
-import com.google.gson.Gson;
-import com.sun.net.httpserver.HttpServer;
 import edu.rutgers.cs431.teamchen.proto.CarWithToken;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
 import edu.rutgers.cs431.teamchen.proto.ParkingSpaceRegisterRequest;
-import edu.rutgers.cs431.teamchen.proto.ParkingSpaceRegisterResponse;
-import edu.rutgers.cs431.teamchen.util.DataFormatter;
+import edu.rutgers.cs431.teamchen.util.EventLog;
+import edu.rutgers.cs431.teamchen.util.FlightEvents;
 import edu.rutgers.cs431.teamchen.util.GateAddressBook;
+import edu.rutgers.cs431.teamchen.util.MetricsRegistry;
+import edu.rutgers.cs431.teamchen.util.ServiceHost;
 import edu.rutgers.cs431.teamchen.util.SyncClock;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import edu.rutgers.cs431.teamchen.util.TraceBuffer;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Wire;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.*;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.Collections;
 import java.util.Random;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
 
 public class ParkingSpace implements Runnable {
+    // the parking space's stages in the traces
+    private static final String TRACE_COMPONENT = "parkingspace";
+
     private final int httpPort;
     private final URL monitorAddr;
     private final GateAddressBook gateAddressBook = new GateAddressBook();
-    private final PriorityQueue<CarWithToken> parkedQ = new PriorityQueue<>(new CWTComparator());
     private SyncClock clock;
-    private HttpServer httpServer;
-    private Lock parkedQLock = new ReentrantLock();
-    private Condition notEmpty = parkedQLock.newCondition();
+    private ServiceHost httpServer;
+    private final MetricsRegistry.Counter enteredMetric = MetricsRegistry.get().counter(
+            "parking_cars_entered_total", "Cars the gates handed to the parking space");
+    private final MetricsRegistry.Counter departedMetric = MetricsRegistry.get().counter(
+            "parking_cars_departed_total", "Cars sent back out through a gate");
+    private final MetricsRegistry.Counter departFailedMetric = MetricsRegistry.get().counter(
+            "parking_departures_failed_total", "Cars no gate took back");
+    private final MetricsRegistry.Histogram departureLagMetric = MetricsRegistry.get().histogram(
+            "parking_departure_lag_ms", "Simulated time between a car's departure time and it leaving");
+    private final MetricsRegistry.Histogram gateCallMetric = MetricsRegistry.get().histogram(
+            "parking_gate_call_us", "Latency of handing a leaving car to a gate");
 
     public ParkingSpace(String monitorAddress, int httpPort, String trafGenAddr, int trafGenPort) throws IOException {
+        this(monitorAddress, httpPort, trafGenAddr, trafGenPort, false);
+    }
+
+    public ParkingSpace(String monitorAddress, int httpPort, String trafGenAddr, int trafGenPort,
+                        boolean timeBeacons) throws IOException {
         this.httpPort = httpPort;
         this.monitorAddr = new URL(monitorAddress);
-        this.clock = new SyncClock(trafGenAddr, trafGenPort);
+        this.clock = new SyncClock(trafGenAddr, trafGenPort, timeBeacons);
+        MetricsRegistry.get().gauge("parking_cars_parked", "Cars in the parking space", () -> enteredMetric.get() -
+                departedMetric.get() - departFailedMetric.get());
     }
 
     private static void reportError(String msg) {
-        System.out.println("WARNING: " + msg);
+        EventLog.warning(msg);
     }
 
+    // through the event log, so it keeps its place among the car lines
     private static void log(String msg) {
-        System.out.println("INFO: " + msg);
+        EventLog.info(msg);
     }
 
     public void onCarEntering(CarWithToken cwt) {
-        log("(Gate->ParkingSpace) " + DataFormatter.format(cwt));
+        EventLog.info("(Gate->ParkingSpace) ", cwt);
+        cwt.parkedAt = this.clock.getTime();
+        TraceBuffer.get().record(cwt.traceId, TraceBuffer.TRANSFER, TRACE_COMPONENT, cwt.tokenAt, cwt.parkedAt);
+        this.enteredMetric.inc();
         this.letCarPark(cwt);
     }
 
+    // the car leaves on the clock's timer at its departure time
     private void letCarPark(CarWithToken cwt) {
-        parkedQLock.lock();
-        this.parkedQ.add(cwt);
-        notEmpty.signal();
-        parkedQLock.unlock();
+        this.clock.schedule(cwt.departureTimestamp, () -> new Thread(() -> onCarDepart(cwt)).start());
     }
 
-    // sends the car to a random gate
+    // sends the car to a random gate, and on to the others if that one can't take it: a dead gate stays in the
+    // address book until the monitor notices, and the car's token would be lost with it
     private void onCarDepart(CarWithToken cwt) {
-        ArrayList<URL> gates = this.gateAddressBook.getAddresses();
-        // Pick a random gate
-        Random r = new Random(this.clock.getTime());
-
-        URL gate = gates.get(r.nextInt(gates.size()));
-        try {
-            Gson gson = new Gson();
-            HttpURLConnection conn = (HttpURLConnection) new URL(gate, SystemConfig.GATE_CAR_LEAVING_PATH)
-                    .openConnection();
-            conn.setDoOutput(true);
-            OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-            gson.toJson(cwt, writer);
-            writer.flush();
-            writer.close();
-
-            if (conn.getResponseCode() != 200) {
-                reportError("can't send car back to gate: status not OK");
+        ArrayList<URL> known = this.gateAddressBook.getAddresses();
+        ArrayList<URL> gates = known == null ? new ArrayList<>() : new ArrayList<>(known);
+        Collections.shuffle(gates, new Random(this.clock.getTime()));
+
+        cwt.departedAt = this.clock.getTime();
+        this.departureLagMetric.record(Math.max(0L, cwt.departedAt - cwt.departureTimestamp));
+        TraceBuffer.get().record(cwt.traceId, TraceBuffer.PARK, TRACE_COMPONENT, cwt.parkedAt, cwt.departedAt);
+        FlightEvents.CarDeparted event = FlightEvents.ENABLED ? new FlightEvents.CarDeparted() : null;
+        if (event != null) {
+            event.begin();
+        }
+        URL gate = null;
+        for (URL g : gates) {
+            gate = g;
+            Departure d = sendThrough(cwt, g);
+            if (d == Departure.TAKEN) {
+                this.departedMetric.inc();
+                commitDeparture(event, cwt, g, true);
+                EventLog.info("(ParkingSpace->Gate) ", cwt);
+                return;
+            }
+            if (d == Departure.UNKNOWN) {
+                break;
             }
-
-            log("(ParkingSpace->Gate) " + DataFormatter.format(cwt));
-            conn.disconnect();
-        } catch (IOException e) {
-            reportError("can't send car through gate " + gate.toString() + " " + e.getMessage());
         }
+        this.departFailedMetric.inc();
+        commitDeparture(event, cwt, gate, false);
     }
 
-    // gets the earliest car out of the queue to look down on...
-    private CarWithToken earliestCarToLeave() {
+    private enum Departure {
+        TAKEN,
+        REFUSED,
+        // the gate didn't answer in time and may have taken the token, another gate would count it twice
+        UNKNOWN
+    }
+
+    private Departure sendThrough(CarWithToken cwt, URL gate) {
         try {
-            parkedQLock.lock();
-            while (parkedQ.size() == 0) {
-                notEmpty.await();
+            long start = System.nanoTime();
+            if (Wire.call(gate, SystemConfig.GATE_CAR_LEAVING_PATH, cwt, Codecs.CAR_WITH_TOKEN).code != 200) {
+                reportError("can't send car back to gate " + gate.toString() + ": status not OK");
+                return Departure.REFUSED;
             }
-            CarWithToken early = this.parkedQ.remove();
-            return early;
-        } catch (InterruptedException e) {
-
-        } finally {
-            parkedQLock.unlock();
+            this.gateCallMetric.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            return Departure.TAKEN;
+        } catch (SocketTimeoutException e) {
+            reportError("no answer from gate " + gate.toString() + " for a leaving car: " + e.getMessage());
+            return Departure.UNKNOWN;
+        } catch (IOException e) {
+            reportError("can't send car through gate " + gate.toString() + " " + e.getMessage());
+            return Departure.REFUSED;
         }
-        return null;
     }
 
-    // waits for this car til it departs
-    private void activelyWaitThenDepart(CarWithToken cwt) {
-        while (this.clock.getTime() < cwt.departureTimestamp) {
-            continue;
+    private static void commitDeparture(FlightEvents.CarDeparted event, CarWithToken cwt, URL gate,
+                                        boolean succeeded) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.gate = String.valueOf(gate);
+            event.traceId = cwt.traceId;
+            event.token = cwt.token;
+            event.lag = Math.max(0L, cwt.departedAt - cwt.departureTimestamp);
+            event.succeeded = succeeded;
+            event.commit();
         }
-        // allows car to leave
-        new Thread(() -> onCarDepart(cwt)).start();
     }
 
     private void registersWithMonitor() throws IOException {
@@ -118,35 +155,16 @@ public class ParkingSpace implements Runnable {
         req.httpPort = this.httpPort;
 
 
-        URL url = null;
-        try {
-            url = new URL(this.monitorAddr, SystemConfig.MONITOR_PARKING_SPACE_REGISTER_PATH);
-        } catch (MalformedURLException e) {
-            reportError("registersWithMonitor: malformed url: " + this.monitorAddr.toString() + ": " + e.getMessage());
-        }
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setDoOutput(true);
-        OutputStreamWriter writer = new OutputStreamWriter(conn.getOutputStream());
-        Gson gson = new Gson();
-        gson.toJson(req, writer);
-        writer.flush();
-        writer.close();
-
-        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        Transport.Reply reply = Wire.call(this.monitorAddr, SystemConfig.MONITOR_PARKING_SPACE_REGISTER_PATH, req);
+        if (reply.code != HttpURLConnection.HTTP_OK) {
             reportError("Something went wrong, can't register the parking space to the monitor");
             throw new IOException("can't register the Parking Space!");
         }
-        InputStreamReader reader = new InputStreamReader(conn.getInputStream());
-        ParkingSpaceRegisterResponse resp = gson.fromJson(reader, ParkingSpaceRegisterResponse.class);
-        reader.close();
-        conn.disconnect();
     }
 
     public void http() {
         try {
-            httpServer = HttpServer.create();
-            httpServer.bind(new InetSocketAddress("localhost", this.httpPort), SystemConfig
-                    .MAXIMUM_HTTP_CONNECTIONS);
+            httpServer = new ServiceHost("localhost", this.httpPort);
         } catch (IOException e) {
             reportError("Unable to create the http service for parking space: " + e.getMessage());
             System.exit(1);
@@ -166,29 +184,5 @@ public class ParkingSpace implements Runnable {
             reportError(e.getMessage());
             System.exit(1);
         }
-        while (true) {
-            CarWithToken cwt = this.earliestCarToLeave();
-            activelyWaitThenDepart(cwt);
-        }
     }
-
-    private class CWTComparator implements Comparator<CarWithToken> {
-        @Override
-        public int compare(CarWithToken a, CarWithToken b) {
-            if (a.departureTimestamp < b.departureTimestamp) {
-                return -1;
-            } else if (a.departureTimestamp == b.departureTimestamp) {
-                return 0;
-            } else {
-                return 1;
-            }
-        }
-
-        @Override
-        public boolean equals(Object a) {
-            return false;
-        }
-    }
-
-
 }
@@ -0,0 +1,12 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+// Gate -> Gate: a car the sending gate had no room for.
+// The receiving gate queues it only if it has room itself, a redirected car is never passed on again.
+public class CarRedirectRequest {
+    public long arrivalTimestamp;
+    public long departureTimestamp;
+    // when the car first queued at the sending gate, so its waiting time counts from there
+    public long queuedAt;
+    // the car keeps its trace
+    public long traceId;
+}
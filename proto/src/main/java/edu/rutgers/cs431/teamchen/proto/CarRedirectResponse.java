@@ -0,0 +1,7 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+public class CarRedirectResponse {
+    public boolean accepted;
+    // how many more cars the gate can queue after this one
+    public int headroom;
+}
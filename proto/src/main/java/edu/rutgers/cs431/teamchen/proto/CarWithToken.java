@@ -10,6 +10,18 @@ public class CarWithToken {
     public long arrivalTimestamp;
     public long departureTimestamp;
     public String token;
+    // the car's trace, 0 if it isn't traced, see util.TraceBuffer
+    public long traceId;
+    // the simulated times the car queued at the gate, got its token, entered the parking space and left it,
+    // 0 for the stages it hasn't reached
+    public long queuedAt;
+    public long tokenAt;
+    public long parkedAt;
+    public long departedAt;
+
+    // for decoding, see Codecs
+    CarWithToken() {
+    }
 
     public CarWithToken(TrafficGeneratorProto.Car car, String token) {
         this.arrivalTimestamp = car.getArrivalTimestamp();
@@ -0,0 +1,620 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The protobuf codecs of the messages in src/main/proto/parkinglot.proto.
+// Zero values and nulls are left out like proto3 does, and unknown fields are skipped when reading.
+public class Codecs {
+
+    public static final ProtoCodec<CarWithToken> CAR_WITH_TOKEN = new ProtoCodec<CarWithToken>() {
+        @Override
+        public void write(CarWithToken msg, CodedOutputStream out) throws IOException {
+            writeInt64(out, 1, msg.arrivalTimestamp);
+            writeInt64(out, 2, msg.departureTimestamp);
+            writeString(out, 3, msg.token);
+            writeInt64(out, 4, msg.traceId);
+            writeInt64(out, 5, msg.queuedAt);
+            writeInt64(out, 6, msg.tokenAt);
+            writeInt64(out, 7, msg.parkedAt);
+            writeInt64(out, 8, msg.departedAt);
+        }
+
+        @Override
+        public CarWithToken read(CodedInputStream in) throws IOException {
+            CarWithToken msg = new CarWithToken();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        msg.arrivalTimestamp = in.readInt64();
+                        break;
+                    case 2:
+                        msg.departureTimestamp = in.readInt64();
+                        break;
+                    case 3:
+                        msg.token = in.readString();
+                        break;
+                    case 4:
+                        msg.traceId = in.readInt64();
+                        break;
+                    case 5:
+                        msg.queuedAt = in.readInt64();
+                        break;
+                    case 6:
+                        msg.tokenAt = in.readInt64();
+                        break;
+                    case 7:
+                        msg.parkedAt = in.readInt64();
+                        break;
+                    case 8:
+                        msg.departedAt = in.readInt64();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return msg;
+        }
+    };
+
+    public static final ProtoCodec<ShareTokenRequest> SHARE_TOKEN_REQUEST = new ProtoCodec<ShareTokenRequest>() {
+        @Override
+        public void write(ShareTokenRequest msg, CodedOutputStream out) {
+        }
+
+        @Override
+        public ShareTokenRequest read(CodedInputStream in) throws IOException {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                in.skipField(tag);
+            }
+            return new ShareTokenRequest();
+        }
+    };
+
+    public static final ProtoCodec<ShareTokenResponse> SHARE_TOKEN_RESPONSE = new ProtoCodec<ShareTokenResponse>() {
+        @Override
+        public void write(ShareTokenResponse msg, CodedOutputStream out) throws IOException {
+            writeString(out, 1, msg.token);
+        }
+
+        @Override
+        public ShareTokenResponse read(CodedInputStream in) throws IOException {
+            ShareTokenResponse msg = new ShareTokenResponse();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == 1) {
+                    msg.token = in.readString();
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return msg;
+        }
+    };
+
+    public static final ProtoCodec<GateStatResponse> GATE_STAT_RESPONSE = new ProtoCodec<GateStatResponse>() {
+        @Override
+        public void write(GateStatResponse msg, CodedOutputStream out) throws IOException {
+            writeInt64(out, 1, msg.totalWaitingTime);
+            writeInt64(out, 2, msg.totalCarsProcessed);
+            writeInt64(out, 3, msg.lastTimeProcessedCar);
+            writeInt64(out, 4, msg.totalCarsArrived);
+            writeInt64(out, 5, msg.queueLength);
+            writeInt64(out, 6, msg.carsRedirected);
+            writeInt64(out, 7, msg.carsDropped);
+            writeHistogram(out, 8, msg.queueWait);
+            writeHistogram(out, 9, msg.tokenWait);
+            writeDouble(out, 10, msg.arrivalRate);
+            writeDouble(out, 11, msg.processRate);
+            writeInt64(out, 12, msg.queueWaitP50);
+            writeInt64(out, 13, msg.queueWaitP99);
+            writeInt64(out, 14, msg.queueWaitP999);
+            writeInt64(out, 15, msg.tokenWaitP50);
+            writeInt64(out, 16, msg.tokenWaitP99);
+            writeInt64(out, 17, msg.tokenWaitP999);
+        }
+
+        @Override
+        public GateStatResponse read(CodedInputStream in) throws IOException {
+            GateStatResponse msg = new GateStatResponse();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        msg.totalWaitingTime = in.readInt64();
+                        break;
+                    case 2:
+                        msg.totalCarsProcessed = in.readInt32();
+                        break;
+                    case 3:
+                        msg.lastTimeProcessedCar = in.readInt64();
+                        break;
+                    case 4:
+                        msg.totalCarsArrived = in.readInt64();
+                        break;
+                    case 5:
+                        msg.queueLength = in.readInt32();
+                        break;
+                    case 6:
+                        msg.carsRedirected = in.readInt64();
+                        break;
+                    case 7:
+                        msg.carsDropped = in.readInt64();
+                        break;
+                    case 8:
+                        msg.queueWait = readHistogram(in);
+                        break;
+                    case 9:
+                        msg.tokenWait = readHistogram(in);
+                        break;
+                    case 10:
+                        msg.arrivalRate = in.readDouble();
+                        break;
+                    case 11:
+                        msg.processRate = in.readDouble();
+                        break;
+                    case 12:
+                        msg.queueWaitP50 = in.readInt64();
+                        break;
+                    case 13:
+                        msg.queueWaitP99 = in.readInt64();
+                        break;
+                    case 14:
+                        msg.queueWaitP999 = in.readInt64();
+                        break;
+                    case 15:
+                        msg.tokenWaitP50 = in.readInt64();
+                        break;
+                    case 16:
+                        msg.tokenWaitP99 = in.readInt64();
+                        break;
+                    case 17:
+                        msg.tokenWaitP999 = in.readInt64();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return msg;
+        }
+    };
+
+    public static final ProtoCodec<GateHttpAddressesChangeRequest> GATE_HTTP_ADDRESSES_CHANGE_REQUEST =
+            new ProtoCodec<GateHttpAddressesChangeRequest>() {
+                @Override
+                public void write(GateHttpAddressesChangeRequest msg, CodedOutputStream out) throws IOException {
+                    if (msg.gateHttpAddrs != null) {
+                        for (String addr : msg.gateHttpAddrs) {
+                            out.writeString(1, addr);
+                        }
+                    }
+                    writeInt64(out, 2, msg.epoch);
+                }
+
+                @Override
+                public GateHttpAddressesChangeRequest read(CodedInputStream in) throws IOException {
+                    GateHttpAddressesChangeRequest msg = new GateHttpAddressesChangeRequest(new ArrayList<>());
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.gateHttpAddrs.add(in.readString());
+                                break;
+                            case 2:
+                                msg.epoch = in.readInt64();
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<GateHeartbeatRequest> GATE_HEARTBEAT_REQUEST =
+            new ProtoCodec<GateHeartbeatRequest>() {
+                @Override
+                public void write(GateHeartbeatRequest msg, CodedOutputStream out) throws IOException {
+                    writeString(out, 1, msg.gateId);
+                    writeTokenRanges(out, 2, msg.tokens);
+                    writeInt64(out, 3, msg.queueLength);
+                    writeInt64(out, 4, msg.seq);
+                    writeTokenRanges(out, 5, msg.reserved);
+                }
+
+                @Override
+                public GateHeartbeatRequest read(CodedInputStream in) throws IOException {
+                    GateHeartbeatRequest msg = new GateHeartbeatRequest(null, new ArrayList<>());
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.gateId = in.readString();
+                                break;
+                            case 2:
+                                msg.tokens.add(readTokenRangeField(in));
+                                break;
+                            case 3:
+                                msg.queueLength = in.readInt32();
+                                break;
+                            case 4:
+                                msg.seq = in.readInt64();
+                                break;
+                            case 5:
+                                msg.reserved.add(readTokenRangeField(in));
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<TokenGrantRequest> TOKEN_GRANT_REQUEST = new ProtoCodec<TokenGrantRequest>() {
+        @Override
+        public void write(TokenGrantRequest msg, CodedOutputStream out) throws IOException {
+            writeTokenRanges(out, 1, msg.tokens);
+            writeInt64(out, 2, msg.grantId);
+        }
+
+        @Override
+        public TokenGrantRequest read(CodedInputStream in) throws IOException {
+            TokenGrantRequest msg = new TokenGrantRequest(new ArrayList<>());
+            msg.grantId = 0L;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        msg.tokens.add(readTokenRangeField(in));
+                        break;
+                    case 2:
+                        msg.grantId = in.readInt64();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return msg;
+        }
+    };
+
+    public static final ProtoCodec<TokenTransferRequest> TOKEN_TRANSFER_REQUEST =
+            new ProtoCodec<TokenTransferRequest>() {
+                @Override
+                public void write(TokenTransferRequest msg, CodedOutputStream out) throws IOException {
+                    writeInt64(out, 1, msg.count);
+                    writeString(out, 2, msg.toGateHttpAddr);
+                }
+
+                @Override
+                public TokenTransferRequest read(CodedInputStream in) throws IOException {
+                    TokenTransferRequest msg = new TokenTransferRequest(0L, null);
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.count = in.readInt64();
+                                break;
+                            case 2:
+                                msg.toGateHttpAddr = in.readString();
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<TokenTransferResponse> TOKEN_TRANSFER_RESPONSE =
+            new ProtoCodec<TokenTransferResponse>() {
+                @Override
+                public void write(TokenTransferResponse msg, CodedOutputStream out) throws IOException {
+                    writeInt64(out, 1, msg.moved);
+                    writeTokenRanges(out, 2, msg.tokens);
+                    writeInt64(out, 3, msg.seq);
+                }
+
+                @Override
+                public TokenTransferResponse read(CodedInputStream in) throws IOException {
+                    TokenTransferResponse msg = new TokenTransferResponse();
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.moved = in.readInt64();
+                                break;
+                            case 2:
+                                msg.tokens.add(readTokenRangeField(in));
+                                break;
+                            case 3:
+                                msg.seq = in.readInt64();
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<TokenReleaseRequest> TOKEN_RELEASE_REQUEST =
+            new ProtoCodec<TokenReleaseRequest>() {
+                @Override
+                public void write(TokenReleaseRequest msg, CodedOutputStream out) throws IOException {
+                    writeInt64(out, 1, msg.count);
+                }
+
+                @Override
+                public TokenReleaseRequest read(CodedInputStream in) throws IOException {
+                    TokenReleaseRequest msg = new TokenReleaseRequest(0L);
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        if (WireFormat.getTagFieldNumber(tag) == 1) {
+                            msg.count = in.readInt64();
+                        } else {
+                            in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<TokenReleaseResponse> TOKEN_RELEASE_RESPONSE =
+            new ProtoCodec<TokenReleaseResponse>() {
+                @Override
+                public void write(TokenReleaseResponse msg, CodedOutputStream out) throws IOException {
+                    writeTokenRanges(out, 1, msg.tokens);
+                    writeInt64(out, 2, msg.seq);
+                }
+
+                @Override
+                public TokenReleaseResponse read(CodedInputStream in) throws IOException {
+                    TokenReleaseResponse msg = new TokenReleaseResponse();
+                    msg.tokens = new ArrayList<>();
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.tokens.add(readTokenRangeField(in));
+                                break;
+                            case 2:
+                                msg.seq = in.readInt64();
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    public static final ProtoCodec<CarRedirectRequest> CAR_REDIRECT_REQUEST = new ProtoCodec<CarRedirectRequest>() {
+        @Override
+        public void write(CarRedirectRequest msg, CodedOutputStream out) throws IOException {
+            writeInt64(out, 1, msg.arrivalTimestamp);
+            writeInt64(out, 2, msg.departureTimestamp);
+            writeInt64(out, 3, msg.queuedAt);
+            writeInt64(out, 4, msg.traceId);
+        }
+
+        @Override
+        public CarRedirectRequest read(CodedInputStream in) throws IOException {
+            CarRedirectRequest msg = new CarRedirectRequest();
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        msg.arrivalTimestamp = in.readInt64();
+                        break;
+                    case 2:
+                        msg.departureTimestamp = in.readInt64();
+                        break;
+                    case 3:
+                        msg.queuedAt = in.readInt64();
+                        break;
+                    case 4:
+                        msg.traceId = in.readInt64();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+            return msg;
+        }
+    };
+
+    public static final ProtoCodec<CarRedirectResponse> CAR_REDIRECT_RESPONSE =
+            new ProtoCodec<CarRedirectResponse>() {
+                @Override
+                public void write(CarRedirectResponse msg, CodedOutputStream out) throws IOException {
+                    if (msg.accepted) {
+                        out.writeBool(1, true);
+                    }
+                    writeInt64(out, 2, msg.headroom);
+                }
+
+                @Override
+                public CarRedirectResponse read(CodedInputStream in) throws IOException {
+                    CarRedirectResponse msg = new CarRedirectResponse();
+                    int tag;
+                    while ((tag = in.readTag()) != 0) {
+                        switch (WireFormat.getTagFieldNumber(tag)) {
+                            case 1:
+                                msg.accepted = in.readBool();
+                                break;
+                            case 2:
+                                msg.headroom = in.readInt32();
+                                break;
+                            default:
+                                in.skipField(tag);
+                        }
+                    }
+                    return msg;
+                }
+            };
+
+    private static void writeTokenRanges(CodedOutputStream out, int field, List<TokenRange> ranges) throws
+            IOException {
+        if (ranges == null) {
+            return;
+        }
+        for (TokenRange r : ranges) {
+            out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(tokenRangeSize(r));
+            writeInt64(out, 1, r.start);
+            writeInt64(out, 2, r.length);
+        }
+    }
+
+    private static int tokenRangeSize(TokenRange r) {
+        int size = 0;
+        if (r.start != 0) {
+            size += CodedOutputStream.computeInt64Size(1, r.start);
+        }
+        if (r.length != 0) {
+            size += CodedOutputStream.computeInt64Size(2, r.length);
+        }
+        return size;
+    }
+
+    // a TokenRange field, its length then the message
+    private static TokenRange readTokenRangeField(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        TokenRange r = readTokenRange(in);
+        in.popLimit(limit);
+        return r;
+    }
+
+    private static TokenRange readTokenRange(CodedInputStream in) throws IOException {
+        TokenRange r = new TokenRange(0L, 0L);
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    r.start = in.readInt64();
+                    break;
+                case 2:
+                    r.length = in.readInt64();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return r;
+    }
+
+    // the buckets and counts go packed
+    private static void writeHistogram(CodedOutputStream out, int field, LatencyHistogram h) throws IOException {
+        if (h == null) {
+            return;
+        }
+        int bucketsSize = 0;
+        for (int b : h.buckets) {
+            bucketsSize += CodedOutputStream.computeInt32SizeNoTag(b);
+        }
+        int countsSize = 0;
+        for (long c : h.counts) {
+            countsSize += CodedOutputStream.computeInt64SizeNoTag(c);
+        }
+        int size = 0;
+        if (bucketsSize > 0) {
+            size += CodedOutputStream.computeTagSize(1) + CodedOutputStream.computeUInt32SizeNoTag(bucketsSize) +
+                    bucketsSize;
+        }
+        if (countsSize > 0) {
+            size += CodedOutputStream.computeTagSize(2) + CodedOutputStream.computeUInt32SizeNoTag(countsSize) +
+                    countsSize;
+        }
+        if (h.sum != 0) {
+            size += CodedOutputStream.computeInt64Size(3, h.sum);
+        }
+        if (h.max != 0) {
+            size += CodedOutputStream.computeInt64Size(4, h.max);
+        }
+
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+        if (bucketsSize > 0) {
+            out.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(bucketsSize);
+            for (int b : h.buckets) {
+                out.writeInt32NoTag(b);
+            }
+        }
+        if (countsSize > 0) {
+            out.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(countsSize);
+            for (long c : h.counts) {
+                out.writeInt64NoTag(c);
+            }
+        }
+        writeInt64(out, 3, h.sum);
+        writeInt64(out, 4, h.max);
+    }
+
+    // reads packed and unpacked repeated fields alike, like protobuf does
+    private static LatencyHistogram readHistogram(CodedInputStream in) throws IOException {
+        LatencyHistogram h = new LatencyHistogram();
+        int limit = in.pushLimit(in.readRawVarint32());
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            boolean packed = WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+            switch (field) {
+                case 1:
+                case 2:
+                    int packedLimit = packed ? in.pushLimit(in.readRawVarint32()) : -1;
+                    do {
+                        if (field == 1) {
+                            h.buckets.add(in.readInt32());
+                        } else {
+                            h.counts.add(in.readInt64());
+                        }
+                    } while (packed && in.getBytesUntilLimit() > 0);
+                    if (packed) {
+                        in.popLimit(packedLimit);
+                    }
+                    break;
+                case 3:
+                    h.sum = in.readInt64();
+                    break;
+                case 4:
+                    h.max = in.readInt64();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        return h;
+    }
+
+    private static void writeDouble(CodedOutputStream out, int field, double value) throws IOException {
+        if (value != 0) {
+            out.writeDouble(field, value);
+        }
+    }
+
+    // int32 fields are written as int64 too, which is the same varint for non-negative values and how
+    // protobuf itself sign extends negative ones
+    private static void writeInt64(CodedOutputStream out, int field, long value) throws IOException {
+        if (value != 0) {
+            out.writeInt64(field, value);
+        }
+    }
+
+    private static void writeString(CodedOutputStream out, int field, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            out.writeString(field, value);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+
+// Gate -> Monitor: the gate periodically tells the monitor it is alive, and expects no response body.
+// The monitor answers HTTP_GONE if it has already declared this gate dead, and HTTP_NOT_FOUND if it doesn't know the
+// gate, after a restart, so the gate registers again.
+public class GateHeartbeatRequest {
+    // the id the monitor assigned to this gate on registration
+    public String gateId;
+
+    // the tokens the gate currently holds, the ones outside reserved are reissued to the other gates if this gate
+    // dies
+    public ArrayList<TokenRange> tokens;
+
+    // the cars waiting at the gate, for load aware routing
+    public int queueLength;
+
+    // counts the gate's heartbeats up from 1, the monitor goes by the latest it got
+    public long seq;
+
+    // the tokens among the ones above that the gate may hand out until the monitor has its next heartbeat,
+    // see the gate's TokenPool
+    public ArrayList<TokenRange> reserved = new ArrayList<>();
+
+    public GateHeartbeatRequest(String gateId, ArrayList<TokenRange> tokens) {
+        this.gateId = gateId;
+        this.tokens = tokens;
+    }
+}
@@ -11,7 +11,16 @@ public class GateHttpAddressesChangeRequest {
 
     public ArrayList<String> gateHttpAddrs;
 
+    // the ring membership version this view belongs to, increases monotonically on the monitor.
+    // A receiver drops any request older than the last one it applied.
+    public long epoch;
+
     public GateHttpAddressesChangeRequest(ArrayList<String> gateHttpAddrs) {
         this.gateHttpAddrs = gateHttpAddrs;
     }
+
+    public GateHttpAddressesChangeRequest(ArrayList<String> gateHttpAddrs, long epoch) {
+        this.gateHttpAddrs = gateHttpAddrs;
+        this.epoch = epoch;
+    }
 }
@@ -0,0 +1,11 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+// how loaded a gate is, as last reported to the monitor
+public class GateLoad {
+    // the address the traffic generator sends cars to, as in the roster
+    public String hostname;
+    public int port;
+
+    public int queueLength;
+    public long freeTokens;
+}
@@ -13,9 +13,17 @@ public class GateRegisterRequest {
     // Http Url that addresses this gate
     public final int httpPort;
 
+    // the path the gate is served under when it shares the http port with other gates, empty or null otherwise
+    public final String httpPath;
+
     public GateRegisterRequest(String hostname, int tcpPort, int httpPort) {
+        this(hostname, tcpPort, httpPort, "");
+    }
+
+    public GateRegisterRequest(String hostname, int tcpPort, int httpPort, String httpPath) {
         this.hostname = hostname;
         this.tcpPort = tcpPort;
         this.httpPort = httpPort;
+        this.httpPath = httpPath;
     }
 }
@@ -9,7 +9,11 @@ public class GateRegisterResponse {
 
     public String parkingSpaceHttpUrl;
 
-    // The list of initial tokens provided to this gate
-    public ArrayList<String> tokens;
+    // the id identifying this gate to the monitor, .ie in heartbeats
+    public String gateId;
+
+    // The initial tokens provided to this gate, might be empty when every token is already held by a gate.
+    // The monitor then moves tokens away from idle gates to this one.
+    public ArrayList<TokenRange> tokens;
 
 }
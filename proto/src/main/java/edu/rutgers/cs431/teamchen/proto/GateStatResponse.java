@@ -5,4 +5,27 @@ public class GateStatResponse {
     public long totalWaitingTime;
     public int totalCarsProcessed;
     public long lastTimeProcessedCar = 0L;
+
+    // stats for estimating the demand on the gate
+    public long totalCarsArrived;
+    public int queueLength;
+
+    // overflow handling, see Gate.queueIn
+    public long carsRedirected;
+    public long carsDropped;
+
+    // simulated milliseconds each car spent in the queue and waiting for a token, the monitor merges them
+    public LatencyHistogram queueWait;
+    public LatencyHistogram tokenWait;
+    // cars per second over the last minute
+    public double arrivalRate;
+    public double processRate;
+
+    // the percentiles of the histograms, for whoever reads /stats
+    public long queueWaitP50;
+    public long queueWaitP99;
+    public long queueWaitP999;
+    public long tokenWaitP50;
+    public long tokenWaitP99;
+    public long tokenWaitP999;
 }
@@ -0,0 +1,96 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+
+// A histogram of latencies with HDR style buckets: every value below 2 * SUB_BUCKETS has a bucket of its own, above
+// that each power of two is split in SUB_BUCKETS, so a percentile is off by at most 1 / SUB_BUCKETS of its value.
+// Only the non-empty buckets are kept. The gates record into a util.ConcurrentHistogram and send its snapshots,
+// the monitor merges them.
+public class LatencyHistogram {
+    public static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // larger values count as this, about 35 years in milliseconds
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    public static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    // the non-empty buckets in increasing order and their counts
+    public ArrayList<Integer> buckets = new ArrayList<>();
+    public ArrayList<Long> counts = new ArrayList<>();
+    public long sum;
+    public long max;
+
+    // the bucket a value falls in, negative values count as 0
+    public static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) Math.max(0L, value);
+        }
+        value = Math.min(value, MAX_VALUE);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    // the largest value that falls in the bucket
+    public static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (bucket - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long count() {
+        long n = 0;
+        for (long c : counts) {
+            n += c;
+        }
+        return n;
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) sum / n;
+    }
+
+    // the value at or below which the fraction q of the values are, 0 if there are none
+    public long percentile(double q) {
+        long n = count();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(buckets.get(i)), max);
+            }
+        }
+        return max;
+    }
+
+    // a histogram of the values of both
+    public LatencyHistogram merge(LatencyHistogram other) {
+        LatencyHistogram m = new LatencyHistogram();
+        int i = 0;
+        int j = 0;
+        while (i < buckets.size() || j < other.buckets.size()) {
+            int a = i < buckets.size() ? buckets.get(i) : Integer.MAX_VALUE;
+            int b = j < other.buckets.size() ? other.buckets.get(j) : Integer.MAX_VALUE;
+            if (a == b) {
+                m.buckets.add(a);
+                m.counts.add(counts.get(i++) + other.counts.get(j++));
+            } else if (a < b) {
+                m.buckets.add(a);
+                m.counts.add(counts.get(i++));
+            } else {
+                m.buckets.add(b);
+                m.counts.add(other.counts.get(j++));
+            }
+        }
+        m.sum = sum + other.sum;
+        m.max = Math.max(max, other.max);
+        return m;
+    }
+}
@@ -0,0 +1,15 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+
+// Writes and reads one message class in its protobuf encoding, see src/main/proto/parkinglot.proto
+public interface ProtoCodec<T> {
+
+    void write(T msg, CodedOutputStream out) throws IOException;
+
+    // reads the message up to the end of the input
+    T read(CodedInputStream in) throws IOException;
+}
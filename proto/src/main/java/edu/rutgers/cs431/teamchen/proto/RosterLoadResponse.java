@@ -0,0 +1,8 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+
+// Monitor -> TrafficGenerator: the load on every gate in the roster
+public class RosterLoadResponse {
+    public ArrayList<GateLoad> gates;
+}
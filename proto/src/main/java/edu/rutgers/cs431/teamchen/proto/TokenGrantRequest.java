@@ -0,0 +1,23 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Monitor -> Gate: hands extra tokens to a gate (.ie tokens reclaimed from a dead gate).
+// Gate -> Gate: hands tokens to a peer when the monitor moves them.
+// The sender expects no response body.
+public class TokenGrantRequest {
+    public ArrayList<TokenRange> tokens;
+
+    // the same for every retry of the grant, a gate adds the tokens of a grant once however often it gets it
+    public long grantId;
+
+    public TokenGrantRequest(ArrayList<TokenRange> tokens) {
+        this.tokens = tokens;
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0L);
+        this.grantId = id;
+    }
+}
@@ -0,0 +1,52 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// A run of consecutive tokens: the tokens are the decimal strings of start, start + 1, ..., start + length - 1
+public class TokenRange {
+    public long start;
+    public long length;
+
+    public TokenRange(long start, long length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    // returns the number of tokens in the ranges
+    public static long count(List<TokenRange> ranges) {
+        long n = 0;
+        for (TokenRange r : ranges) {
+            n += r.length;
+        }
+        return n;
+    }
+
+    // returns the tokens of @param from that are not in @param minus
+    public static ArrayList<TokenRange> subtract(List<TokenRange> from, List<TokenRange> minus) {
+        ArrayList<TokenRange> sorted = new ArrayList<>(minus);
+        sorted.sort(Comparator.comparingLong(r -> r.start));
+        ArrayList<TokenRange> out = new ArrayList<>();
+        for (TokenRange r : from) {
+            long start = r.start;
+            long end = r.start + r.length;
+            for (TokenRange m : sorted) {
+                if (start >= end || m.start >= end) {
+                    break;
+                }
+                if (m.start + m.length <= start) {
+                    continue;
+                }
+                if (m.start > start) {
+                    out.add(new TokenRange(start, m.start - start));
+                }
+                start = m.start + m.length;
+            }
+            if (start < end) {
+                out.add(new TokenRange(start, end - start));
+            }
+        }
+        return out;
+    }
+}
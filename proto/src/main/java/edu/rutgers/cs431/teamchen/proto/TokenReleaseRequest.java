@@ -0,0 +1,11 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+// Monitor -> Gate: asks a gate to give up some of its free tokens, expects a TokenReleaseResponse
+public class TokenReleaseRequest {
+    // the most tokens the gate should give up
+    public long count;
+
+    public TokenReleaseRequest(long count) {
+        this.count = count;
+    }
+}
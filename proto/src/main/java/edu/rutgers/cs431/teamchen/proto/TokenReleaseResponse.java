@@ -0,0 +1,11 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+
+public class TokenReleaseResponse {
+    // the tokens the gate gave up, might be fewer than requested
+    public ArrayList<TokenRange> tokens;
+
+    // the gate's latest heartbeat when the tokens left, its heartbeats from the next one on don't have them
+    public long seq;
+}
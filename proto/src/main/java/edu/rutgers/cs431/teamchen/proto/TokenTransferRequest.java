@@ -0,0 +1,16 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+// Monitor -> Gate: asks a gate to hand some of its free tokens straight to another gate,
+// expects a TokenTransferResponse
+public class TokenTransferRequest {
+    // the most tokens to move
+    public long count;
+
+    // the http address of the gate receiving the tokens
+    public String toGateHttpAddr;
+
+    public TokenTransferRequest(long count, String toGateHttpAddr) {
+        this.count = count;
+        this.toGateHttpAddr = toGateHttpAddr;
+    }
+}
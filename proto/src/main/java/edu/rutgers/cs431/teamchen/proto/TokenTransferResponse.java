@@ -0,0 +1,14 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import java.util.ArrayList;
+
+public class TokenTransferResponse {
+    // the number of tokens that reached the other gate
+    public long moved;
+
+    // the tokens that left the gate, whether or not they reached the other gate
+    public ArrayList<TokenRange> tokens = new ArrayList<>();
+
+    // the gate's latest heartbeat when the tokens left, its heartbeats from the next one on don't have them
+    public long seq;
+}
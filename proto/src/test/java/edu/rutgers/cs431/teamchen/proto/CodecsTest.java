@@ -0,0 +1,150 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+public class CodecsTest {
+
+    private static <T> T roundTrip(T msg, ProtoCodec<T> codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        codec.write(msg, out);
+        out.flush();
+        return codec.read(CodedInputStream.newInstance(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testCarWithToken() throws IOException {
+        CarWithToken cwt = new CarWithToken();
+        cwt.arrivalTimestamp = 1234567890123L;
+        cwt.departureTimestamp = 1234567899999L;
+        cwt.token = "42";
+        cwt.traceId = -8070450532247928832L;
+        cwt.tokenAt = 1234567891000L;
+
+        CarWithToken got = roundTrip(cwt, Codecs.CAR_WITH_TOKEN);
+        Assert.assertEquals(cwt.arrivalTimestamp, got.arrivalTimestamp);
+        Assert.assertEquals(cwt.departureTimestamp, got.departureTimestamp);
+        Assert.assertEquals("42", got.token);
+        Assert.assertEquals(cwt.traceId, got.traceId);
+        Assert.assertEquals(cwt.tokenAt, got.tokenAt);
+        Assert.assertEquals(0L, got.parkedAt);
+    }
+
+    @Test
+    public void testHeartbeatWithTokenRanges() throws IOException {
+        ArrayList<TokenRange> tokens = new ArrayList<>(Arrays.asList(new TokenRange(0L, 10L), new TokenRange(500L, 1L)));
+        GateHeartbeatRequest req = new GateHeartbeatRequest("gate-1", tokens);
+        req.queueLength = 7;
+        req.seq = 12L;
+        req.reserved.add(new TokenRange(0L, 4L));
+
+        GateHeartbeatRequest got = roundTrip(req, Codecs.GATE_HEARTBEAT_REQUEST);
+        Assert.assertEquals("gate-1", got.gateId);
+        Assert.assertEquals(7, got.queueLength);
+        Assert.assertEquals(2, got.tokens.size());
+        Assert.assertEquals(0L, got.tokens.get(0).start);
+        Assert.assertEquals(10L, got.tokens.get(0).length);
+        Assert.assertEquals(500L, got.tokens.get(1).start);
+        Assert.assertEquals(1L, got.tokens.get(1).length);
+        Assert.assertEquals(12L, got.seq);
+        Assert.assertEquals(1, got.reserved.size());
+        Assert.assertEquals(4L, got.reserved.get(0).length);
+    }
+
+    @Test
+    public void testGateStatsWithHistograms() throws IOException {
+        GateStatResponse resp = new GateStatResponse();
+        resp.totalCarsProcessed = 3;
+        resp.queueWait = new LatencyHistogram();
+        resp.queueWait.buckets.addAll(Arrays.asList(0, 70, 500));
+        resp.queueWait.counts.addAll(Arrays.asList(1L, 300L, 2L));
+        resp.queueWait.sum = 123456L;
+        resp.queueWait.max = 9000L;
+        resp.arrivalRate = 2.5;
+        resp.queueWaitP99 = 80L;
+
+        GateStatResponse got = roundTrip(resp, Codecs.GATE_STAT_RESPONSE);
+        Assert.assertEquals(3, got.totalCarsProcessed);
+        Assert.assertEquals(resp.queueWait.buckets, got.queueWait.buckets);
+        Assert.assertEquals(resp.queueWait.counts, got.queueWait.counts);
+        Assert.assertEquals(123456L, got.queueWait.sum);
+        Assert.assertEquals(9000L, got.queueWait.max);
+        Assert.assertNull(got.tokenWait);
+        Assert.assertEquals(2.5, got.arrivalRate, 0.0);
+        Assert.assertEquals(80L, got.queueWaitP99);
+    }
+
+    @Test
+    public void testEmptyFieldsAreLeftOut() throws IOException {
+        ShareTokenResponse resp = new ShareTokenResponse();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        Codecs.SHARE_TOKEN_RESPONSE.write(resp, out);
+        out.flush();
+
+        Assert.assertEquals(0, bytes.size());
+        Assert.assertNull(Codecs.SHARE_TOKEN_RESPONSE.read(CodedInputStream.newInstance(bytes.toByteArray())).token);
+    }
+
+    @Test
+    public void testTokenMoves() throws IOException {
+        TokenGrantRequest grant = new TokenGrantRequest(new ArrayList<>(Arrays.asList(new TokenRange(20L, 5L))));
+        TokenGrantRequest gotGrant = roundTrip(grant, Codecs.TOKEN_GRANT_REQUEST);
+        Assert.assertEquals(grant.grantId, gotGrant.grantId);
+        Assert.assertEquals(1, gotGrant.tokens.size());
+        Assert.assertEquals(20L, gotGrant.tokens.get(0).start);
+        Assert.assertEquals(5L, gotGrant.tokens.get(0).length);
+
+        TokenTransferRequest transfer = roundTrip(new TokenTransferRequest(6L, "http://gate:9001"), Codecs
+                .TOKEN_TRANSFER_REQUEST);
+        Assert.assertEquals(6L, transfer.count);
+        Assert.assertEquals("http://gate:9001", transfer.toGateHttpAddr);
+
+        TokenTransferResponse moved = new TokenTransferResponse();
+        moved.moved = 3L;
+        moved.tokens.add(new TokenRange(7L, 3L));
+        moved.seq = 41L;
+        TokenTransferResponse gotMoved = roundTrip(moved, Codecs.TOKEN_TRANSFER_RESPONSE);
+        Assert.assertEquals(3L, gotMoved.moved);
+        Assert.assertEquals(3L, TokenRange.count(gotMoved.tokens));
+        Assert.assertEquals(41L, gotMoved.seq);
+
+        Assert.assertEquals(9L, roundTrip(new TokenReleaseRequest(9L), Codecs.TOKEN_RELEASE_REQUEST).count);
+        TokenReleaseResponse released = new TokenReleaseResponse();
+        released.seq = 2L;
+        TokenReleaseResponse gotReleased = roundTrip(released, Codecs.TOKEN_RELEASE_RESPONSE);
+        Assert.assertEquals(0, gotReleased.tokens.size());
+        Assert.assertEquals(2L, gotReleased.seq);
+    }
+
+    @Test
+    public void testCarRedirect() throws IOException {
+        CarRedirectRequest req = new CarRedirectRequest();
+        req.arrivalTimestamp = 1000L;
+        req.departureTimestamp = 5000L;
+        req.queuedAt = 1001L;
+        req.traceId = -3L;
+        CarRedirectRequest got = roundTrip(req, Codecs.CAR_REDIRECT_REQUEST);
+        Assert.assertEquals(1000L, got.arrivalTimestamp);
+        Assert.assertEquals(5000L, got.departureTimestamp);
+        Assert.assertEquals(1001L, got.queuedAt);
+        Assert.assertEquals(-3L, got.traceId);
+
+        CarRedirectResponse resp = new CarRedirectResponse();
+        resp.accepted = true;
+        resp.headroom = 4;
+        CarRedirectResponse gotResp = roundTrip(resp, Codecs.CAR_REDIRECT_RESPONSE);
+        Assert.assertTrue(gotResp.accepted);
+        Assert.assertEquals(4, gotResp.headroom);
+        Assert.assertFalse(roundTrip(new CarRedirectResponse(), Codecs.CAR_REDIRECT_RESPONSE).accepted);
+    }
+}
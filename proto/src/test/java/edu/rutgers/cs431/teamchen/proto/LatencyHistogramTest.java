@@ -0,0 +1,75 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LatencyHistogramTest {
+
+    // counts the values like ConcurrentHistogram does
+    private static LatencyHistogram of(long... values) {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v : values) {
+            counts[LatencyHistogram.bucketOf(v)]++;
+            h.sum += v;
+            h.max = Math.max(h.max, v);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                h.buckets.add(i);
+                h.counts.add(counts[i]);
+            }
+        }
+        return h;
+    }
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            long highest = LatencyHistogram.highestValueIn(b);
+            // the buckets follow each other without gaps
+            Assert.assertEquals(b, LatencyHistogram.bucketOf(previous + 1));
+            Assert.assertEquals(b, LatencyHistogram.bucketOf(highest));
+            // and none is wider than 1 / SUB_BUCKETS of its values
+            Assert.assertTrue(highest - previous <= Math.max(1, highest / LatencyHistogram.SUB_BUCKETS));
+            previous = highest;
+        }
+        Assert.assertEquals(LatencyHistogram.MAX_VALUE, previous);
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        Assert.assertEquals(0, LatencyHistogram.bucketOf(-5));
+    }
+
+    @Test
+    public void testPercentiles() {
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        LatencyHistogram h = of(values);
+        Assert.assertEquals(10000, h.count());
+        Assert.assertEquals(5000.5, h.mean(), 0.0);
+        long p50 = h.percentile(0.5);
+        Assert.assertTrue(p50 >= 5000 && p50 <= 5000 + 5000 / LatencyHistogram.SUB_BUCKETS);
+        long p99 = h.percentile(0.99);
+        Assert.assertTrue(p99 >= 9900 && p99 <= 9900 + 9900 / LatencyHistogram.SUB_BUCKETS);
+        Assert.assertEquals(10000, h.percentile(1.0));
+        Assert.assertEquals(0, new LatencyHistogram().percentile(0.99));
+        // small values are exact
+        Assert.assertEquals(7, of(1, 7, 7, 40).percentile(0.5));
+    }
+
+    @Test
+    public void testMerge() {
+        LatencyHistogram a = of(1, 2, 1000);
+        LatencyHistogram b = of(2, 3, 50000);
+        LatencyHistogram m = a.merge(b);
+        LatencyHistogram all = of(1, 2, 1000, 2, 3, 50000);
+        Assert.assertEquals(all.buckets, m.buckets);
+        Assert.assertEquals(all.counts, m.counts);
+        Assert.assertEquals(all.sum, m.sum);
+        Assert.assertEquals(50000, m.max);
+        Assert.assertEquals(a.buckets, a.merge(new LatencyHistogram()).buckets);
+    }
+}
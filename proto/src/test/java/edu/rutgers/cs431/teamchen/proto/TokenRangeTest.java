@@ -0,0 +1,35 @@
+package edu.rutgers.cs431.teamchen.proto;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class TokenRangeTest {
+
+    private static String format(ArrayList<TokenRange> ranges) {
+        StringBuilder sb = new StringBuilder();
+        for (TokenRange r : ranges) {
+            sb.append(r.start).append('+').append(r.length).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void testSubtract() {
+        ArrayList<TokenRange> got = TokenRange.subtract(Arrays.asList(new TokenRange(0L, 10L), new TokenRange(20L,
+                5L)), Arrays.asList(new TokenRange(22L, 1L), new TokenRange(3L, 2L), new TokenRange(4L, 3L)));
+        Assert.assertEquals("0+3 7+3 20+2 23+2", format(got));
+    }
+
+    @Test
+    public void testSubtractEverythingOrNothing() {
+        Assert.assertEquals("", format(TokenRange.subtract(Collections.singletonList(new TokenRange(5L, 5L)),
+                Collections.singletonList(new TokenRange(0L, 100L)))));
+        Assert.assertEquals("5+5", format(TokenRange.subtract(Collections.singletonList(new TokenRange(5L, 5L)),
+                Collections.singletonList(new TokenRange(10L, 100L)))));
+    }
+}
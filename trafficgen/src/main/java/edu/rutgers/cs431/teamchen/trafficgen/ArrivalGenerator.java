@@ -0,0 +1,69 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Generates car arrivals following a load profile, as a non-homogeneous Poisson process.
+//
+// Inter-arrival gaps are drawn exponentially at the profile's peak rate, in simulated nanoseconds, and each
+// arrival is kept with probability rate / peak (thinning). Arrivals are open loop: each one has a deadline fixed
+// by the process alone, a slow send never pushes the next one back. A late send is counted (see OpenLoop) and
+// still carries its intended arrival time.
+public class ArrivalGenerator implements Runnable {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final MyClock clock;
+    private final LoadProfile profile;
+    private final Listener listener;
+    private final OpenLoop loop = new OpenLoop();
+    private volatile boolean stopped = false;
+
+    public ArrivalGenerator(MyClock clock, LoadProfile profile, Listener listener) {
+        this.clock = clock;
+        this.profile = profile;
+        this.listener = listener;
+    }
+
+    public long getGenerated() {
+        return loop.getSends();
+    }
+
+    public long getLate() {
+        return loop.getLate();
+    }
+
+    public long getMaxLatenessNanos() {
+        return loop.getMaxLatenessNanos();
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        double peak = profile.peakRate();
+        if (peak <= 0) {
+            return;
+        }
+        double scale = clock.getTimeScale();
+        long startNanos = System.nanoTime();
+        // simulated nanoseconds since the start
+        double elapsed = 0;
+        while (!stopped) {
+            elapsed += -Math.log(1.0 - rnd.nextDouble()) / peak * NANOS_PER_SECOND;
+            if (rnd.nextDouble() * peak >= profile.rateAt((long) (elapsed / 1_000_000))) {
+                continue;
+            }
+
+            long deadline = startNanos + (long) (elapsed / scale);
+            loop.await(deadline);
+            listener.onArrival(clock.timeAt(deadline));
+        }
+    }
+
+    public interface Listener {
+        // a car arrives at the given simulated time
+        void onArrival(long time);
+    }
+}
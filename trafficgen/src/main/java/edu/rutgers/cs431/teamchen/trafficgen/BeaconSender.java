@@ -0,0 +1,40 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.teamchen.util.TimeBeacon;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+
+// Multicasts the simulated time as sequenced beacons, one per run
+public class BeaconSender implements Runnable {
+    private final MyClock clock;
+    private final InetAddress group;
+    private final int port;
+    private final MulticastSocket socket;
+    private long seq = 0L;
+
+    public BeaconSender(MyClock clock, InetAddress group, int port) throws IOException {
+        this.clock = clock;
+        this.group = group;
+        this.port = port;
+        this.socket = new MulticastSocket();
+        // stay on the local network
+        this.socket.setTimeToLive(1);
+    }
+
+    @Override
+    public void run() {
+        byte[] buf = new TimeBeacon(seq++, clock.getTime()).encode();
+        try {
+            socket.send(new DatagramPacket(buf, buf.length, group, port));
+        } catch (IOException e) {
+            System.err.println("unable to send time beacon: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,210 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import com.google.protobuf.CodedOutputStream;
+import edu.rutgers.cs431.TrafficGeneratorProto.Car;
+import edu.rutgers.cs431.TrafficGeneratorProto.GateAddress;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams cars to the gates over one persistent connection per gate.
+//
+// send() only queues the car. A single writer thread owns every connection through a selector and, whenever a
+// gate's socket can take more, packs as many delimited cars as fit into one buffer and writes them at once.
+// A gate that can't keep up gets at most MAX_PENDING_CARS queued, the rest are dropped and counted.
+public class CarSender implements Runnable {
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_CARS = 100_000;
+
+    private final Selector selector;
+    private final ConcurrentHashMap<String, Connection> connections = new ConcurrentHashMap<>();
+    // set when the writer has been woken up and hasn't looked at the queues yet
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final AtomicLong sent = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+
+    public CarSender() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    // the cars handed to a gate's socket so far
+    public long getSent() {
+        return sent.get();
+    }
+
+    // the cars dropped because their gate was unreachable or too far behind
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // queues the car for the gate, connecting to it on the first car
+    public void send(GateAddress gate, Car car) {
+        String key = gate.getHostname() + ":" + gate.getPort();
+        Connection conn = connections.computeIfAbsent(key, k -> new Connection(gate));
+        if (!conn.offer(car)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    public void close() throws IOException {
+        selector.close();
+        for (Connection conn : connections.values()) {
+            conn.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Connection conn = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable() && conn.channel.finishConnect()) {
+                            key.interestOps(0);
+                        }
+                    } catch (IOException e) {
+                        fail(conn, e);
+                    }
+                }
+                for (Connection conn : connections.values()) {
+                    try {
+                        conn.flush();
+                    } catch (IOException e) {
+                        fail(conn, e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("car sender stopped: " + e.getMessage());
+        } catch (ClosedSelectorException e) {
+            // closed
+        }
+    }
+
+    // drops the gate's connection and the cars queued for it, the next car reconnects
+    private void fail(Connection conn, IOException e) {
+        System.err.println("lost the connection to gate " + conn.address + ": " + e.getMessage());
+        connections.remove(conn.address, conn);
+        dropped.addAndGet(conn.close());
+    }
+
+    private class Connection {
+        final String address;
+        final GateAddress gate;
+        final ArrayDeque<Car> pending = new ArrayDeque<>();
+        final byte[] batch = new byte[BATCH_BUFFER_SIZE];
+        final ByteBuffer out = ByteBuffer.wrap(batch);
+        SocketChannel channel;
+        SelectionKey key;
+
+        Connection(GateAddress gate) {
+            this.gate = gate;
+            this.address = gate.getHostname() + ":" + gate.getPort();
+            // nothing to send yet
+            this.out.limit(0);
+        }
+
+        synchronized boolean offer(Car car) {
+            if (pending.size() >= MAX_PENDING_CARS) {
+                return false;
+            }
+            pending.addLast(car);
+            return true;
+        }
+
+        private synchronized Car peek() {
+            return pending.peekFirst();
+        }
+
+        // writes batches until the queue is empty or the socket is full, only called by the writer
+        void flush() throws IOException {
+            if (channel == null) {
+                if (peek() == null) {
+                    return;
+                }
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                key = channel.register(selector, 0, this);
+                if (!channel.connect(new InetSocketAddress(gate.getHostname(), gate.getPort()))) {
+                    key.interestOps(SelectionKey.OP_CONNECT);
+                    return;
+                }
+            }
+            if (!channel.isConnected()) {
+                return;
+            }
+            while (true) {
+                if (!out.hasRemaining() && !fill()) {
+                    key.interestOps(0);
+                    return;
+                }
+                channel.write(out);
+                if (out.hasRemaining()) {
+                    // the selector tells us when there is room again
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        }
+
+        // packs queued cars into the batch buffer, returns false if there was nothing to pack
+        private synchronized boolean fill() throws IOException {
+            CodedOutputStream cos = CodedOutputStream.newInstance(batch);
+            int cars = 0;
+            Car car;
+            while ((car = pending.peekFirst()) != null) {
+                int size = car.getSerializedSize();
+                if (CodedOutputStream.computeUInt32SizeNoTag(size) + size > cos.spaceLeft()) {
+                    break;
+                }
+                cos.writeUInt32NoTag(size);
+                car.writeTo(cos);
+                pending.pollFirst();
+                cars++;
+            }
+            out.clear();
+            out.limit(batch.length - cos.spaceLeft());
+            sent.addAndGet(cars);
+            return cars > 0;
+        }
+
+        // returns the cars that never made it out
+        synchronized long close() {
+            long lost = pending.size();
+            pending.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+            }
+            return lost;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A binary trace of generated cars, so a workload can be replayed exactly.
+//
+// The file is a 16 byte header (magic, version, record size, reserved) followed by fixed 24 byte records,
+// big endian: arrival timestamp (long), departure timestamp (long), gate index in the roster (int), reserved (int).
+// Both the Writer and the Reader go through memory mapped regions of the file.
+public class CarTrace {
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 24;
+    private static final int MAGIC = 0x504c4354; // "PLCT"
+    private static final int VERSION = 1;
+    // the records mapped at once
+    private static final int RECORDS_PER_REGION = 1 << 16;
+
+    public static class Record {
+        public long arrival;
+        public long departure;
+        public int gate;
+    }
+
+    // appends records to a new trace file, not thread safe
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private MappedByteBuffer region;
+        private long regionStart;
+        private long records = 0L;
+
+        public Writer(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE)
+                    .putInt(0);
+            header.flip();
+            this.channel.write(header, 0);
+            mapFrom(HEADER_SIZE);
+        }
+
+        private void mapFrom(long position) throws IOException {
+            this.regionStart = position;
+            this.region = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) RECORDS_PER_REGION * RECORD_SIZE);
+        }
+
+        public void append(long arrival, long departure, int gate) throws IOException {
+            if (!region.hasRemaining()) {
+                region.force();
+                mapFrom(regionStart + region.capacity());
+            }
+            region.putLong(arrival).putLong(departure).putInt(gate).putInt(0);
+            records++;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        // flushes the records and cuts the file down to them
+        @Override
+        public void close() throws IOException {
+            region.force();
+            region = null;
+            channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            channel.close();
+        }
+    }
+
+    // reads the records of a trace file in order, not thread safe
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final long records;
+        private MappedByteBuffer region;
+        private long read = 0L;
+
+        public Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // keep reading
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException(path + " is not a car trace");
+            }
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            if (version != VERSION || recordSize != RECORD_SIZE) {
+                channel.close();
+                throw new IOException("unsupported car trace version " + version + " in " + path);
+            }
+            this.records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        // fills the record with the next one, returns false at the end of the trace
+        public boolean next(Record r) throws IOException {
+            if (read == records) {
+                return false;
+            }
+            if (region == null || !region.hasRemaining()) {
+                long count = Math.min(RECORDS_PER_REGION, records - read);
+                region = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + read * RECORD_SIZE,
+                        count * RECORD_SIZE);
+            }
+            r.arrival = region.getLong();
+            r.departure = region.getLong();
+            r.gate = region.getInt();
+            region.getInt();
+            read++;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            region = null;
+            channel.close();
+        }
+    }
+}
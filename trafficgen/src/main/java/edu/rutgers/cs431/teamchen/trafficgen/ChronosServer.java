@@ -0,0 +1,183 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.TimeRequest;
+import edu.rutgers.cs431.TrafficGeneratorProto.TimeResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+// The chronos service: answers every delimited TimeRequest on a connection with the simulated time.
+//
+// A single thread serves all connections through a selector. The time is read right before its response
+// is written, so it carries as little queueing delay as possible.
+public class ChronosServer implements Runnable {
+    private static final int READ_BUFFER_SIZE = 1024;
+    // a TimeRequest has no fields, anything longer than this isn't one
+    private static final int MAX_REQUEST_SIZE = 64;
+
+    private final MyClock clock;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    public ChronosServer(int port, MyClock clock) throws IOException {
+        this.clock = clock;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void close() throws IOException {
+        selector.close();
+        serverChannel.close();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key);
+                        }
+                    } catch (IOException e) {
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("chronos service stopped: " + e.getMessage());
+        } catch (ClosedSelectorException e) {
+            // closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = serverChannel.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        ch.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        if (ch.read(conn.in) < 0) {
+            closeConnection(key);
+            return;
+        }
+        conn.in.flip();
+        while (true) {
+            conn.in.mark();
+            int len = readVarint(conn.in);
+            if (len == -1) {
+                conn.in.reset();
+                break;
+            }
+            if (len < 0 || len > MAX_REQUEST_SIZE) {
+                throw new IOException("malformed time request of length " + len);
+            }
+            if (conn.in.remaining() < len) {
+                conn.in.reset();
+                break;
+            }
+            byte[] body = new byte[len];
+            conn.in.get(body);
+            TimeRequest.parseFrom(body);
+            conn.pending++;
+        }
+        conn.in.compact();
+        flush(key);
+    }
+
+    // a delimited TimeResponse with the time read now
+    private ByteBuffer response() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        TimeResponse.newBuilder().setCurrentTimestamp(clock.getTime()).build().writeDelimitedTo(bytes);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    // answers the pending requests, each response is built only once the socket can take it
+    private void flush(SelectionKey key) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        while (conn.partial != null || conn.pending > 0) {
+            if (conn.partial == null) {
+                conn.partial = response();
+                conn.pending--;
+            }
+            ch.write(conn.partial);
+            if (conn.partial.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            conn.partial = null;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    // decodes a varint32 at the buffer position, -1 if it isn't all there yet.
+    // Lengths don't go over MAX_REQUEST_SIZE so nothing valid collides with -1
+    private static int readVarint(ByteBuffer buf) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            byte b = buf.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint in time request");
+    }
+
+    private static class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // the response the socket only took part of
+        ByteBuffer partial;
+        // the requests not answered yet
+        int pending;
+    }
+}
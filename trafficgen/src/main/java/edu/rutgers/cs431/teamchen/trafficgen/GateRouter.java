@@ -0,0 +1,138 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.GateAddress;
+import edu.rutgers.cs431.teamchen.proto.GateLoad;
+import edu.rutgers.cs431.teamchen.proto.RosterLoadResponse;
+import edu.rutgers.cs431.teamchen.util.Transport;
+import edu.rutgers.cs431.teamchen.util.Transports;
+import edu.rutgers.cs431.teamchen.util.Wire;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Picks the gate each car goes to.
+//
+// random sends cars uniformly, p2c (power of two choices) sends to the less loaded of two random gates, and jsq
+// (join the shortest queue) to the least loaded gate. The load of a gate is the queue it last reported to the
+// monitor plus the cars sent to it since, so a burst doesn't all pile onto the gate that looked idlest. Ties go
+// to the gate with more free tokens. refresh() pulls the reports from the monitor's roster load service.
+public class GateRouter implements Runnable {
+
+    public enum Mode {
+        RANDOM, P2C, JSQ
+    }
+
+    private final Mode mode;
+    private final URL rosterLoadUrl;
+    private volatile Map<String, Load> loads = new HashMap<>();
+    // for the gates the monitor hasn't reported on yet
+    private final ConcurrentHashMap<String, Load> unreported = new ConcurrentHashMap<>();
+
+    public GateRouter(Mode mode, URL rosterLoadUrl) {
+        this.mode = mode;
+        this.rosterLoadUrl = rosterLoadUrl;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // returns the index of the gate in the roster the next car goes to
+    public int select(List<GateAddress> roster) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int n = roster.size();
+        int pick = rnd.nextInt(n);
+        switch (mode) {
+            case P2C:
+                if (n > 1) {
+                    int other = rnd.nextInt(n - 1);
+                    if (other >= pick) {
+                        other++;
+                    }
+                    if (loadOf(roster.get(other)).compareTo(loadOf(roster.get(pick))) < 0) {
+                        pick = other;
+                    }
+                }
+                break;
+            case JSQ:
+                // start at a random gate so ties don't all go to the first one
+                Load best = loadOf(roster.get(pick));
+                for (int k = 1; k < n; k++) {
+                    int i = (pick + k) % n;
+                    Load l = loadOf(roster.get(i));
+                    if (l.compareTo(best) < 0) {
+                        best = l;
+                        pick = i;
+                    }
+                }
+                break;
+            default:
+                return pick;
+        }
+        loadOf(roster.get(pick)).sentSince.incrementAndGet();
+        return pick;
+    }
+
+    private Load loadOf(GateAddress gate) {
+        String key = gate.getHostname() + ":" + gate.getPort();
+        Load l = loads.get(key);
+        if (l == null) {
+            l = unreported.computeIfAbsent(key, k -> new Load(0, 0));
+        }
+        return l;
+    }
+
+    // pulls the latest load reports from the monitor
+    public void refresh() throws IOException {
+        Transport.Reply reply = Transports.get().call(rosterLoadUrl, "", Wire.JSON, new byte[0]);
+        if (reply.code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("roster load service answered " + reply.code);
+        }
+        RosterLoadResponse resp = Wire.decode(reply, RosterLoadResponse.class);
+
+        HashMap<String, Load> fresh = new HashMap<>();
+        if (resp != null && resp.gates != null) {
+            for (GateLoad g : resp.gates) {
+                fresh.put(g.hostname + ":" + g.port, new Load(g.queueLength, g.freeTokens));
+            }
+        }
+        this.loads = fresh;
+        this.unreported.clear();
+    }
+
+    @Override
+    public void run() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            System.err.println("unable to get the gates' load from the monitor: " + e.getMessage());
+        }
+    }
+
+    private static class Load implements Comparable<Load> {
+        final int queueLength;
+        final long freeTokens;
+        final AtomicLong sentSince = new AtomicLong(0L);
+
+        Load(int queueLength, long freeTokens) {
+            this.queueLength = queueLength;
+            this.freeTokens = freeTokens;
+        }
+
+        @Override
+        public int compareTo(Load o) {
+            int c = Long.compare(queueLength + sentSince.get(), o.queueLength + o.sentSince.get());
+            if (c != 0) {
+                return c;
+            }
+            return Long.compare(o.freeTokens, freeTokens);
+        }
+    }
+}
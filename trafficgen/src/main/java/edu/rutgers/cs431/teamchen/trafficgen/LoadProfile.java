@@ -0,0 +1,147 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+// The car arrival rate over the simulated time since the generator started, in cars per simulated second.
+//
+// Specs, times in simulated seconds:
+//   steady:RATE
+//   ramp:FROM:TO:DURATION           goes linearly from FROM to TO over DURATION, then stays at TO
+//   burst:BASE:PEAK:EVERY:LENGTH    BASE, with PEAK for the first LENGTH seconds of every EVERY seconds
+//   diurnal:MIN:MAX                 a day long cosine, MIN at the start and MAX twelve hours in
+public interface LoadProfile {
+
+    // the arrival rate at the given simulated milliseconds since the start
+    double rateAt(long elapsedMillis);
+
+    // no rate this profile returns is higher
+    double peakRate();
+
+    static LoadProfile parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        double[] args = new double[parts.length - 1];
+        try {
+            for (int i = 1; i < parts.length; i++) {
+                args[i - 1] = Double.parseDouble(parts[i]);
+                if (args[i - 1] < 0) {
+                    throw new IllegalArgumentException("negative value in load profile: " + spec);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number in load profile: " + spec);
+        }
+        switch (parts[0]) {
+            case "steady":
+                expectArgs(spec, args, 1);
+                return new Steady(args[0]);
+            case "ramp":
+                expectArgs(spec, args, 3);
+                return new Ramp(args[0], args[1], (long) (args[2] * 1000));
+            case "burst":
+                expectArgs(spec, args, 4);
+                return new Burst(args[0], args[1], (long) (args[2] * 1000), (long) (args[3] * 1000));
+            case "diurnal":
+                expectArgs(spec, args, 2);
+                return new Diurnal(args[0], args[1]);
+            default:
+                throw new IllegalArgumentException("unknown load profile: " + spec);
+        }
+    }
+
+    static void expectArgs(String spec, double[] args, int n) {
+        if (args.length != n) {
+            throw new IllegalArgumentException("load profile " + spec + " takes " + n + " values");
+        }
+    }
+
+    class Steady implements LoadProfile {
+        private final double rate;
+
+        public Steady(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double rateAt(long elapsedMillis) {
+            return rate;
+        }
+
+        @Override
+        public double peakRate() {
+            return rate;
+        }
+    }
+
+    class Ramp implements LoadProfile {
+        private final double from;
+        private final double to;
+        private final long durationMillis;
+
+        public Ramp(double from, double to, long durationMillis) {
+            this.from = from;
+            this.to = to;
+            this.durationMillis = durationMillis;
+        }
+
+        @Override
+        public double rateAt(long elapsedMillis) {
+            if (elapsedMillis >= durationMillis) {
+                return to;
+            }
+            return from + (to - from) * elapsedMillis / durationMillis;
+        }
+
+        @Override
+        public double peakRate() {
+            return Math.max(from, to);
+        }
+    }
+
+    class Burst implements LoadProfile {
+        private final double base;
+        private final double peak;
+        private final long everyMillis;
+        private final long lengthMillis;
+
+        public Burst(double base, double peak, long everyMillis, long lengthMillis) {
+            if (everyMillis <= 0) {
+                throw new IllegalArgumentException("burst period must be positive");
+            }
+            this.base = base;
+            this.peak = peak;
+            this.everyMillis = everyMillis;
+            this.lengthMillis = lengthMillis;
+        }
+
+        @Override
+        public double rateAt(long elapsedMillis) {
+            return elapsedMillis % everyMillis < lengthMillis ? peak : base;
+        }
+
+        @Override
+        public double peakRate() {
+            return Math.max(base, peak);
+        }
+    }
+
+    class Diurnal implements LoadProfile {
+        private static final long DAY_IN_MILLISECONDS = 24L * 60 * 60 * 1000;
+
+        private final double min;
+        private final double max;
+
+        public Diurnal(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public double rateAt(long elapsedMillis) {
+            double phase = 2 * Math.PI * (elapsedMillis % DAY_IN_MILLISECONDS) / DAY_IN_MILLISECONDS;
+            return min + (max - min) * (1 - Math.cos(phase)) / 2;
+        }
+
+        @Override
+        public double peakRate() {
+            return Math.max(min, max);
+        }
+    }
+}
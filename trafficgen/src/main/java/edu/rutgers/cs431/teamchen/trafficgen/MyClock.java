@@ -1,18 +1,36 @@
 package edu.rutgers.cs431.teamchen.trafficgen;
 
+// The simulation clock served by the chronos service.
+// It starts at the wall clock and runs timeScale times faster than real time.
 public class MyClock {
-  public long time;
+  private final long startTime;
+  private final long startNanos;
+  private final double timeScale;
+
+  public MyClock(double timeScale) {
+    if (timeScale <= 0) {
+      throw new IllegalArgumentException("time scale must be positive: " + timeScale);
+    }
+    this.startTime = System.currentTimeMillis();
+    this.startNanos = System.nanoTime();
+    this.timeScale = timeScale;
+  }
 
   public MyClock() {
-    time = System.currentTimeMillis();
+    this(1.0);
   }
 
   public long getTime() {
-    return time;
+    return timeAt(System.nanoTime());
+  }
+
+  // the simulated time at the given System.nanoTime
+  public long timeAt(long nanos) {
+    return startTime + (long) ((nanos - startNanos) * timeScale / 1_000_000.0);
   }
 
-  public void setTime(long time) {
-    this.time = time;
+  public double getTimeScale() {
+    return timeScale;
   }
 
 }
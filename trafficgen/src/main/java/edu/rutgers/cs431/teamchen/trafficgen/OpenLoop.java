@@ -0,0 +1,41 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Waits for send deadlines that were fixed up front and keeps track of how late the sends start.
+// A send that starts more than LATE_THRESHOLD_IN_NANOS after its deadline is counted as late.
+class OpenLoop {
+    private static final long LATE_THRESHOLD_IN_NANOS = 1_000_000L;
+
+    private final AtomicLong sends = new AtomicLong(0L);
+    private final AtomicLong late = new AtomicLong(0L);
+    private final AtomicLong maxLatenessNanos = new AtomicLong(0L);
+
+    // parks until the System.nanoTime deadline, returns right away if it has passed
+    void await(long deadline) {
+        long now = System.nanoTime();
+        while (now < deadline) {
+            LockSupport.parkNanos(deadline - now);
+            now = System.nanoTime();
+        }
+        long lateness = now - deadline;
+        if (lateness > LATE_THRESHOLD_IN_NANOS) {
+            late.incrementAndGet();
+            maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+        }
+        sends.incrementAndGet();
+    }
+
+    long getSends() {
+        return sends.get();
+    }
+
+    long getLate() {
+        return late.get();
+    }
+
+    long getMaxLatenessNanos() {
+        return maxLatenessNanos.get();
+    }
+}
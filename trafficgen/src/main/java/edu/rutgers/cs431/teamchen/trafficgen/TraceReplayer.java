@@ -0,0 +1,65 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import java.io.IOException;
+
+// Sends the cars of a recorded trace again, open loop, at the pace of the simulated clock.
+//
+// Arrivals keep their spacing in simulated time, so a clock running N times faster replays the trace N times
+// faster. Timestamps are moved to start at the clock's current time, stays are kept as recorded.
+public class TraceReplayer implements Runnable {
+    private final MyClock clock;
+    private final CarTrace.Reader trace;
+    private final Listener listener;
+    private final OpenLoop loop = new OpenLoop();
+
+    public TraceReplayer(MyClock clock, CarTrace.Reader trace, Listener listener) {
+        this.clock = clock;
+        this.trace = trace;
+        this.listener = listener;
+    }
+
+    public long getReplayed() {
+        return loop.getSends();
+    }
+
+    public long getLate() {
+        return loop.getLate();
+    }
+
+    public long getMaxLatenessNanos() {
+        return loop.getMaxLatenessNanos();
+    }
+
+    @Override
+    public void run() {
+        CarTrace.Record r = new CarTrace.Record();
+        double scale = clock.getTimeScale();
+        long startNanos = System.nanoTime();
+        long startTime = clock.timeAt(startNanos);
+        long firstArrival = 0L;
+        try {
+            for (boolean first = true; trace.next(r); first = false) {
+                if (first) {
+                    firstArrival = r.arrival;
+                }
+                long offset = r.arrival - firstArrival;
+                loop.await(startNanos + (long) (offset * 1_000_000.0 / scale));
+                listener.onCar(startTime + offset, startTime + offset + (r.departure - r.arrival), r.gate);
+            }
+        } catch (IOException e) {
+            System.err.println("unable to read the car trace: " + e.getMessage());
+        } finally {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                System.err.println("unable to close the car trace: " + e.getMessage());
+            }
+        }
+        System.out.println("Trace replayed: " + loop.getSends() + " cars.");
+    }
+
+    public interface Listener {
+        // a recorded car arrives now, headed for the gate with the given index in the roster
+        void onCar(long arrival, long departure, int gate);
+    }
+}
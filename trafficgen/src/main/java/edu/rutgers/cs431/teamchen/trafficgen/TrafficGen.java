@@ -2,104 +2,174 @@ package edu.rutgers.cs431.teamchen.trafficgen;
 
 import edu.rutgers.cs431.TrafficGeneratorProto.Car;
 import edu.rutgers.cs431.TrafficGeneratorProto.GateAddress;
-import edu.rutgers.cs431.TrafficGeneratorProto.TimeRequest;
-import edu.rutgers.cs431.TrafficGeneratorProto.TimeResponse;
 import edu.rutgers.cs431.teamchen.util.SystemConfig;
+import org.apache.commons.cli.*;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 // Gates = 6
 // Max number of Cars allowed = 200
 // Time to travel from gate to Parking Space = 60 seconds
-// Frequency of arrivals of cars = 5 per second
+// Frequency of arrivals of cars = 5 per second, or as given by the load profile
 // Staying time for cars = 2 hours
+// All of the above is in simulated time, which runs time-scale times faster than real time
 
 public class TrafficGen {
-    public final static double FREQ = 5.0;
     // long lastCarTime;
     private static volatile int carCounter = 0;
+    private static final long ROUTING_REFRESH_INTERVAL_IN_MILLISECONDS = 500;
 
-    public static int getPoisson(double lambda) {
-        double L = Math.exp(-lambda);
-        double p = 1.0;
-        int k = 0;
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        options.addOption("ts", "time-scale", true, "How many times faster than real time the simulated clock " +
+                "runs. Default: 1");
+        options.addOption("st", "staying-time", true, "How long a car stays parked in simulated seconds. " +
+                "Default: 7200");
+        options.addOption("lp", "load-profile", true, "The arrival rate over time: steady:RATE, " +
+                "ramp:FROM:TO:SECONDS, burst:BASE:PEAK:EVERY:LENGTH or diurnal:MIN:MAX, in cars per simulated " +
+                "second. Default: steady:5");
+        options.addOption("r", "routing", true, "How cars pick a gate: random, p2c (the less loaded of two random " +
+                "gates) or jsq (the least loaded gate). Default: random");
+        options.addOption("m", "monitor-http", true, "The http address of the monitor, for load aware routing. " +
+                "Default: \"http://<monitor address>:8080\"");
+        options.addOption("rec", "record", true, "Record every car sent to a binary trace file");
+        options.addOption("rp", "replay", true, "Send the cars of a recorded trace file instead of generating " +
+                "them, time-scale times faster than recorded");
+        options.addOption("tb", "time-beacons", false, "Multicast time beacons for the clocks started with " +
+                "--time-beacons");
+        options.addOption("h", "help", false, "Print this help message");
 
-        do {
-            k++;
-            p *= Math.random();
-        } while (p > L);
+        CommandLine cmd = null;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("invalid arguments: " + e.toString());
+            System.exit(1);
+        }
+        if (cmd.hasOption("h") || cmd.getArgs().length < 1) {
+            new HelpFormatter().printHelp("trafficgen [options] <monitor address>", options);
+            System.exit(0);
+        }
 
-        return k - 1;
-    }
+        double timeScale = 1.0;
+        long stayingTime = 1000L * 60 * 60 * 2;
+        if (cmd.hasOption("ts")) {
+            timeScale = Double.parseDouble(cmd.getOptionValue("ts"));
+        }
+        if (cmd.hasOption("st")) {
+            stayingTime = 1000L * Long.parseLong(cmd.getOptionValue("st"));
+        }
+        LoadProfile profile = null;
+        try {
+            profile = LoadProfile.parse(cmd.getOptionValue("lp", "steady:5"));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
 
-    public static int getRandomGate(int min, int max) {
-        return min + (int) (Math.random() * ((max - min) + 1));
-    }
+        GateRouter.Mode routing = null;
+        try {
+            routing = GateRouter.Mode.valueOf(cmd.getOptionValue("r", "random").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("routing not recognizable: please pick random, p2c or jsq.");
+            System.exit(1);
+        }
+        URL monitorHttpAddr = new URL(cmd.getOptionValue("m", "http://" + cmd.getArgs()[0] + ":8080"));
+        GateRouter router = new GateRouter(routing, new URL(monitorHttpAddr, SystemConfig.MONITOR_ROSTER_LOAD_PATH));
 
-    public static void main(String[] args) throws IOException {
-        InetAddress lh = InetAddress.getByName(args[0]); // first argument is the monitor address
+        InetAddress lh = InetAddress.getByName(cmd.getArgs()[0]); // first argument is the monitor address
         RosterSync rosterSync = new RosterSync(lh, SystemConfig.MONITOR_ROSTER_PROTOBUF_SERVICE_PORT, false);
-        int stayingTime = 1000 * 60 * 60 * 2;
-
+        final long stay = stayingTime;
 
-        MyClock timer = new MyClock();
+        // everything following the chronos service runs on this clock, so the whole system speeds up with it
+        MyClock timer = new MyClock(timeScale);
+        CarSender carSender = new CarSender();
+        new Thread(carSender, "car-sender").start();
         ScheduledExecutorService carScheduler = Executors.newScheduledThreadPool(6);
-        Callable<Void> generateCars = new Callable<Void>() {
-            public Void call() throws IOException {
-                timer.setTime(System.currentTimeMillis());
-                long inTime = timer.getTime();
-                long outTime = inTime + stayingTime;
-                Car car = Car.newBuilder().setArrivalTimestamp(inTime).setDepartureTimestamp(outTime).build();
-                List<GateAddress> gateAddressList = rosterSync.getGateAddr();
-                if (gateAddressList.size() != 0) {
-                    carCounter += 1;
-                    GateAddress gate = gateAddressList.get(getRandomGate(0, gateAddressList.size() - 1));
-                    String hostName = gate.getHostname();
-                    int port = gate.getPort();
-                    System.out.println(port);
-                    Socket socket = null;
+
+        final CarTrace.Writer recorder = cmd.hasOption("rec") ? new CarTrace.Writer(Paths.get(cmd.getOptionValue
+                ("rec"))) : null;
+        if (recorder != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                synchronized (recorder) {
                     try {
-                        InetAddress lh = InetAddress.getByName(hostName);
-                        socket = new Socket(lh, port);
-                        car.writeDelimitedTo(socket.getOutputStream());
-                        socket.getOutputStream().flush();
+                        recorder.close();
+                        System.out.println("Recorded " + recorder.getRecords() + " cars.");
                     } catch (IOException e) {
-                        System.err.println(e);
-                    } finally {
-                        socket.close();
+                        System.err.println("unable to close the car trace: " + e.getMessage());
                     }
-                    System.out.println("Car count: " + carCounter + " cars.");
                 }
-                carScheduler.schedule(this, getPoisson(FREQ), TimeUnit.SECONDS);
-                // return car;
-                return null;
-            }
-        };
+            }));
+        }
 
-        Callable<Void> listenToTime = new Callable<Void>() {
-            public Void call() throws IOException {
-                Socket connectionSocket = null;
-                ServerSocket listeningSocket = new ServerSocket(SystemConfig.TRAFFIC_GENERATOR_CHRONOS_SERVICE_PORT);
-                while (true) {
-                    connectionSocket = listeningSocket.accept();
-                    TimeRequest.parseDelimitedFrom(connectionSocket.getInputStream());
-                    long currentTimeStamp = timer.getTime();
-                    TimeResponse timeResponse = TimeResponse.newBuilder().setCurrentTimestamp(currentTimeStamp).build();
-                    timeResponse.writeDelimitedTo(connectionSocket.getOutputStream());
+        // sends the car to the gate with the given index in the roster, and records it
+        TraceReplayer.Listener dispatch = (inTime, outTime, gateIndex) -> {
+            List<GateAddress> gateAddressList = rosterSync.getGateAddr();
+            if (gateAddressList == null || gateAddressList.size() == 0) {
+                return;
+            }
+            carCounter += 1;
+            GateAddress gate = gateAddressList.get(gateIndex % gateAddressList.size());
+            carSender.send(gate, Car.newBuilder().setArrivalTimestamp(inTime).setDepartureTimestamp(outTime).build());
+            if (recorder != null) {
+                synchronized (recorder) {
+                    try {
+                        recorder.append(inTime, outTime, gateIndex);
+                    } catch (IOException e) {
+                        System.err.println("unable to record car: " + e.getMessage());
+                    }
                 }
             }
         };
 
-        carScheduler.schedule(generateCars, getPoisson(FREQ), TimeUnit.SECONDS);
-        carScheduler.schedule(listenToTime, 0, TimeUnit.SECONDS);
+        final Runnable source;
+        final LongSupplier late;
+        final LongSupplier worstLateness;
+        if (cmd.hasOption("rp")) {
+            TraceReplayer replayer = new TraceReplayer(timer, new CarTrace.Reader(Paths.get(cmd.getOptionValue
+                    ("rp"))), dispatch);
+            source = replayer;
+            late = replayer::getLate;
+            worstLateness = replayer::getMaxLatenessNanos;
+        } else {
+            ArrivalGenerator arrivals = new ArrivalGenerator(timer, profile, inTime -> {
+                List<GateAddress> gateAddressList = rosterSync.getGateAddr();
+                int gates = gateAddressList == null ? 0 : gateAddressList.size();
+                if (gates != 0) {
+                    dispatch.onCar(inTime, inTime + stay, router.select(gateAddressList));
+                }
+            });
+            source = arrivals;
+            late = arrivals::getLate;
+            worstLateness = arrivals::getMaxLatenessNanos;
+        }
+
+        ChronosServer chronos = new ChronosServer(SystemConfig.TRAFFIC_GENERATOR_CHRONOS_SERVICE_PORT, timer);
+        new Thread(chronos, "chronos").start();
+        if (cmd.hasOption("tb")) {
+            BeaconSender beacons = new BeaconSender(timer,
+                    InetAddress.getByName(SystemConfig.TRAFFIC_GENERATOR_TIME_BEACON_GROUP),
+                    SystemConfig.TRAFFIC_GENERATOR_TIME_BEACON_PORT);
+            carScheduler.scheduleAtFixedRate(beacons, 0, SystemConfig.TIME_BEACON_INTERVAL_IN_MILLISECONDS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        new Thread(source, "arrivals").start();
         carScheduler.scheduleAtFixedRate(new Thread(rosterSync), 0, 10, TimeUnit.SECONDS);
+        if (router.getMode() != GateRouter.Mode.RANDOM) {
+            carScheduler.scheduleAtFixedRate(router, 0, ROUTING_REFRESH_INTERVAL_IN_MILLISECONDS,
+                    TimeUnit.MILLISECONDS);
+        }
+        carScheduler.scheduleAtFixedRate(() -> System.out.println("Car count: " + carCounter + " cars, "
+                + carSender.getSent() + " sent, " + carSender.getDropped() + " dropped, " + late.getAsLong()
+                + " late (worst " + worstLateness.getAsLong() / 1_000_000 + "ms)."), 10, 10, TimeUnit.SECONDS);
     }
 }
@@ -0,0 +1,41 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.Car;
+import edu.rutgers.cs431.TrafficGeneratorProto.GateAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+
+public class CarSenderTest {
+
+    @Test
+    public void testStreamsCarsOverOneConnection() throws Exception {
+        final int cars = 50_000;
+        CarSender sender = new CarSender();
+        new Thread(sender).start();
+        try (ServerSocket gate = new ServerSocket(0)) {
+            GateAddress addr = GateAddress.newBuilder().setHostname("localhost").setPort(gate.getLocalPort()).build();
+            for (int i = 0; i < cars; i++) {
+                sender.send(addr, Car.newBuilder().setArrivalTimestamp(i).setDepartureTimestamp(i + 1).build());
+            }
+
+            try (Socket s = gate.accept()) {
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                for (int i = 0; i < cars; i++) {
+                    Car car = Car.parseDelimitedFrom(in);
+                    Assert.assertNotNull(car);
+                    Assert.assertEquals(i, car.getArrivalTimestamp());
+                }
+            }
+        } finally {
+            sender.close();
+        }
+        Assert.assertEquals(cars, sender.getSent());
+        Assert.assertEquals(0, sender.getDropped());
+    }
+}
@@ -0,0 +1,41 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+public class CarTraceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRecordsSurviveAcrossRegions() throws Exception {
+        // more than one mapped region's worth
+        final int cars = 100_000;
+        Path path = tmp.newFile("cars.trace").toPath();
+        try (CarTrace.Writer w = new CarTrace.Writer(path)) {
+            for (int i = 0; i < cars; i++) {
+                w.append(1000L + i, 2000L + i, i % 6);
+            }
+        }
+        Assert.assertEquals(CarTrace.HEADER_SIZE + (long) cars * CarTrace.RECORD_SIZE, Files.size(path));
+
+        CarTrace.Record r = new CarTrace.Record();
+        try (CarTrace.Reader reader = new CarTrace.Reader(path)) {
+            Assert.assertEquals(cars, reader.getRecords());
+            for (int i = 0; i < cars; i++) {
+                Assert.assertTrue(reader.next(r));
+                Assert.assertEquals(1000L + i, r.arrival);
+                Assert.assertEquals(2000L + i, r.departure);
+                Assert.assertEquals(i % 6, r.gate);
+            }
+            Assert.assertFalse(reader.next(r));
+        }
+    }
+}
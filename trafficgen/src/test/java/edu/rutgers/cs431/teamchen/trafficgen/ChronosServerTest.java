@@ -0,0 +1,49 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.TimeRequest;
+import edu.rutgers.cs431.TrafficGeneratorProto.TimeResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.Socket;
+
+
+public class ChronosServerTest {
+
+    @Test
+    public void testManyRequestsPerConnection() throws Exception {
+        ChronosServer server = new ChronosServer(0, new MyClock());
+        new Thread(server).start();
+        try (Socket a = new Socket("localhost", server.getPort());
+             Socket b = new Socket("localhost", server.getPort())) {
+            long last = 0L;
+            for (int i = 0; i < 10; i++) {
+                for (Socket s : new Socket[]{a, b}) {
+                    TimeRequest.getDefaultInstance().writeDelimitedTo(s.getOutputStream());
+                    TimeResponse resp = TimeResponse.parseDelimitedFrom(s.getInputStream());
+                    Assert.assertNotNull(resp);
+                    Assert.assertTrue(resp.getCurrentTimestamp() >= last);
+                    last = resp.getCurrentTimestamp();
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        ChronosServer server = new ChronosServer(0, new MyClock());
+        new Thread(server).start();
+        try (Socket s = new Socket("localhost", server.getPort())) {
+            for (int i = 0; i < 5; i++) {
+                TimeRequest.getDefaultInstance().writeDelimitedTo(s.getOutputStream());
+            }
+            for (int i = 0; i < 5; i++) {
+                Assert.assertNotNull(TimeResponse.parseDelimitedFrom(s.getInputStream()));
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
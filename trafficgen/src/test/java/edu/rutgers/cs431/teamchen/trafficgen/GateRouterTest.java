@@ -0,0 +1,48 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import edu.rutgers.cs431.TrafficGeneratorProto.GateAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class GateRouterTest {
+
+    private static List<GateAddress> roster(int n) {
+        List<GateAddress> gates = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            gates.add(GateAddress.newBuilder().setHostname("localhost").setPort(9000 + i).build());
+        }
+        return gates;
+    }
+
+    @Test
+    public void testJsqCountsCarsSentSinceTheLastReport() throws Exception {
+        GateRouter router = new GateRouter(GateRouter.Mode.JSQ, new URL("http://localhost:1/"));
+        List<GateAddress> gates = roster(4);
+        int[] counts = new int[4];
+        for (int i = 0; i < 400; i++) {
+            counts[router.select(gates)]++;
+        }
+        for (int c : counts) {
+            Assert.assertEquals(100, c);
+        }
+    }
+
+    @Test
+    public void testP2cBalancesBetterThanRandom() throws Exception {
+        GateRouter router = new GateRouter(GateRouter.Mode.P2C, new URL("http://localhost:1/"));
+        List<GateAddress> gates = roster(8);
+        int[] counts = new int[8];
+        for (int i = 0; i < 8000; i++) {
+            counts[router.select(gates)]++;
+        }
+        for (int c : counts) {
+            // two choices keep every gate within a few cars of the mean
+            Assert.assertEquals(1000, c, 10);
+        }
+    }
+}
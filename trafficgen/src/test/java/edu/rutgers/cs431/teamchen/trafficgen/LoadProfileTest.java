@@ -0,0 +1,49 @@
+package edu.rutgers.cs431.teamchen.trafficgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class LoadProfileTest {
+
+    @Test
+    public void testParseShapes() {
+        LoadProfile ramp = LoadProfile.parse("ramp:10:50:100");
+        Assert.assertEquals(10.0, ramp.rateAt(0), 1e-9);
+        Assert.assertEquals(30.0, ramp.rateAt(50_000), 1e-9);
+        Assert.assertEquals(50.0, ramp.rateAt(500_000), 1e-9);
+        Assert.assertEquals(50.0, ramp.peakRate(), 1e-9);
+
+        LoadProfile burst = LoadProfile.parse("burst:5:100:60:10");
+        Assert.assertEquals(100.0, burst.rateAt(65_000 - 60_000), 1e-9);
+        Assert.assertEquals(5.0, burst.rateAt(75_000), 1e-9);
+
+        LoadProfile diurnal = LoadProfile.parse("diurnal:2:20");
+        Assert.assertEquals(2.0, diurnal.rateAt(0), 1e-9);
+        Assert.assertEquals(20.0, diurnal.rateAt(12L * 60 * 60 * 1000), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsWrongArity() {
+        LoadProfile.parse("steady:1:2");
+    }
+
+    @Test
+    public void testGeneratesProfileRate() throws Exception {
+        // 200 cars per simulated second, 100 times faster than real time
+        MyClock clock = new MyClock(100);
+        final long[] last = {Long.MIN_VALUE};
+        ArrivalGenerator gen = new ArrivalGenerator(clock, LoadProfile.parse("steady:200"), t -> {
+            Assert.assertTrue(t >= last[0]);
+            last[0] = t;
+        });
+        Thread t = new Thread(gen);
+        t.start();
+        Thread.sleep(500);
+        gen.stop();
+        t.join();
+
+        // 0.5s real is 50 simulated seconds, 10000 expected cars
+        Assert.assertEquals(10_000, gen.getGenerated(), 1_500);
+    }
+}
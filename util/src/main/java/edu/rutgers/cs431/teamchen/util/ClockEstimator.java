@@ -0,0 +1,128 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.util.ArrayDeque;
+
+// Estimates a remote clock from round trip samples, NTP style.
+//
+// Each sample is the local System.nanoTime when a time request was sent and when its answer came back,
+// and the remote time in the answer. The remote time is assumed to be read half way through the round trip,
+// so a sample is only as good as its round trip is short. The estimate is anchored at the sample with the
+// shortest round trip in the window and the rate of the remote clock against the local one is fitted over
+// the samples whose round trip is close to that shortest.
+public class ClockEstimator {
+
+    private static final int WINDOW = 16;
+    // samples slower than this many times the fastest round trip in the window don't go into the rate fit
+    private static final long RATE_FIT_RTT_FACTOR = 2;
+    // the rate is only fitted once the samples span this much local time
+    private static final long MIN_RATE_FIT_SPAN_IN_NANOS = 1_000_000_000L;
+    private static final double NANOS_PER_MILLISECOND = 1_000_000.0;
+
+    private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+    private volatile Estimate estimate;
+
+    // starts from the local wall clock until the first sample comes in
+    public ClockEstimator() {
+        this.estimate = new Estimate(System.nanoTime(), System.currentTimeMillis(), 1.0 / NANOS_PER_MILLISECOND, Long.MAX_VALUE);
+    }
+
+    // the remote time in milliseconds at the given local System.nanoTime
+    public long timeAt(long localNanos) {
+        return estimate.timeAt(localNanos);
+    }
+
+    // the round trip of the sample the estimate is anchored at, Long.MAX_VALUE before the first sample
+    public long anchorRttNanos() {
+        return estimate.rttNanos;
+    }
+
+    // the remote milliseconds per local nanosecond
+    public double rate() {
+        return estimate.rate;
+    }
+
+    // adds a round trip sample and returns how far off, in milliseconds, the estimate before it was
+    public synchronized long addSample(long sentNanos, long remoteMillis, long receivedNanos) {
+        long rtt = Math.max(0L, receivedNanos - sentNanos);
+        long mid = sentNanos + rtt / 2;
+        long error = remoteMillis - estimate.timeAt(mid);
+
+        samples.addLast(new Sample(mid, remoteMillis, rtt));
+        if (samples.size() > WINDOW) {
+            samples.removeFirst();
+        }
+
+        Sample best = samples.peekFirst();
+        for (Sample s : samples) {
+            if (s.rttNanos <= best.rttNanos) {
+                best = s;
+            }
+        }
+        estimate = new Estimate(best.localNanos, best.remoteMillis, fitRate(best.rttNanos), best.rttNanos);
+        return error;
+    }
+
+    // least squares slope of remote against local time over the good samples,
+    // keeps the current rate if they don't span long enough
+    private double fitRate(long bestRtt) {
+        long limit = Math.max(bestRtt * RATE_FIT_RTT_FACTOR, bestRtt + 1_000_000L);
+        int n = 0;
+        long x0 = samples.peekFirst().localNanos;
+        long y0 = samples.peekFirst().remoteMillis;
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (Sample s : samples) {
+            if (s.rttNanos > limit) {
+                continue;
+            }
+            double x = s.localNanos - x0;
+            double y = s.remoteMillis - y0;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+            minX = Math.min(minX, s.localNanos);
+            maxX = Math.max(maxX, s.localNanos);
+            n++;
+        }
+        if (n < 2 || maxX - minX < MIN_RATE_FIT_SPAN_IN_NANOS) {
+            return estimate.rate;
+        }
+        double denom = n * sxx - sx * sx;
+        if (denom <= 0) {
+            return estimate.rate;
+        }
+        double rate = (n * sxy - sx * sy) / denom;
+        return rate > 0 ? rate : estimate.rate;
+    }
+
+    private static class Sample {
+        final long localNanos;
+        final long remoteMillis;
+        final long rttNanos;
+
+        Sample(long localNanos, long remoteMillis, long rttNanos) {
+            this.localNanos = localNanos;
+            this.remoteMillis = remoteMillis;
+            this.rttNanos = rttNanos;
+        }
+    }
+
+    private static class Estimate {
+        final long anchorNanos;
+        final long anchorMillis;
+        final double rate;
+        final long rttNanos;
+
+        Estimate(long anchorNanos, long anchorMillis, double rate, long rttNanos) {
+            this.anchorNanos = anchorNanos;
+            this.anchorMillis = anchorMillis;
+            this.rate = rate;
+            this.rttNanos = rttNanos;
+        }
+
+        long timeAt(long localNanos) {
+            return anchorMillis + Math.round((localNanos - anchorNanos) * rate);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import edu.rutgers.cs431.teamchen.proto.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Records latencies into the buckets of a LatencyHistogram without locks, any number of threads at once.
+// A snapshot taken while values are recorded may miss the latest ones, never counts one twice.
+public class ConcurrentHistogram {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public void record(long value) {
+        value = Math.max(0L, value);
+        counts.incrementAndGet(LatencyHistogram.bucketOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public LatencyHistogram snapshot() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c > 0) {
+                h.buckets.add(i);
+                h.counts.add(c);
+            }
+        }
+        h.sum = sum.sum();
+        h.max = max.get();
+        return h;
+    }
+}
@@ -3,13 +3,25 @@ package edu.rutgers.cs431.teamchen.util;
 import edu.rutgers.cs431.TrafficGeneratorProto;
 import edu.rutgers.cs431.teamchen.proto.CarWithToken;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
+// Safe to call from any thread. The time is shown to the second, and the cars of a second mostly share it, so the
+// last second formatted is kept and reused.
 public class DataFormatter {
-    private static SimpleDateFormat timeFormatter = new SimpleDateFormat("HH:mm:ss z");
+    private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss z")
+            .withZone(ZoneId.systemDefault());
+    private static volatile FormattedSecond last = new FormattedSecond(Long.MIN_VALUE, "");
 
     public static String format(long time) {
-        return timeFormatter.format(time);
+        long second = Math.floorDiv(time, 1000L);
+        FormattedSecond cached = last;
+        if (cached.second != second) {
+            cached = new FormattedSecond(second, timeFormatter.format(Instant.ofEpochSecond(second)));
+            last = cached;
+        }
+        return cached.text;
     }
 
     public static String format(TrafficGeneratorProto.Car car) {
@@ -22,4 +34,14 @@ public class DataFormatter {
                 cwt.token + ")";
 
     }
+
+    private static class FormattedSecond {
+        final long second;
+        final String text;
+
+        FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import edu.rutgers.cs431.TrafficGeneratorProto;
+import edu.rutgers.cs431.teamchen.proto.CarWithToken;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Logs the car path without holding it up: a line is a message and the car it is about, put in a ring buffer and
+// formatted and printed by a writer thread of its own, many lines to one print.
+//
+// -Dparkinglot.log.level=debug|info|warning|off drops the lines below the level before they are queued,
+// -Dparkinglot.log.buffer sets how many lines may wait (8192 by default). When the writer falls that far behind
+// new lines are dropped and counted rather than making the gates wait, the writer says how many it lost.
+// What is left is printed when the process exits.
+public class EventLog {
+    public enum Level {
+        DEBUG, INFO, WARNING, OFF
+    }
+
+    private static final int DEFAULT_BUFFER = 8192;
+    // how long the writer sleeps when no line comes in to wake it
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static volatile EventLog instance;
+
+    private final Level level;
+    private final PrintStream out;
+    private final Slot[] ring;
+    private final int mask;
+    // the next slot a logging thread claims, and the next one the writer prints
+    private final AtomicLong tail = new AtomicLong(0L);
+    private volatile long head = 0L;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean writerParked = false;
+
+    public EventLog(Level level, int capacity, PrintStream out) {
+        this.level = level;
+        this.out = out;
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            this.ring[i] = new Slot(i);
+        }
+        this.mask = size - 1;
+        this.writer = new Thread(this::write, "event-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // the log of the process, on stdout
+    public static EventLog get() {
+        if (instance == null) {
+            synchronized (EventLog.class) {
+                if (instance == null) {
+                    EventLog log = new EventLog(configuredLevel(), Math.max(2, Integer.getInteger("parkinglot.log" +
+                            ".buffer", DEFAULT_BUFFER)), System.out);
+                    Runtime.getRuntime().addShutdownHook(new Thread(log::flush));
+                    MetricsRegistry.get().counter("log_lines_dropped_total", "Log lines dropped because the " +
+                            "writer fell behind", log::droppedCount);
+                    instance = log;
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static Level configuredLevel() {
+        String name = System.getProperty("parkinglot.log.level", "info");
+        try {
+            return Level.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("WARNING: unknown log level " + name + ", logging info");
+            return Level.INFO;
+        }
+    }
+
+    public static void info(String msg) {
+        get().log(Level.INFO, msg, null);
+    }
+
+    // the car, a Car or a CarWithToken, is formatted after the message by the writer
+    public static void info(String msg, Object car) {
+        get().log(Level.INFO, msg, car);
+    }
+
+    public static void warning(String msg) {
+        get().log(Level.WARNING, msg, null);
+    }
+
+    public static void debug(String msg, Object car) {
+        get().log(Level.DEBUG, msg, car);
+    }
+
+    public boolean isEnabled(Level l) {
+        return l != Level.OFF && l.compareTo(this.level) >= 0;
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    // queues a line, or drops it if the ring is full
+    public void log(Level l, String msg, Object subject) {
+        if (!isEnabled(l)) {
+            return;
+        }
+        long pos = tail.get();
+        Slot slot;
+        while (true) {
+            slot = ring[(int) (pos & mask)];
+            long diff = slot.sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the writer hasn't printed the line a lap ago yet
+                dropped.increment();
+                return;
+            } else {
+                pos = tail.get();
+            }
+        }
+        slot.level = l;
+        slot.msg = msg;
+        slot.subject = subject;
+        // hands the slot to the writer
+        slot.sequence = pos + 1;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // waits until the lines queued so far are printed, or a second went by
+    public void flush() {
+        long until = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (head < until && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            Thread.yield();
+        }
+        out.flush();
+    }
+
+    private void write() {
+        StringBuilder batch = new StringBuilder(64 * 1024);
+        long reportedDropped = 0L;
+        while (true) {
+            long pos = head;
+            Slot slot = ring[(int) (pos & mask)];
+            if (slot.sequence != pos + 1) {
+                if (batch.length() > 0) {
+                    out.print(batch);
+                    out.flush();
+                    batch.setLength(0);
+                }
+                long lost = dropped.sum();
+                if (lost != reportedDropped) {
+                    out.println("WARNING: dropped " + (lost - reportedDropped) + " log lines, the log fell behind");
+                    reportedDropped = lost;
+                }
+                writerParked = true;
+                // a line queued before the flag was up has to be seen here
+                if (slot.sequence != pos + 1) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+                continue;
+            }
+            batch.append(slot.level.name()).append(": ").append(slot.msg);
+            if (slot.subject != null) {
+                batch.append(format(slot.subject));
+            }
+            batch.append('\n');
+            slot.msg = null;
+            slot.subject = null;
+            // free for the logging threads' next lap
+            slot.sequence = pos + mask + 1;
+            head = pos + 1;
+            if (batch.length() > 60 * 1024) {
+                out.print(batch);
+                batch.setLength(0);
+            }
+        }
+    }
+
+    private static String format(Object subject) {
+        if (subject instanceof CarWithToken) {
+            return DataFormatter.format((CarWithToken) subject);
+        }
+        if (subject instanceof TrafficGeneratorProto.Car) {
+            return DataFormatter.format((TrafficGeneratorProto.Car) subject);
+        }
+        return String.valueOf(subject);
+    }
+
+    private static class Slot {
+        volatile long sequence;
+        Level level;
+        String msg;
+        Object subject;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// What runs a component's http handlers, see ServiceHost.
+//
+// -Dparkinglot.executor picks the profile for every service of the process:
+//   platform   a pool of at most -Dparkinglot.executor.threads threads, the rest wait in line (the default)
+//   forkjoin   a work-stealing pool with that parallelism, handlers that block hold up a worker each
+//   virtual    a virtual thread per call, on runtimes that have them, a platform pool otherwise
+// Handlers call other components and wait for them, so the pools are sized for waiting rather than for cores.
+public enum ExecutionProfile {
+    PLATFORM, FORKJOIN, VIRTUAL;
+
+    private static final int DEFAULT_THREADS = 64;
+
+    // the profile the process was started with
+    public static ExecutionProfile current() {
+        String name = System.getProperty("parkinglot.executor", "platform");
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("WARNING: unknown execution profile " + name + ", using platform threads");
+            return PLATFORM;
+        }
+    }
+
+    // the most handlers a platform or fork-join pool runs at once
+    public static int threads() {
+        return Math.max(1, Integer.getInteger("parkinglot.executor.threads", DEFAULT_THREADS));
+    }
+
+    // this profile, or the one it falls back to on this runtime
+    public ExecutionProfile available() {
+        if (this == VIRTUAL && newVirtualThreadPerTaskExecutor() == null) {
+            System.err.println("WARNING: no virtual threads on this runtime, using platform threads");
+            return PLATFORM;
+        }
+        return this;
+    }
+
+    // a new executor for the handlers of one service, its threads named after the service
+    public ExecutorService newExecutor(String name) {
+        switch (this) {
+            case FORKJOIN:
+                return new ForkJoinPool(threads(), pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                            .newThread(pool);
+                    t.setName(name + "-" + t.getPoolIndex());
+                    t.setDaemon(true);
+                    return t;
+                }, null, true);
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                return virtual != null ? virtual : PLATFORM.newExecutor(name);
+            default:
+                AtomicInteger count = new AtomicInteger(0);
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads(), threads(), 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+                // an idle service keeps no threads around
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor, looked up at run time since the code builds for Java 8,
+    // null if the runtime has no virtual threads
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
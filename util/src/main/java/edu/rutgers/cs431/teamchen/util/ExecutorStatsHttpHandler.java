@@ -0,0 +1,28 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+
+// Serves how busy a service's handlers are, see InstrumentedExecutor
+public class ExecutorStatsHttpHandler implements HttpHandler {
+    private final InstrumentedExecutor executor;
+
+    public ExecutorStatsHttpHandler(InstrumentedExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        byte[] body = Wire.GSON.toJson(executor.stats()).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", Wire.JSON);
+        ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        OutputStream out = ex.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
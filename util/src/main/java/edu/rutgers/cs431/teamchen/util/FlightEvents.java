@@ -0,0 +1,147 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// The Java Flight Recorder events of the car and token lifecycle.
+//
+// They cost next to nothing unless a recording is running, start one with
+// -XX:StartFlightRecording=settings=profile,filename=parkinglot.jfr and summarise it with the cluster's
+// FlightSummary. The events carry no stack traces, the thread they happened on is enough to line them up with the
+// JVM's own lock and park events. The simulated times are in simulated milliseconds, the durations are wall time.
+//
+// JVMs without the flight recorder, Java 8 before 8u262, can't load the events: create them only if ENABLED.
+public class FlightEvents {
+    // whether this JVM has the flight recorder
+    public static final boolean ENABLED = flightRecorderPresent();
+
+    private static boolean flightRecorderPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Name("parkinglot.CarQueued")
+    @Label("Car Queued")
+    @Category({"Parking Lot", "Gate"})
+    @Description("A car joined a gate's waiting queue")
+    @StackTrace(false)
+    public static class CarQueued extends Event {
+        @Label("Gate")
+        public String gate;
+        @Label("Trace Id")
+        public long traceId;
+        @Label("Queue Length")
+        public int queueLength;
+        @Label("Redirected")
+        @Description("Whether a neighbour that had no room handed the car over")
+        public boolean redirected;
+    }
+
+    @Name("parkinglot.TokenAcquired")
+    @Label("Token Acquired")
+    @Category({"Parking Lot", "Gate"})
+    @Description("The car at the head of a gate's queue waiting for and getting a token")
+    @StackTrace(false)
+    public static class TokenAcquired extends Event {
+        @Label("Gate")
+        public String gate;
+        @Label("Trace Id")
+        public long traceId;
+        @Label("Simulated Wait")
+        @Timespan(Timespan.MILLISECONDS)
+        public long simulatedWait;
+    }
+
+    @Name("parkinglot.TokenShared")
+    @Label("Token Shared")
+    @Category({"Parking Lot", "Gate"})
+    @Description("A gate asking a peer for a token, on the thread of the gate's car at the head of the queue")
+    @StackTrace(false)
+    public static class TokenShared extends Event {
+        @Label("Peer")
+        public String peer;
+        @Label("Result")
+        @Description("token, empty or error")
+        public String result;
+    }
+
+    @Name("parkinglot.TransferDone")
+    @Label("Transfer Done")
+    @Category({"Parking Lot", "Gate"})
+    @Description("A car passing the gate and being handed to the parking space")
+    @StackTrace(false)
+    public static class TransferDone extends Event {
+        @Label("Gate")
+        public String gate;
+        @Label("Trace Id")
+        public long traceId;
+        @Label("Token")
+        public String token;
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("parkinglot.CarDeparted")
+    @Label("Car Departed")
+    @Category({"Parking Lot", "Parking Space"})
+    @Description("The parking space sending a leaving car back through a gate")
+    @StackTrace(false)
+    public static class CarDeparted extends Event {
+        @Label("Gate")
+        public String gate;
+        @Label("Trace Id")
+        public long traceId;
+        @Label("Token")
+        public String token;
+        @Label("Departure Lag")
+        @Description("How long after its departure time the car left")
+        @Timespan(Timespan.MILLISECONDS)
+        public long lag;
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("parkinglot.ClockResynced")
+    @Label("Clock Resynced")
+    @Category({"Parking Lot", "Clock"})
+    @Description("A reading of the time service corrected the simulated clock")
+    @StackTrace(false)
+    public static class ClockResynced extends Event {
+        @Label("Error")
+        @Description("How far off the estimate was")
+        @Timespan(Timespan.MILLISECONDS)
+        public long error;
+        @Label("Round Trip")
+        @Timespan(Timespan.MICROSECONDS)
+        public long roundTrip;
+        @Label("Rate")
+        @Description("Simulated time per local time")
+        public double rate;
+    }
+
+    @Name("parkinglot.TokensMoved")
+    @Label("Tokens Moved")
+    @Category({"Parking Lot", "Monitor"})
+    @Description("The monitor moving tokens from one gate to another")
+    @StackTrace(false)
+    public static class TokensMoved extends Event {
+        @Label("From")
+        public String from;
+        @Label("To")
+        public String to;
+        @Label("Tokens")
+        public long count;
+        @Label("Reason")
+        @Description("rebalance, or deficit for a gate that registered while the reservoir was dry")
+        public String reason;
+    }
+}
@@ -1,12 +1,11 @@
 package edu.rutgers.cs431.teamchen.util;
 
-import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import edu.rutgers.cs431.teamchen.proto.Codecs;
 import edu.rutgers.cs431.teamchen.proto.GateHttpAddressesChangeRequest;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -20,23 +19,43 @@ public class GateAddressBook implements HttpHandler, PeerHttpAddressProvider {
 
     private final Lock peerHttpAddrsLock = new ReentrantLock();
     private ArrayList<URL> peerHttpAddrs = null;
+    // the epoch of the last applied address change
+    private long epoch = 0L;
 
     public void setPeerHttpAddresses(ArrayList<URL> peerAddrs) {
         peerHttpAddrsLock.lock();
         this.peerHttpAddrs = peerAddrs;
-        System.out.println("PEER ADDRESS UPDATED: ");
-        for (URL addr : peerAddrs) {
-            System.out.println("\t" + addr);
-        }
         peerHttpAddrsLock.unlock();
+        EventLog.info("Peer addresses updated: " + peerAddrs);
     }
 
     public void setPeerHttpAddresses2(ArrayList<String> peerAddrs) throws MalformedURLException {
+        this.setPeerHttpAddresses(toUrls(peerAddrs));
+    }
+
+    // applies the addresses only if they are not older than the ones already applied,
+    // returns false when the change is stale and has been dropped
+    public boolean setPeerHttpAddresses(ArrayList<String> peerAddrs, long epoch) throws MalformedURLException {
+        ArrayList<URL> addrs = toUrls(peerAddrs);
+        peerHttpAddrsLock.lock();
+        try {
+            if (epoch < this.epoch) {
+                return false;
+            }
+            this.epoch = epoch;
+            this.setPeerHttpAddresses(addrs);
+        } finally {
+            peerHttpAddrsLock.unlock();
+        }
+        return true;
+    }
+
+    private static ArrayList<URL> toUrls(ArrayList<String> peerAddrs) throws MalformedURLException {
         ArrayList<URL> addrs = new ArrayList<>();
         for (String addr : peerAddrs) {
             addrs.add(new URL(addr));
         }
-        this.setPeerHttpAddresses(addrs);
+        return addrs;
     }
 
     public ArrayList<URL> getAddresses() {
@@ -47,17 +66,29 @@ public class GateAddressBook implements HttpHandler, PeerHttpAddressProvider {
         return res;
     }
 
+    public long getEpoch() {
+        peerHttpAddrsLock.lock();
+        try {
+            return epoch;
+        } finally {
+            peerHttpAddrsLock.unlock();
+        }
+    }
+
     @Override
     public void handle(HttpExchange ex) throws IOException {
-        Gson gson = new Gson();
-        InputStreamReader reader = new InputStreamReader(ex.getRequestBody());
-        GateHttpAddressesChangeRequest req = gson.fromJson(reader, GateHttpAddressesChangeRequest.class);
-        reader.close();
+        GateHttpAddressesChangeRequest req = Wire.readRequest(ex, GateHttpAddressesChangeRequest.class,
+                Codecs.GATE_HTTP_ADDRESSES_CHANGE_REQUEST);
+
+        if (!this.setPeerHttpAddresses(req.gateHttpAddrs, req.epoch)) {
+            EventLog.info("Peer address update dropped: stale epoch " + req.epoch + " < " + this.getEpoch());
+            ex.sendResponseHeaders(HttpURLConnection.HTTP_CONFLICT, -1);
+            ex.close();
+            return;
+        }
 
         ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
         ex.close();
-
-        this.setPeerHttpAddresses2(req.gateHttpAddrs);
     }
 
 }
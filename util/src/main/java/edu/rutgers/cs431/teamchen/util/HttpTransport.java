@@ -0,0 +1,45 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// A call is one HTTP request, an empty body makes it a GET
+public class HttpTransport implements Transport {
+
+    @Override
+    public Reply call(URL base, String path, String contentType, byte[] body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(base, Transport.resolve(base, path))
+                .openConnection();
+        conn.setRequestProperty("Accept", contentType);
+        if (body.length > 0) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", contentType);
+            conn.setFixedLengthStreamingMode(body.length);
+            OutputStream out = conn.getOutputStream();
+            out.write(body);
+            out.close();
+        }
+        int code = conn.getResponseCode();
+        // reading the whole answer lets the connection go back to the keep-alive cache
+        InputStream in = code < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream() : conn.getErrorStream();
+        return new Reply(code, conn.getContentType(), in == null ? new byte[0] : readAll(in));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        byte[] buf = new byte[4096];
+        int n;
+        try {
+            while ((n = in.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+}
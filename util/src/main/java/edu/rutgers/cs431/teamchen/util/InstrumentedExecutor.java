@@ -0,0 +1,87 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs a service's handlers on an executor of its ExecutionProfile and keeps track of how busy it is:
+// how many handlers run and wait right now, the most that ever ran at once, and how long they waited and ran.
+public class InstrumentedExecutor implements Executor {
+    private final ExecutionProfile profile;
+    private final ExecutorService delegate;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger peakActive = new AtomicInteger(0);
+    private final AtomicInteger waiting = new AtomicInteger(0);
+    private final AtomicLong completed = new AtomicLong(0L);
+    private final AtomicLong rejected = new AtomicLong(0L);
+    private final AtomicLong waitNanos = new AtomicLong(0L);
+    private final AtomicLong runNanos = new AtomicLong(0L);
+
+    public InstrumentedExecutor(ExecutionProfile profile, String name) {
+        this.profile = profile.available();
+        this.delegate = this.profile.newExecutor(name);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long queuedAt = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                long startedAt = System.nanoTime();
+                waiting.decrementAndGet();
+                waitNanos.addAndGet(startedAt - queuedAt);
+                peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    runNanos.addAndGet(System.nanoTime() - startedAt);
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    public Stats stats() {
+        Stats s = new Stats();
+        s.profile = profile.name().toLowerCase();
+        s.active = active.get();
+        s.peakActive = peakActive.get();
+        s.waiting = waiting.get();
+        s.completed = completed.get();
+        s.rejected = rejected.get();
+        s.totalWaitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+        s.totalRunMillis = TimeUnit.NANOSECONDS.toMillis(runNanos.get());
+        return s;
+    }
+
+    // a snapshot of the counts, served as JSON by ExecutorStatsHttpHandler
+    public static class Stats {
+        public String profile;
+        // the handlers running and the calls waiting for one right now
+        public int active;
+        public int waiting;
+        // the most handlers that ever ran at once
+        public int peakActive;
+        public long completed;
+        public long rejected;
+        public long totalWaitMillis;
+        public long totalRunMillis;
+    }
+}
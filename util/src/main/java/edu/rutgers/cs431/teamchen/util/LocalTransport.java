@@ -0,0 +1,61 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Calls the services started in this JVM straight through their handlers, with no socket or serialization of
+// the exchange in between. Services elsewhere are called with the fallback.
+//
+// Every ServiceHost registers here when it starts. The services of one JVM all bind their own http port, so the
+// port alone names a service and the hostname in the address is ignored.
+public class LocalTransport implements Transport {
+    private static final long CALL_TIMEOUT_IN_MILLISECONDS = 30_000;
+    private static final Map<Integer, ServiceHost> hosts = new ConcurrentHashMap<>();
+
+    private final Transport fallback;
+
+    public LocalTransport(Transport fallback) {
+        this.fallback = fallback;
+    }
+
+    static void register(ServiceHost host) {
+        hosts.put(host.getAddress().getPort(), host);
+    }
+
+    static void unregister(ServiceHost host) {
+        hosts.remove(host.getAddress().getPort(), host);
+    }
+
+    // whether a service of this JVM serves the http port
+    public static boolean serves(int httpPort) {
+        return hosts.containsKey(httpPort);
+    }
+
+    @Override
+    public Reply call(URL base, String path, String contentType, byte[] body) throws IOException {
+        ServiceHost host = hosts.get(base.getPort() == -1 ? base.getDefaultPort() : base.getPort());
+        if (host == null) {
+            return fallback.call(base, path, contentType, body);
+        }
+        CompletableFuture<Reply> reply = new CompletableFuture<>();
+        host.dispatch(Transport.resolve(base, path), contentType, body, host.getAddress(), host.getAddress(), reply::complete);
+        try {
+            return reply.get(CALL_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("no answer from " + base + path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted calling " + base + path);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// The counters, histograms and gauges of a process, served in the Prometheus text format at
+// SystemConfig.SERVICE_METRICS_PATH by every service, see ServiceHost.
+//
+// Counters and histograms are striped LongAdders, so recording on a hot path costs a few uncontended adds. Look
+// a metric up once and keep it, the lookup builds a key. Several components of one process, like the gates of a
+// GateHost, tell theirs apart by labels.
+public class MetricsRegistry {
+    private static final MetricsRegistry PROCESS = new MetricsRegistry();
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    // the registry every component of this process records to
+    public static MetricsRegistry get() {
+        return PROCESS;
+    }
+
+    // labels go in name, value pairs
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").metrics.computeIfAbsent(labelString(labels), k -> new
+                Counter());
+    }
+
+    // a histogram of values with buckets up to each of the bounds, in increasing order
+    public Histogram histogram(String name, String help, long[] bounds, String... labels) {
+        return (Histogram) family(name, help, "histogram").metrics.computeIfAbsent(labelString(labels), k -> new
+                Histogram(bounds));
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return histogram(name, help, Histogram.DEFAULT_BOUNDS, labels);
+    }
+
+    // a value read when the metrics are served, registering it again replaces the old one
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.put(labelString(labels), new Gauge(value));
+    }
+
+    // a count kept elsewhere, read when the metrics are served
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").metrics.put(labelString(labels), new Gauge(value));
+    }
+
+    // the metrics in the Prometheus text format
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family f : new TreeMap<>(families).values()) {
+            out.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            for (Map.Entry<String, Metric> e : new TreeMap<>(f.metrics).entrySet()) {
+                e.getValue().writeTo(out, f.name, e.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family f = families.computeIfAbsent(name, k -> new Family(name, help, type));
+        if (!f.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is a " + f.type + ", not a " + type);
+        }
+        return f;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels go in name, value pairs");
+        }
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            s.append(i == 0 ? "" : ",").append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return s.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, long value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private interface Metric {
+        void writeTo(StringBuilder out, String name, String labels);
+    }
+
+    public static class Counter implements Metric {
+        private final LongAdder count = new LongAdder();
+
+        public void inc() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        public void writeTo(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, null, count.sum());
+        }
+    }
+
+    public static class Histogram implements Metric {
+        // 1, 2, 4 ... about a million, milliseconds up to a quarter of an hour
+        static final long[] DEFAULT_BOUNDS = new long[21];
+
+        static {
+            for (int i = 0; i < DEFAULT_BOUNDS.length; i++) {
+                DEFAULT_BOUNDS[i] = 1L << i;
+            }
+        }
+
+        private final long[] bounds;
+        // one more than the bounds for the values above the last one
+        private final LongAdder[] buckets;
+        private final LongAdder sum = new LongAdder();
+
+        Histogram(long[] bounds) {
+            this.bounds = bounds.clone();
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long value) {
+            int lo = 0;
+            int hi = bounds.length;
+            // the first bound the value isn't above
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bounds[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            buckets[lo].increment();
+            sum.add(value);
+        }
+
+        public long count() {
+            long n = 0;
+            for (LongAdder b : buckets) {
+                n += b.sum();
+            }
+            return n;
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        @Override
+        public void writeTo(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                sample(out, name + "_bucket", labels, "le=\"" + bounds[i] + "\"", cumulative);
+            }
+            cumulative += buckets[bounds.length].sum();
+            sample(out, name + "_bucket", labels, "le=\"+Inf\"", cumulative);
+            sample(out, name + "_sum", labels, null, sum.sum());
+            sample(out, name + "_count", labels, null, cumulative);
+        }
+    }
+
+    // a value read at scrape time
+    private static class Gauge implements Metric {
+        private final LongSupplier value;
+
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void writeTo(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, null, value.getAsLong());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Hands a call that didn't come over HTTP to the services' HttpHandlers as if it had.
+//
+// The answer goes to onReply once, when the handler closes the exchange or the response body, or right away
+// if it sends headers without a body.
+class RpcExchange extends HttpExchange {
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final InetSocketAddress local;
+    private final InetSocketAddress remote;
+    private final Consumer<Transport.Reply> onReply;
+    private InputStream in;
+    private OutputStream out;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int code = -1;
+    private boolean replied;
+
+    RpcExchange(String path, String contentType, byte[] requestBody, InetSocketAddress local,
+                InetSocketAddress remote, Consumer<Transport.Reply> onReply) {
+        this.uri = URI.create(path);
+        this.local = local;
+        this.remote = remote;
+        this.onReply = onReply;
+        this.requestHeaders.set("Content-Type", contentType);
+        this.requestHeaders.set("Accept", contentType);
+        this.in = new ByteArrayInputStream(requestBody);
+        this.out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                body.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                reply();
+            }
+        };
+    }
+
+    // answers with what the handler sent so far, a handler that sent nothing failed
+    synchronized void reply() {
+        if (replied) {
+            return;
+        }
+        replied = true;
+        int status = code == -1 ? 500 : code;
+        onReply.accept(new Transport.Reply(status, responseHeaders.getFirst("Content-Type"), body.toByteArray()));
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return "POST";
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        reply();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return out;
+    }
+
+    @Override
+    public synchronized void sendResponseHeaders(int rCode, long responseLength) {
+        this.code = rCode;
+        if (responseLength == -1) {
+            reply();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return remote;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return code;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return local;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "RPC/1.0";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            this.in = i;
+        }
+        if (o != null) {
+            this.out = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
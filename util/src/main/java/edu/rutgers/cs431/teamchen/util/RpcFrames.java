@@ -0,0 +1,110 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// The frames of the RPC transport. A connection starts with both sides sending a hello, int MAGIC and int VERSION,
+// so a client that reached something else on the rpc port finds out before calling. Every frame after that is its
+// length followed by that many bytes:
+//
+//   request:  int id, UTF path, UTF content type, body
+//   response: int id, int status code, UTF content type ("" for none), body
+//
+// The id pairs a response with its request, responses come back in whatever order the calls finish.
+class RpcFrames {
+    // nothing we send comes close, a longer frame means the stream is broken
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    // "PLRP"
+    static final int MAGIC = 0x504c5250;
+    static final int VERSION = 1;
+
+    static class Request {
+        final int id;
+        final String path;
+        final String contentType;
+        final byte[] body;
+
+        Request(int id, String path, String contentType, byte[] body) {
+            this.id = id;
+            this.path = path;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    // the caller flushes
+    static void writeHello(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    // throws if the other side isn't an rpc peer of this version
+    static void readHello(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("not an rpc peer");
+        }
+        if (version != VERSION) {
+            throw new IOException("rpc version " + version + ", this is " + VERSION);
+        }
+    }
+
+    // the caller synchronizes on out and flushes
+    static void writeRequest(DataOutputStream out, int id, String path, String contentType, byte[] body)
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(id);
+        h.writeUTF(path);
+        h.writeUTF(contentType);
+        out.writeInt(header.size() + body.length);
+        header.writeTo(out);
+        out.write(body);
+    }
+
+    static void writeResponse(DataOutputStream out, int id, Transport.Reply reply) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(32);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(id);
+        h.writeInt(reply.code);
+        h.writeUTF(reply.contentType == null ? "" : reply.contentType);
+        out.writeInt(header.size() + reply.body.length);
+        header.writeTo(out);
+        out.write(reply.body);
+    }
+
+    static Request readRequest(DataInputStream in) throws IOException {
+        DataInputStream frame = readFrame(in);
+        int id = frame.readInt();
+        String path = frame.readUTF();
+        String contentType = frame.readUTF();
+        return new Request(id, path, contentType, readRest(frame));
+    }
+
+    // the rest of a response frame after its id
+    static Transport.Reply readResponse(DataInputStream frame) throws IOException {
+        int code = frame.readInt();
+        String contentType = frame.readUTF();
+        return new Transport.Reply(code, contentType.isEmpty() ? null : contentType, readRest(frame));
+    }
+
+    static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_FRAME_SIZE) {
+            throw new IOException("malformed rpc frame of length " + len);
+        }
+        byte[] frame = new byte[len];
+        in.readFully(frame);
+        return new DataInputStream(new ByteArrayInputStream(frame));
+    }
+
+    private static byte[] readRest(DataInputStream frame) throws IOException {
+        byte[] rest = new byte[frame.available()];
+        frame.readFully(rest);
+        return rest;
+    }
+}
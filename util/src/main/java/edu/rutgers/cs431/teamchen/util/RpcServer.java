@@ -0,0 +1,103 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.Semaphore;
+
+// Serves a ServiceHost's handlers over long lived connections, see RpcFrames.
+//
+// Each connection has a reader thread that hands every request to the host's handler pool as soon as it is read,
+// so a client can pipeline as many calls as it likes. At most MAX_IN_FLIGHT of them run at once, past that the
+// reader stops reading and TCP pushes back on the client.
+class RpcServer implements Runnable {
+    static final int MAX_IN_FLIGHT = 256;
+
+    private final ServerSocket serverSocket;
+    private final ServiceHost host;
+
+    RpcServer(InetSocketAddress addr, ServiceHost host) throws IOException {
+        this.host = host;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(addr, SystemConfig.MAXIMUM_HTTP_CONNECTIONS);
+    }
+
+    // the rpc port of the service at @param httpPort, -1 if the offset takes it past the last port
+    static int portFor(int httpPort) {
+        int port = httpPort + SystemConfig.RPC_PORT_OFFSET;
+        return port <= 65535 ? port : -1;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread t = new Thread(() -> serve(socket), "rpc-conn-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("rpc service: can't accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Semaphore slots = new Semaphore(MAX_IN_FLIGHT);
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            InetSocketAddress local = (InetSocketAddress) socket.getLocalSocketAddress();
+            InetSocketAddress remote = (InetSocketAddress) socket.getRemoteSocketAddress();
+            RpcFrames.readHello(in);
+            RpcFrames.writeHello(out);
+            out.flush();
+            while (true) {
+                RpcFrames.Request req = RpcFrames.readRequest(in);
+                slots.acquire();
+                host.dispatch(req.path, req.contentType, req.body, local, remote, reply -> {
+                    try {
+                        synchronized (out) {
+                            RpcFrames.writeResponse(out, req.id, reply);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // the reader sees the broken connection too
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (EOFException | SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            System.err.println("rpc service: dropping connection: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Calls services over one long lived connection per service, see RpcFrames.
+//
+// Calls from any number of threads share the connection: each writes its request as soon as it can and waits
+// for the response with its id, so they pipeline. At most MAX_IN_FLIGHT calls wait on a connection, more callers
+// block until one finishes. A service whose rpc port can't be reached, doesn't answer the hello, or would be past the
+// last port, is called over HTTP instead, and such a port is tried again after RETRY_RPC_AFTER_MILLISECONDS.
+public class RpcTransport implements Transport {
+    private static final int MAX_IN_FLIGHT = RpcServer.MAX_IN_FLIGHT;
+    private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 1000;
+    private static final long CALL_TIMEOUT_IN_MILLISECONDS = 30_000;
+    private static final long RETRY_RPC_AFTER_MILLISECONDS = 10_000;
+
+    private final Transport fallback;
+    // the connection to each service, or its connect under way. Threads calling a service that is connecting
+    // wait for that connect, the other services' calls go on
+    private final ConcurrentHashMap<String, CompletableFuture<Channel>> channels = new ConcurrentHashMap<>();
+    // services to call over HTTP, until the given System.nanoTime()
+    private final Map<String, Long> httpOnly = new ConcurrentHashMap<>();
+
+    public RpcTransport(Transport fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Reply call(URL base, String path, String contentType, byte[] body) throws IOException {
+        Channel ch = channel(base);
+        if (ch == null) {
+            return fallback.call(base, path, contentType, body);
+        }
+        return ch.call(Transport.resolve(base, path), contentType, body);
+    }
+
+    // the open connection to the service, null if it is to be called over HTTP
+    private Channel channel(URL base) {
+        int port = RpcServer.portFor(base.getPort() == -1 ? base.getDefaultPort() : base.getPort());
+        if (port < 0) {
+            return null;
+        }
+        String key = base.getHost() + ":" + port;
+        Long until = httpOnly.get(key);
+        if (until != null) {
+            if (System.nanoTime() - until < 0) {
+                return null;
+            }
+            httpOnly.remove(key);
+        }
+        while (true) {
+            CompletableFuture<Channel> pending = channels.get(key);
+            if (pending == null) {
+                CompletableFuture<Channel> connect = new CompletableFuture<>();
+                pending = channels.putIfAbsent(key, connect);
+                if (pending == null) {
+                    connect(key, new InetSocketAddress(base.getHost(), port), connect);
+                    pending = connect;
+                }
+            }
+            Channel ch = pending.join();
+            if (ch == null) {
+                return null;
+            }
+            if (!ch.closed) {
+                return ch;
+            }
+            channels.remove(key, pending);
+        }
+    }
+
+    // opens a connection on the calling thread and completes @param connect with it, or with null if the service is
+    // to be called over HTTP for a while
+    private void connect(String key, InetSocketAddress addr, CompletableFuture<Channel> connect) {
+        try {
+            connect.complete(new Channel(key, addr));
+        } catch (IOException | RuntimeException e) {
+            httpOnly.put(key, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_RPC_AFTER_MILLISECONDS));
+            channels.remove(key, connect);
+            connect.complete(null);
+        }
+    }
+
+    private void remove(Channel ch) {
+        channels.computeIfPresent(ch.key, (k, pending) -> pending.getNow(null) == ch ? null : pending);
+    }
+
+    private class Channel implements Runnable {
+        final String key;
+        final Socket socket;
+        final DataOutputStream out;
+        final DataInputStream in;
+        final Map<Integer, CompletableFuture<Reply>> calls = new ConcurrentHashMap<>();
+        final AtomicInteger ids = new AtomicInteger();
+        final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        volatile boolean closed;
+
+        Channel(String key, InetSocketAddress addr) throws IOException {
+            this.key = key;
+            this.socket = new Socket();
+            try {
+                this.socket.connect(addr, CONNECT_TIMEOUT_IN_MILLISECONDS);
+                this.socket.setTcpNoDelay(true);
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                // whatever listens on the port has to be an rpc service
+                this.socket.setSoTimeout(CONNECT_TIMEOUT_IN_MILLISECONDS);
+                RpcFrames.writeHello(out);
+                out.flush();
+                RpcFrames.readHello(in);
+                this.socket.setSoTimeout(0);
+            } catch (IOException e) {
+                this.socket.close();
+                throw e;
+            }
+            Thread reader = new Thread(this, "rpc-client-" + key);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        Reply call(String path, String contentType, byte[] body) throws IOException {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting to call " + key + path);
+            }
+            int id = ids.incrementAndGet();
+            CompletableFuture<Reply> reply = new CompletableFuture<>();
+            calls.put(id, reply);
+            try {
+                synchronized (out) {
+                    RpcFrames.writeRequest(out, id, path, contentType, body);
+                    out.flush();
+                }
+                // the reader may have failed everything before this call was in the map
+                if (closed) {
+                    reply.completeExceptionally(new IOException("connection to " + key + " closed"));
+                }
+                return reply.get(CALL_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                close(e);
+                throw e;
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e
+                        .getCause());
+            } catch (TimeoutException e) {
+                throw new SocketTimeoutException("no answer from " + key + path);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted calling " + key + path);
+            } finally {
+                calls.remove(id);
+                inFlight.release();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    DataInputStream frame = RpcFrames.readFrame(in);
+                    CompletableFuture<Reply> reply = calls.get(frame.readInt());
+                    if (reply != null) {
+                        reply.complete(RpcFrames.readResponse(frame));
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        // fails the waiting calls, the next call opens a new connection
+        void close(IOException cause) {
+            closed = true;
+            remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+            for (CompletableFuture<Reply> reply : calls.values()) {
+                reply.completeExceptionally(new IOException("connection to " + key + " lost: " + cause.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// A component's services: each context is served over HTTP at the http port and over the RPC transport at
+// the http port + SystemConfig.RPC_PORT_OFFSET, by the same handler. Components in the same JVM can call it
+// through a LocalTransport too.
+//
+// However a call comes in, its handler runs on the service's executor, set up by the process' ExecutionProfile,
+// so a slow handler only holds up its own call. How busy the executor is gets served at
+// SystemConfig.SERVICE_EXECUTOR_STATS_PATH.
+public class ServiceHost {
+    private final HttpServer http;
+    private final Map<String, HttpHandler> contexts = new ConcurrentHashMap<>();
+    private final InstrumentedExecutor handlers;
+    private RpcServer rpc;
+
+    public ServiceHost(String hostname, int httpPort) throws IOException {
+        this(hostname, httpPort, ExecutionProfile.current());
+    }
+
+    public ServiceHost(String hostname, int httpPort, ExecutionProfile profile) throws IOException {
+        this.http = HttpServer.create();
+        this.http.bind(new InetSocketAddress(hostname, httpPort), SystemConfig.MAXIMUM_HTTP_CONNECTIONS);
+        this.handlers = new InstrumentedExecutor(profile, "service-handler");
+        this.http.setExecutor(handlers);
+        createContext(SystemConfig.SERVICE_EXECUTOR_STATS_PATH, new ExecutorStatsHttpHandler(handlers));
+        createContext(SystemConfig.SERVICE_METRICS_PATH, new MetricsHttpHandler(MetricsRegistry.get()));
+        createContext(SystemConfig.SERVICE_TRACES_PATH, new TracesHttpHandler(TraceBuffer.get()));
+        registerMetrics(MetricsRegistry.get(), Integer.toString(httpPort));
+    }
+
+    private void registerMetrics(MetricsRegistry metrics, String port) {
+        metrics.gauge("service_handlers_active", "Handlers running now", () -> handlers.stats().active,
+                "port", port);
+        metrics.gauge("service_handlers_waiting", "Calls waiting for a handler", () -> handlers.stats().waiting,
+                "port", port);
+        metrics.counter("service_calls_total", "Calls handled", () -> handlers.stats().completed, "port", port);
+        metrics.counter("service_call_wait_ms_total", "Time calls waited for a handler", () -> handlers.stats()
+                .totalWaitMillis, "port", port);
+        metrics.counter("service_call_run_ms_total", "Time handlers ran", () -> handlers.stats().totalRunMillis,
+                "port", port);
+    }
+
+    public void createContext(String path, HttpHandler handler) {
+        http.createContext(path, handler);
+        contexts.put(path, handler);
+    }
+
+    // starts serving, HTTP only if the rpc port is taken or past the last port
+    public void start() {
+        http.start();
+        LocalTransport.register(this);
+        InetSocketAddress addr = http.getAddress();
+        int rpcPort = RpcServer.portFor(addr.getPort());
+        if (rpcPort < 0) {
+            System.err.println("no rpc port for http port " + addr.getPort() + ", serving http only");
+            return;
+        }
+        try {
+            rpc = new RpcServer(new InetSocketAddress(addr.getAddress(), rpcPort), this);
+        } catch (IOException e) {
+            System.err.println("no rpc service on port " + rpcPort + ", serving http only: " + e.getMessage());
+            return;
+        }
+        Thread t = new Thread(rpc, "rpc-acceptor");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stop() {
+        LocalTransport.unregister(this);
+        http.stop(0);
+        if (rpc != null) {
+            try {
+                rpc.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        handlers.shutdown();
+    }
+
+    public InstrumentedExecutor getExecutor() {
+        return handlers;
+    }
+
+    public InetSocketAddress getAddress() {
+        return http.getAddress();
+    }
+
+    // the rpc port, -1 if there is no rpc service
+    public int getRpcPort() {
+        return rpc == null ? -1 : rpc.getPort();
+    }
+
+    // runs the handler of the path's context on the handler pool, the answer goes to onReply
+    void dispatch(String path, String contentType, byte[] body, InetSocketAddress local, InetSocketAddress remote,
+                  Consumer<Transport.Reply> onReply) {
+        HttpHandler handler = lookup(path);
+        if (handler == null) {
+            onReply.accept(new Transport.Reply(HttpURLConnection.HTTP_NOT_FOUND, null, new byte[0]));
+            return;
+        }
+        RpcExchange ex = new RpcExchange(path, contentType, body, local, remote, onReply);
+        handlers.execute(() -> {
+            try {
+                handler.handle(ex);
+            } catch (Exception e) {
+                System.err.println("handler of " + path + " failed: " + e);
+            } finally {
+                // a handler that never closed the exchange still answers
+                ex.reply();
+            }
+        });
+    }
+
+    // the context with the longest path that prefixes the path, like HttpServer picks them
+    private HttpHandler lookup(String path) {
+        String best = null;
+        for (String ctx : contexts.keySet()) {
+            if (path.startsWith(ctx) && (best == null || ctx.length() > best.length())) {
+                best = ctx;
+            }
+        }
+        return best == null ? null : contexts.get(best);
+    }
+}
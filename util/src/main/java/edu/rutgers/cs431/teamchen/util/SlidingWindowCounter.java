@@ -0,0 +1,56 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts events over the last few seconds, for rates like cars per second.
+//
+// Each of the window's seconds has a slot that the first event of a new second takes over. The rate is over the
+// whole seconds of the window, the current one is still filling up. An event racing its slot's takeover may
+// go uncounted, which a rate can live with.
+public class SlidingWindowCounter {
+    private final int seconds;
+    private final AtomicLongArray counts;
+    // the second each slot counts for
+    private final AtomicLongArray slotSeconds;
+    private final long startSecond = now();
+
+    public SlidingWindowCounter(int seconds) {
+        this.seconds = seconds;
+        // one more slot for the second being counted
+        this.counts = new AtomicLongArray(seconds + 1);
+        this.slotSeconds = new AtomicLongArray(seconds + 1);
+        for (int i = 0; i < slotSeconds.length(); i++) {
+            slotSeconds.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public void record() {
+        long sec = now();
+        int i = (int) Math.floorMod(sec, (long) counts.length());
+        long owner = slotSeconds.get(i);
+        if (owner != sec && slotSeconds.compareAndSet(i, owner, sec)) {
+            // the slot last counted a second that left the window
+            counts.set(i, 0L);
+        }
+        counts.incrementAndGet(i);
+    }
+
+    // events per second over the window, or over the seconds since the counter started if that is shorter
+    public double rate() {
+        long sec = now();
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long s = slotSeconds.get(i);
+            if (s < sec && s >= sec - seconds) {
+                total += counts.get(i);
+            }
+        }
+        long span = Math.min(seconds, sec - startSecond);
+        return span <= 0 ? 0.0 : (double) total / span;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
@@ -4,36 +4,94 @@ import edu.rutgers.cs431.TrafficGeneratorProto.TimeRequest;
 import edu.rutgers.cs431.TrafficGeneratorProto.TimeResponse;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
-// A clock that synchronizes with the traffic generator's chronos service
+// A clock that synchronizes with the traffic generator's chronos service.
+//
+// The time is worked out from System.nanoTime and an offset and rate estimated from round trips to the
+// chronos service (see ClockEstimator), so nothing ticks in the background. Syncs start fast and back off
+// while the estimate keeps agreeing with the service. The service may run its clock faster than real time
+// (see the traffic generator's time scale), the estimated rate takes care of that.
+//
+// With time beacons the clock mostly follows the traffic generator's multicast TimeBeacons instead, and only
+// makes a round trip every BEACON_ROUND_TRIP_INTERVAL_IN_MILLISECONDS to learn how late the beacons arrive.
+//
+// Work that has to happen at a given synchronized time is scheduled with schedule() or awaitUntil()
+// rather than spinning on getTime(). One timer thread per process parks until the earliest deadline.
 public class SyncClock {
 
     private static final Logger logger = Logger.getLogger("Gate.SyncClock");
-    private static final long CLOCK_SYNC_INTERVAL_IN_MILLISECONDS = 100;
-    private static final long CLOCK_UPDATE_INTERVAL_IN_MILLISECONDS = 5;
+    private static final long MIN_SYNC_INTERVAL_IN_MILLISECONDS = 100;
+    private static final long MAX_SYNC_INTERVAL_IN_MILLISECONDS = 5000;
+    // quick round trips on start so the first estimate has a short one to anchor at
+    private static final int INITIAL_BURST = 4;
+    // an estimate off by less than this, or half the round trip, counts as agreeing with the service
+    private static final long SYNC_TOLERANCE_IN_MILLISECONDS = 2;
+    // the timer thread never parks longer than this, so it also catches drift between two syncs
+    private static final long MAX_TIMER_PARK_IN_NANOS = 50_000_000L;
+    private static final long BEACON_ROUND_TRIP_INTERVAL_IN_MILLISECONDS = 10_000;
+    // the beacon delay is half the shortest of this many recent round trips
+    private static final int ROUND_TRIP_WINDOW = 8;
+    // a beacon this far behind the last one means the sender restarted rather than a reordering
+    private static final long BEACON_REORDER_WINDOW = 64;
 
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
-    private final ScheduledFuture syncClockThread;
-    private final ScheduledFuture updateClockThread;
-    private volatile long currentTime = 0L;
+    private static final Timer timer = new Timer();
+    private static final MetricsRegistry.Histogram syncErrorMetric = MetricsRegistry.get().histogram(
+            "clock_sync_error_ms", "How far off the estimate was at each reading of the time service");
+    private static final MetricsRegistry.Histogram roundTripMetric = MetricsRegistry.get().histogram(
+            "clock_sync_round_trip_us", "Round trips to the time service");
+    private static final MetricsRegistry.Counter syncFailedMetric = MetricsRegistry.get().counter(
+            "clock_sync_failures_total", "Round trips to the time service that failed");
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final ClockEstimator estimator = new ClockEstimator();
+    // the first reading has no estimate to be off from
+    private final AtomicBoolean firstSample = new AtomicBoolean(true);
+    // the last time handed out, so corrections never make the clock run backwards
+    private final AtomicLong lastTime = new AtomicLong(Long.MIN_VALUE);
+    private long syncInterval = MIN_SYNC_INTERVAL_IN_MILLISECONDS;
     private Socket chronosConn;
+    private final MulticastSocket beaconSocket;
+    private final ArrayDeque<Long> roundTrips = new ArrayDeque<>();
+    // half the shortest recent round trip, 0 until the first one
+    private volatile long beaconDelayNanos = 0L;
 
     // creates a clock with a given time service socket
     public SyncClock(Socket chronosConn) {
+        this(chronosConn, null);
+    }
+
+    // creates a clock that follows the time beacons on the socket, and makes occasional round trips on
+    // the time service socket
+    public SyncClock(Socket chronosConn, MulticastSocket beaconSocket) {
         this.chronosConn = chronosConn;
-        this.currentTime = System.currentTimeMillis();
-        this.syncClockThread = executor.scheduleWithFixedDelay(
-                () -> this.syncTime(),
-                0, CLOCK_SYNC_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-        this.updateClockThread = executor.scheduleAtFixedRate(
-                () -> updateTime(CLOCK_UPDATE_INTERVAL_IN_MILLISECONDS),
-                0, CLOCK_UPDATE_INTERVAL_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+        this.beaconSocket = beaconSocket;
+        if (beaconSocket != null) {
+            Thread t = new Thread(this::receiveBeacons, "SyncClock-beacons");
+            t.setDaemon(true);
+            t.start();
+        }
+        this.executor.execute(() -> {
+            for (int i = 0; i < INITIAL_BURST; i++) {
+                syncTime();
+            }
+            this.executor.schedule(this::syncAndReschedule, this.syncInterval, TimeUnit.MILLISECONDS);
+        });
     }
 
     // creates a clock with the given address and port number of the time service
@@ -41,25 +99,277 @@ public class SyncClock {
         this(new Socket(addr, port));
     }
 
-    // update the time by adding some seconds
-    private void updateTime(long deltaInMils) {
-        this.currentTime += deltaInMils;
+    // creates a clock with the given time service that follows its beacons if timeBeacons is set
+    public SyncClock(String addr, int port, boolean timeBeacons) throws IOException {
+        this(new Socket(addr, port), timeBeacons ? joinBeaconGroup() : null);
+    }
+
+    private static MulticastSocket joinBeaconGroup() throws IOException {
+        MulticastSocket socket = new MulticastSocket(SystemConfig.TRAFFIC_GENERATOR_TIME_BEACON_PORT);
+        // on the default interface for multicast, like the traffic generator sends on
+        socket.joinGroup(new InetSocketAddress(InetAddress.getByName(SystemConfig.TRAFFIC_GENERATOR_TIME_BEACON_GROUP),
+                SystemConfig.TRAFFIC_GENERATOR_TIME_BEACON_PORT), null);
+        return socket;
+    }
+
+    private void syncAndReschedule() {
+        long error = syncTime();
+        if (this.beaconSocket != null) {
+            this.executor.schedule(this::syncAndReschedule, BEACON_ROUND_TRIP_INTERVAL_IN_MILLISECONDS,
+                    TimeUnit.MILLISECONDS);
+            return;
+        }
+        // half the round trip, in the service's time which may run faster than ours
+        long tolerance = Math.max(SYNC_TOLERANCE_IN_MILLISECONDS,
+                (long) (estimator.anchorRttNanos() / 2 * estimator.rate()));
+        if (Math.abs(error) <= tolerance) {
+            this.syncInterval = Math.min(this.syncInterval * 2, MAX_SYNC_INTERVAL_IN_MILLISECONDS);
+        } else {
+            this.syncInterval = MIN_SYNC_INTERVAL_IN_MILLISECONDS;
+        }
+        this.executor.schedule(this::syncAndReschedule, this.syncInterval, TimeUnit.MILLISECONDS);
     }
 
-    // synchronize with the chrono-service
-    private void syncTime() {
+    // synchronize with the chrono-service, returns how far off the estimate was in milliseconds
+    private long syncTime() {
         try {
             TimeRequest tr = TimeRequest.getDefaultInstance();
+            long sent = System.nanoTime();
             tr.writeDelimitedTo(this.chronosConn.getOutputStream());
             TimeResponse ts = TimeResponse.parseDelimitedFrom(this.chronosConn.getInputStream());
-            this.currentTime = ts.getCurrentTimestamp();
+            long received = System.nanoTime();
+            if (ts == null) {
+                this.logger.warning("Unable to synchronize the local clock: the time service closed the connection");
+                syncFailedMetric.inc();
+                return Long.MAX_VALUE;
+            }
+            roundTripMetric.record(TimeUnit.NANOSECONDS.toMicros(received - sent));
+            updateBeaconDelay(received - sent);
+            return sample(sent, ts.getCurrentTimestamp(), received);
         } catch (IOException e) {
-            this.logger.warning("Unable to synchronize the lock clock: " + e.getMessage());
+            this.logger.warning("Unable to synchronize the local clock: " + e.getMessage());
+            syncFailedMetric.inc();
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void updateBeaconDelay(long rtt) {
+        roundTrips.addLast(rtt);
+        if (roundTrips.size() > ROUND_TRIP_WINDOW) {
+            roundTrips.removeFirst();
+        }
+        long min = Long.MAX_VALUE;
+        for (long r : roundTrips) {
+            min = Math.min(min, r);
+        }
+        this.beaconDelayNanos = min / 2;
+    }
+
+    // follows the beacons until the socket is closed
+    private void receiveBeacons() {
+        byte[] buf = new byte[TimeBeacon.SIZE];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        long lastSeq = -1L;
+        while (!beaconSocket.isClosed()) {
+            try {
+                packet.setLength(buf.length);
+                beaconSocket.receive(packet);
+            } catch (IOException e) {
+                this.logger.warning("Unable to receive time beacons: " + e.getMessage());
+                return;
+            }
+            long received = System.nanoTime();
+            TimeBeacon beacon = TimeBeacon.decode(packet.getData(), packet.getOffset(), packet.getLength());
+            if (beacon == null) {
+                continue;
+            }
+            // drop duplicates and stragglers
+            if (beacon.seq <= lastSeq && lastSeq - beacon.seq < BEACON_REORDER_WINDOW) {
+                continue;
+            }
+            lastSeq = beacon.seq;
+            long delay = this.beaconDelayNanos;
+            if (delay == 0L) {
+                // no round trip yet to tell how late beacons are
+                continue;
+            }
+            // the beacon was stamped about one delay ago, as good as the shortest round trip
+            sample(received - 2 * delay, beacon.timestamp, received);
+        }
+    }
+
+    // feeds a reading of the service's clock taken between the two local System.nanoTime values
+    long sample(long sentNanos, long serviceTime, long receivedNanos) {
+        long error = estimator.addSample(sentNanos, serviceTime, receivedNanos);
+        if (!firstSample.compareAndSet(true, false)) {
+            syncErrorMetric.record(Math.abs(error));
+            if (FlightEvents.ENABLED) {
+                FlightEvents.ClockResynced event = new FlightEvents.ClockResynced();
+                if (event.shouldCommit()) {
+                    event.error = error;
+                    event.roundTrip = TimeUnit.NANOSECONDS.toMicros(receivedNanos - sentNanos);
+                    event.rate = estimator.rate();
+                    event.commit();
+                }
+            }
+        }
+        // the deadlines may have moved with the estimate
+        timer.wake();
+        return error;
+    }
+
+    // local nanoseconds until the clock reads the given time, negative if it already did
+    private long nanosUntil(long time) {
+        long left = time - getTime();
+        if (left <= 0) {
+            return left;
+        }
+        return Math.max(1L, (long) Math.ceil(left / estimator.rate()));
+    }
+
+    // runs the task on the timer thread once the clock reads the given time.
+    // The task must be short, anything slow should be handed off to another thread.
+    public Scheduled schedule(long time, Runnable task) {
+        Scheduled s = new Scheduled(this, time, task);
+        timer.add(s);
+        return s;
+    }
+
+    // blocks until the clock reads the given time
+    public void awaitUntil(long time) throws InterruptedException {
+        if (getTime() >= time) {
+            return;
+        }
+        CountDownLatch reached = new CountDownLatch(1);
+        Scheduled s = schedule(time, reached::countDown);
+        try {
+            reached.await();
+        } finally {
+            s.cancel();
+        }
+    }
+
+    // a task waiting on the timer thread
+    public static class Scheduled implements Comparable<Scheduled> {
+        private static final AtomicLong sequence = new AtomicLong();
+
+        private final SyncClock clock;
+        private final long time;
+        private final Runnable task;
+        private final long seq = sequence.getAndIncrement();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        private Scheduled(SyncClock clock, long time, Runnable task) {
+            this.clock = clock;
+            this.time = time;
+            this.task = task;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        // stops the task from running, returns false if it already ran or was cancelled
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+
+        // every clock in a process follows the same traffic generator, so their times compare
+        @Override
+        public int compareTo(Scheduled o) {
+            if (time != o.time) {
+                return Long.compare(time, o.time);
+            }
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    // the timer thread shared by every clock in the process, started on the first schedule
+    private static class Timer implements Runnable {
+        private final PriorityQueue<Scheduled> queue = new PriorityQueue<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private Thread thread;
+
+        void add(Scheduled s) {
+            lock.lock();
+            try {
+                if (thread == null) {
+                    thread = new Thread(this, "SyncClock-timer");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                queue.add(s);
+                if (queue.peek() == s) {
+                    changed.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void wake() {
+            lock.lock();
+            try {
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // takes the next task that is due, parking until there is one
+        private Scheduled next() throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    Scheduled head = queue.peek();
+                    if (head == null) {
+                        changed.await();
+                        continue;
+                    }
+                    if (head.isDone()) {
+                        queue.poll();
+                        continue;
+                    }
+                    long wait = head.clock.nanosUntil(head.time);
+                    if (wait <= 0) {
+                        return queue.poll();
+                    }
+                    changed.awaitNanos(Math.min(wait, MAX_TIMER_PARK_IN_NANOS));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Scheduled s;
+                try {
+                    s = next();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!s.done.compareAndSet(false, true)) {
+                    continue;
+                }
+                try {
+                    s.task.run();
+                } catch (RuntimeException e) {
+                    logger.warning("a scheduled task failed: " + e.getMessage());
+                }
+            }
         }
     }
 
     // returns the current time synchronized with the traffic generator
     public long getTime() {
-        return this.currentTime;
+        long now = estimator.timeAt(System.nanoTime());
+        return lastTime.accumulateAndGet(now, Math::max);
     }
 }
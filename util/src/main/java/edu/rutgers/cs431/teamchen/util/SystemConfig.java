@@ -3,16 +3,40 @@ package edu.rutgers.cs431.teamchen.util;
 // all system level configuration variables
 public class SystemConfig {
     public static final int MONITOR_ROSTER_PROTOBUF_SERVICE_PORT = 6666;
+    public static final int TRAFFIC_GENERATOR_CHRONOS_SERVICE_PORT = 6667;
+    // where the traffic generator multicasts its time beacons, see TimeBeacon
+    public static final String TRAFFIC_GENERATOR_TIME_BEACON_GROUP = "239.255.43.1";
+    public static final int TRAFFIC_GENERATOR_TIME_BEACON_PORT = 6668;
+    public static final long TIME_BEACON_INTERVAL_IN_MILLISECONDS = 100;
 
     // HTTP Path config
     public static final String MONITOR_PARKING_SPACE_REGISTER_PATH = "/parking_register";
     public static final String MONITOR_GATE_REGISTER_PATH = "/gate_register";
+    public static final String MONITOR_GATE_HEARTBEAT_PATH = "/gate_heartbeat";
+    public static final String MONITOR_ROSTER_LOAD_PATH = "/roster_load";
     public static final String GATE_PEER_ADDRESS_CHANGE_PATH = "/gates_update";
     public static final String GATE_GET_STATS_PATH = "/stats";
     public static final String GATE_CAR_LEAVING_PATH = "/car_leaving";
     public static final String GATE_SHARE_TOKEN_PATH = "/share_token";
+    public static final String GATE_TOKEN_GRANT_PATH = "/token_grant";
+    public static final String GATE_TOKEN_RELEASE_PATH = "/token_release";
+    public static final String GATE_TOKEN_TRANSFER_PATH = "/token_transfer";
+    public static final String GATE_CAR_REDIRECT_PATH = "/car_redirect";
     public static final String PARKING_SPACE_CAR_ENTERING_PATH = "/car_entering";
     public static final String PARKING_SPACE_PEER_ADDRESS_CHANGE_PATH = "/gates_update";
+    // the gates of a GateHost are served under this followed by their index
+    public static final String GATE_HOST_PATH_PREFIX = "/gate/";
+    // every service says how busy its handlers are here, see ServiceHost
+    public static final String SERVICE_EXECUTOR_STATS_PATH = "/executor_stats";
+    // and serves the metrics of its process in the Prometheus text format, see MetricsRegistry
+    public static final String SERVICE_METRICS_PATH = "/metrics";
+    // and where the cars of its process spent their time, see TraceBuffer
+    public static final String SERVICE_TRACES_PATH = "/traces";
 
     public static final int MAXIMUM_HTTP_CONNECTIONS = 200;
+    // a component serves its http paths over the RPC transport too, on its http port + this, see ServiceHost
+    public static final int RPC_PORT_OFFSET = 10000;
+
+    // how often a gate tells the monitor it is alive
+    public static final long GATE_HEARTBEAT_INTERVAL_IN_MILLISECONDS = 500;
 }
@@ -0,0 +1,34 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.nio.ByteBuffer;
+
+// A time beacon the traffic generator multicasts so clocks can follow it without polling.
+// On the wire it is a fixed 20 bytes, big endian: magic (int), sequence number (long), timestamp (long).
+public class TimeBeacon {
+    public static final int SIZE = 20;
+    private static final int MAGIC = 0x504c5442; // "PLTB"
+
+    public final long seq;
+    public final long timestamp;
+
+    public TimeBeacon(long seq, long timestamp) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+    }
+
+    public byte[] encode() {
+        return ByteBuffer.allocate(SIZE).putInt(MAGIC).putLong(seq).putLong(timestamp).array();
+    }
+
+    // returns null if the datagram isn't a beacon
+    public static TimeBeacon decode(byte[] buf, int offset, int length) {
+        if (length != SIZE) {
+            return null;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buf, offset, length);
+        if (bb.getInt() != MAGIC) {
+            return null;
+        }
+        return new TimeBeacon(bb.getLong(), bb.getLong());
+    }
+}
@@ -0,0 +1,157 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import edu.rutgers.cs431.teamchen.proto.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The stages the cars of this process went through, the last -Dparkinglot.trace.buffer of them (65536 by default).
+//
+// A car's trace starts when it queues at a gate: the gate draws its trace id and the car carries it and the times
+// it reached each stage in its CarWithToken. Each component records the stages that end with it:
+//   arrive    the traffic generator sending the car -> the gate queueing it
+//   queue     queued -> at the head of the queue
+//   token     at the head of the queue -> holding a token
+//   transfer  holding a token -> the parking space taking it, the transfer duration and the call
+//   park      in the parking space -> leaving it
+//   return    leaving the parking space -> a gate taking the token back on /car_leaving
+// The times are the components' simulated clocks, so the stages between two components are off by the clocks'
+// sync error.
+public class TraceBuffer {
+    public static final String ARRIVE = "arrive";
+    public static final String QUEUE = "queue";
+    public static final String TOKEN = "token";
+    public static final String TRANSFER = "transfer";
+    public static final String PARK = "park";
+    public static final String RETURN = "return";
+    private static final List<String> STAGES = Arrays.asList(ARRIVE, QUEUE, TOKEN, TRANSFER, PARK, RETURN);
+
+    private static final int DEFAULT_CAPACITY = 65536;
+    private static final TraceBuffer instance = new TraceBuffer(Math.max(1, Integer.getInteger("parkinglot.trace" +
+            ".buffer", DEFAULT_CAPACITY)));
+
+    private final AtomicReferenceArray<Span> ring;
+    private final AtomicLong next = new AtomicLong(0L);
+
+    public TraceBuffer(int capacity) {
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    // the buffer of this process
+    public static TraceBuffer get() {
+        return instance;
+    }
+
+    // a new trace id, never 0
+    public static long newTraceId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0L);
+        return id;
+    }
+
+    public static class Span {
+        public final long traceId;
+        public final String stage;
+        public final String component;
+        public final long start;
+        public final long end;
+
+        Span(long traceId, String stage, String component, long start, long end) {
+            this.traceId = traceId;
+            this.stage = stage;
+            this.component = component;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // how long one component's cars spent in one stage, in simulated milliseconds
+    public static class StageSummary {
+        public String component;
+        public String stage;
+        public long count;
+        public double mean;
+        public long p50;
+        public long p99;
+        public long max;
+        // the trace that took longest, to look up with ?trace=
+        public String slowestTrace;
+    }
+
+    // records a stage the car went through, untraced cars and stages without a start are left out
+    public void record(long traceId, String stage, String component, long start, long end) {
+        if (traceId == 0L || start <= 0L) {
+            return;
+        }
+        long i = next.getAndIncrement();
+        ring.set((int) (i % ring.length()), new Span(traceId, stage, component, start, end));
+    }
+
+    // the spans of one trace, in the order they were recorded
+    public List<Span> trace(long traceId) {
+        ArrayList<Span> spans = new ArrayList<>();
+        for (Span s : spans()) {
+            if (s.traceId == traceId) {
+                spans.add(s);
+            }
+        }
+        return spans;
+    }
+
+    // the stages of every component, in the order the cars go through them
+    public List<StageSummary> breakdown() {
+        Map<String, ConcurrentHistogram> histograms = new LinkedHashMap<>();
+        Map<String, Span> slowest = new LinkedHashMap<>();
+        List<Span> spans = spans();
+        spans.sort((a, b) -> {
+            int c = Integer.compare(STAGES.indexOf(a.stage), STAGES.indexOf(b.stage));
+            return c != 0 ? c : a.component.compareTo(b.component);
+        });
+        for (Span s : spans) {
+            String key = s.component + " " + s.stage;
+            histograms.computeIfAbsent(key, k -> new ConcurrentHistogram()).record(s.end - s.start);
+            Span worst = slowest.get(key);
+            if (worst == null || s.end - s.start > worst.end - worst.start) {
+                slowest.put(key, s);
+            }
+        }
+        ArrayList<StageSummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentHistogram> e : histograms.entrySet()) {
+            Span worst = slowest.get(e.getKey());
+            LatencyHistogram h = e.getValue().snapshot();
+            StageSummary sum = new StageSummary();
+            sum.component = worst.component;
+            sum.stage = worst.stage;
+            sum.count = h.count();
+            sum.mean = h.mean();
+            sum.p50 = h.percentile(0.5);
+            sum.p99 = h.percentile(0.99);
+            sum.max = h.max;
+            sum.slowestTrace = Long.toHexString(worst.traceId);
+            summaries.add(sum);
+        }
+        return summaries;
+    }
+
+    // the spans still in the buffer, oldest first
+    private List<Span> spans() {
+        long end = next.get();
+        long start = Math.max(0L, end - ring.length());
+        ArrayList<Span> spans = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Span s = ring.get((int) (i % ring.length()));
+            if (s != null) {
+                spans.add(s);
+            }
+        }
+        return spans;
+    }
+}
@@ -0,0 +1,66 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// Serves the per-stage breakdown of the process' traces, or with ?trace=<id> the stages of one car, see TraceBuffer
+public class TracesHttpHandler implements HttpHandler {
+    private final TraceBuffer traces;
+
+    public TracesHttpHandler(TraceBuffer traces) {
+        this.traces = traces;
+    }
+
+    // a span with its trace id in hex, JSON numbers can't hold all of a long
+    private static class SpanView {
+        String trace;
+        String stage;
+        String component;
+        long start;
+        long end;
+        long took;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        String query = ex.getRequestURI().getQuery();
+        Object resp;
+        if (query != null && query.startsWith("trace=")) {
+            long id;
+            try {
+                id = Long.parseUnsignedLong(query.substring("trace=".length()), 16);
+            } catch (NumberFormatException e) {
+                ex.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, -1);
+                ex.close();
+                return;
+            }
+            ArrayList<SpanView> spans = new ArrayList<>();
+            for (TraceBuffer.Span s : traces.trace(id)) {
+                SpanView v = new SpanView();
+                v.trace = Long.toHexString(s.traceId);
+                v.stage = s.stage;
+                v.component = s.component;
+                v.start = s.start;
+                v.end = s.end;
+                v.took = s.end - s.start;
+                spans.add(v);
+            }
+            resp = spans;
+        } else {
+            resp = traces.breakdown();
+        }
+
+        byte[] body = Wire.GSON.toJson(resp).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", Wire.JSON);
+        ex.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+        OutputStream out = ex.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -0,0 +1,37 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import java.io.IOException;
+import java.net.URL;
+
+// How a component calls another one's service. The service is named by its http address and a path, whatever
+// actually carries the call, see Transports
+//
+// The path is relative to the base's own path, so a service mounted under a prefix, like one of the gates of a
+// GateHost at http://host:port/gate/2, is called with the same paths as one that has the whole server.
+public interface Transport {
+
+    // sends the body to the path of the service at base and waits for the answer
+    Reply call(URL base, String path, String contentType, byte[] body) throws IOException;
+
+    // the path on the server that serves base
+    static String resolve(URL base, String path) {
+        String prefix = base.getPath();
+        if (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        return prefix + path;
+    }
+
+    class Reply {
+        public final int code;
+        // null if the service said nothing about the body
+        public final String contentType;
+        public final byte[] body;
+
+        public Reply(int code, String contentType, byte[] body) {
+            this.code = code;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package edu.rutgers.cs431.teamchen.util;
+
+// The transport this process calls other components with.
+//
+// By default that is the RPC transport, falling back to plain HTTP for services that don't serve RPC.
+// -Dparkinglot.transport=http makes every call plain HTTP, a process running several components can set a
+// LocalTransport.
+public class Transports {
+    private static volatile Transport current = fromSystemProperty();
+
+    public static Transport get() {
+        return current;
+    }
+
+    public static void set(Transport transport) {
+        current = transport;
+    }
+
+    private static Transport fromSystemProperty() {
+        HttpTransport http = new HttpTransport();
+        if ("http".equalsIgnoreCase(System.getProperty("parkinglot.transport"))) {
+            return http;
+        }
+        return new RpcTransport(http);
+    }
+}
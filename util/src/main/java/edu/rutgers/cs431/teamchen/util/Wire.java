@@ -0,0 +1,100 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import com.google.gson.Gson;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.sun.net.httpserver.HttpExchange;
+import edu.rutgers.cs431.teamchen.proto.ProtoCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+// Reads and writes the bodies of the calls between components, see Transport.
+//
+// Messages with a codec go as protobuf unless the run was started with -Dparkinglot.wire=json, which is handy
+// for watching the traffic. A server answers in whatever the request asked for, so both kinds of components
+// can talk to each other: a request body is read by its Content-Type and a response is written by the Accept
+// header. Anything without a Content-Type is JSON.
+public class Wire {
+    public static final String PROTOBUF = "application/x-protobuf";
+    public static final String JSON = "application/json";
+
+    // Gson is thread safe, no need for one per call
+    public static final Gson GSON = new Gson();
+
+    private static final boolean SENDS_JSON = "json".equalsIgnoreCase(System.getProperty("parkinglot.wire"));
+
+    // the content type this component sends and asks for
+    public static String preferred() {
+        return SENDS_JSON ? JSON : PROTOBUF;
+    }
+
+    // sends the message to the path of the service at base in the preferred format, over the process' transport
+    public static <T> Transport.Reply call(URL base, String path, T msg, ProtoCodec<T> codec) throws IOException {
+        String type = preferred();
+        return Transports.get().call(base, path, type, encode(msg, codec, type));
+    }
+
+    // sends a message without a codec as JSON
+    public static Transport.Reply call(URL base, String path, Object msg) throws IOException {
+        return Transports.get().call(base, path, JSON, GSON.toJson(msg).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // the message in a successful reply
+    public static <T> T decode(Transport.Reply reply, Class<T> cls, ProtoCodec<T> codec) throws IOException {
+        return decode(new ByteArrayInputStream(reply.body), cls, codec, reply.contentType);
+    }
+
+    // the JSON message in a successful reply
+    public static <T> T decode(Transport.Reply reply, Class<T> cls) {
+        return GSON.fromJson(new String(reply.body, StandardCharsets.UTF_8), cls);
+    }
+
+    public static <T> T readRequest(HttpExchange ex, Class<T> cls, ProtoCodec<T> codec) throws IOException {
+        InputStream in = ex.getRequestBody();
+        try {
+            return decode(in, cls, codec, ex.getRequestHeaders().getFirst("Content-Type"));
+        } finally {
+            in.close();
+        }
+    }
+
+    // sends the message as the response body in the format the request accepts, and closes the exchange
+    public static <T> void sendResponse(HttpExchange ex, int code, T msg, ProtoCodec<T> codec) throws IOException {
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        String type = accept != null && accept.contains(PROTOBUF) ? PROTOBUF : JSON;
+        byte[] body = encode(msg, codec, type);
+        ex.getResponseHeaders().set("Content-Type", type);
+        ex.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream out = ex.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        ex.close();
+    }
+
+    private static <T> byte[] encode(T msg, ProtoCodec<T> codec, String type) throws IOException {
+        if (type.equals(JSON)) {
+            return GSON.toJson(msg).getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        codec.write(msg, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(InputStream in, Class<T> cls, ProtoCodec<T> codec, String type) throws IOException {
+        if (type != null && type.startsWith(PROTOBUF)) {
+            return codec.read(CodedInputStream.newInstance(in));
+        }
+        return GSON.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), cls);
+    }
+}
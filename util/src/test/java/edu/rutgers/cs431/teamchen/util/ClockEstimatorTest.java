@@ -0,0 +1,33 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ClockEstimatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void testAnchorsAtShortestRoundTrip() {
+        ClockEstimator est = new ClockEstimator();
+        // remote = local / 1ms + 5000, read half way through the round trip
+        est.addSample(0, 5000 + 40, 80 * MS);        // slow round trip, read late
+        est.addSample(100 * MS, 5000 + 101, 102 * MS); // fast round trip
+
+        Assert.assertEquals(2 * MS, est.anchorRttNanos());
+        Assert.assertEquals(5000 + 200, est.timeAt(200 * MS));
+    }
+
+    @Test
+    public void testLearnsRate() {
+        ClockEstimator est = new ClockEstimator();
+        // the remote clock runs twice as fast as the local one
+        for (long t = 0; t <= 2000; t += 100) {
+            est.addSample(t * MS, 2 * (t + 1), t * MS + 2 * MS);
+        }
+
+        Assert.assertEquals(2.0 / MS, est.rate(), 1e-9);
+        Assert.assertEquals(2 * 3000, est.timeAt(3000 * MS), 1);
+    }
+}
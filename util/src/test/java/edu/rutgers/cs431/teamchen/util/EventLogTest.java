@@ -0,0 +1,79 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import edu.rutgers.cs431.TrafficGeneratorProto;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+
+
+public class EventLogTest {
+
+    @Test
+    public void testLinesInOrderAndLevels() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EventLog log = new EventLog(EventLog.Level.INFO, 1 << 16, new PrintStream(bytes, false, "UTF-8"));
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    log.log(EventLog.Level.INFO, "t" + id + " " + i, null);
+                    log.log(EventLog.Level.DEBUG, "hidden", null);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        TrafficGeneratorProto.Car car = TrafficGeneratorProto.Car.newBuilder().setArrivalTimestamp(0L)
+                .setDepartureTimestamp(1000L).build();
+        log.log(EventLog.Level.WARNING, "car ", car);
+        log.flush();
+
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        Assert.assertEquals(4001, lines.length);
+        int[] next = new int[threads.length];
+        for (int i = 0; i < 4000; i++) {
+            String[] parts = lines[i].substring("INFO: t".length()).split(" ");
+            int id = Integer.parseInt(parts[0]);
+            // each thread's lines come out in the order it logged them
+            Assert.assertEquals(next[id]++, Integer.parseInt(parts[1]));
+        }
+        Assert.assertEquals("WARNING: car " + DataFormatter.format(car), lines[4000]);
+        Assert.assertEquals(0, log.droppedCount());
+    }
+
+    @Test
+    public void testFullRingDrops() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // a writer that takes its time
+        PrintStream slow = new PrintStream(bytes) {
+            @Override
+            public void print(Object obj) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // go on
+                }
+                super.print(obj);
+            }
+        };
+        EventLog log = new EventLog(EventLog.Level.INFO, 4, slow);
+        for (int i = 0; i < 100; i++) {
+            log.log(EventLog.Level.INFO, "line", null);
+        }
+        Assert.assertTrue(log.droppedCount() > 0);
+    }
+
+    @Test
+    public void testFormatMatchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat reference = new SimpleDateFormat("HH:mm:ss z");
+        for (long t = 0; t < 100000000L; t += 999983L) {
+            Assert.assertEquals(reference.format(t), DataFormatter.format(t));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+
+public class LocalTransportTest {
+
+    @Test
+    public void testCallsServicesOfThisJvmDirectly() throws Exception {
+        ServiceHost host = new ServiceHost("localhost", 18933);
+        host.createContext("/hello", ex -> {
+            byte[] body = "hi".getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+        });
+        host.start();
+        try {
+            LocalTransport t = new LocalTransport((base, path, type, body) -> {
+                throw new AssertionError("left the jvm");
+            });
+            // the hostname doesn't matter, only the port
+            Transport.Reply reply = t.call(new URL("http://somewhere:18933/"), "/hello", "text/plain", new byte[0]);
+            Assert.assertEquals(200, reply.code);
+            Assert.assertEquals("hi", new String(reply.body, StandardCharsets.UTF_8));
+        } finally {
+            host.stop();
+        }
+        Assert.assertFalse(LocalTransport.serves(18933));
+    }
+}
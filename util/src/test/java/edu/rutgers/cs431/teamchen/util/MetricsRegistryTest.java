@@ -0,0 +1,48 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testScrape() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        MetricsRegistry.Counter a = metrics.counter("cars_total", "Cars", "gate", "1");
+        a.inc();
+        a.add(2);
+        // the same name and labels are the same counter
+        Assert.assertSame(a, metrics.counter("cars_total", "Cars", "gate", "1"));
+        metrics.counter("cars_total", "Cars", "gate", "2").inc();
+        AtomicLong depth = new AtomicLong(7);
+        metrics.gauge("queue", "Queue \"depth\"", depth::get);
+
+        MetricsRegistry.Histogram h = metrics.histogram("wait_ms", "Wait", new long[]{1, 10, 100});
+        for (long v : new long[]{0, 1, 5, 10, 50, 1000}) {
+            h.record(v);
+        }
+        Assert.assertEquals(6, h.count());
+        Assert.assertEquals(1066, h.sum());
+
+        String text = metrics.scrape();
+        Assert.assertTrue(text.contains("# TYPE cars_total counter\n"));
+        Assert.assertTrue(text.contains("cars_total{gate=\"1\"} 3\n"));
+        Assert.assertTrue(text.contains("cars_total{gate=\"2\"} 1\n"));
+        Assert.assertTrue(text.contains("queue 7\n"));
+        Assert.assertTrue(text.contains("wait_ms_bucket{le=\"1\"} 2\n"));
+        Assert.assertTrue(text.contains("wait_ms_bucket{le=\"10\"} 4\n"));
+        Assert.assertTrue(text.contains("wait_ms_bucket{le=\"100\"} 5\n"));
+        Assert.assertTrue(text.contains("wait_ms_bucket{le=\"+Inf\"} 6\n"));
+        Assert.assertTrue(text.contains("wait_ms_count 6\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOneNameOneType() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("x", "X");
+        metrics.histogram("x", "X");
+    }
+}
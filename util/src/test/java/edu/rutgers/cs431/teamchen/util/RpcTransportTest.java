@@ -0,0 +1,131 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class RpcTransportTest {
+
+    // answers with the request body reversed
+    private static ServiceHost echoHost(int httpPort) throws IOException {
+        ServiceHost host = new ServiceHost("localhost", httpPort);
+        host.createContext("/echo", ex -> {
+            InputStream in = ex.getRequestBody();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                bytes.write(b);
+            }
+            byte[] body = new StringBuilder(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).reverse()
+                    .toString().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain");
+            ex.sendResponseHeaders(200, body.length);
+            OutputStream out = ex.getResponseBody();
+            out.write(body);
+            out.close();
+        });
+        host.start();
+        return host;
+    }
+
+    private static String echo(Transport t, URL base, String s) throws IOException {
+        Transport.Reply reply = t.call(base, "/echo", "text/plain", s.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(200, reply.code);
+        return new String(reply.body, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPipelinedCallsShareAConnection() throws Exception {
+        ServiceHost host = echoHost(18931);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            Assert.assertEquals(18931 + SystemConfig.RPC_PORT_OFFSET, host.getRpcPort());
+            RpcTransport t = new RpcTransport((base, path, type, body) -> {
+                throw new AssertionError("fell back to http");
+            });
+            URL base = new URL("http://localhost:18931/");
+
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String s = "car-" + i;
+                replies.add(callers.submit(() -> echo(t, base, s)));
+            }
+            for (int i = 0; i < 500; i++) {
+                Assert.assertEquals(new StringBuilder("car-" + i).reverse().toString(), replies.get(i).get());
+            }
+            Assert.assertEquals(404, t.call(base, "/nothing", "text/plain", new byte[0]).code);
+        } finally {
+            callers.shutdownNow();
+            host.stop();
+        }
+    }
+
+    @Test
+    public void testFallsBackToHttp() throws Exception {
+        // the rpc port is taken so the host serves http only
+        ServerSocket taken = new ServerSocket(18932 + SystemConfig.RPC_PORT_OFFSET);
+        ServiceHost host = echoHost(18932);
+        try {
+            Assert.assertEquals(-1, host.getRpcPort());
+            taken.close();
+            RpcTransport t = new RpcTransport(new HttpTransport());
+            Assert.assertEquals("olleh", echo(t, new URL("http://localhost:18932/"), "hello"));
+        } finally {
+            host.stop();
+        }
+    }
+
+    @Test
+    public void testHighHttpPortServedOverHttpOnly() throws Exception {
+        // the offset would take the rpc port past 65535
+        ServiceHost host = echoHost(60931);
+        try {
+            Assert.assertEquals(-1, host.getRpcPort());
+            RpcTransport t = new RpcTransport(new HttpTransport());
+            Assert.assertEquals("olleh", echo(t, new URL("http://localhost:60931/"), "hello"));
+        } finally {
+            host.stop();
+        }
+    }
+
+    @Test
+    public void testFallsBackToHttpFromAListenerThatIsNoRpcService() throws Exception {
+        // something else holds the rpc port and answers like a web server
+        ServerSocket other = new ServerSocket(18936 + SystemConfig.RPC_PORT_OFFSET);
+        Thread answering = new Thread(() -> {
+            try (Socket s = other.accept()) {
+                s.getOutputStream().write("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                s.getOutputStream().flush();
+            } catch (IOException e) {
+                // closed by the test
+            }
+        });
+        answering.start();
+        ServiceHost host = echoHost(18936);
+        try {
+            Assert.assertEquals(-1, host.getRpcPort());
+            RpcTransport t = new RpcTransport(new HttpTransport());
+            URL base = new URL("http://localhost:18936/");
+            Assert.assertEquals("olleh", echo(t, base, "hello"));
+            Assert.assertEquals("dlrow", echo(t, base, "world"));
+        } finally {
+            other.close();
+            answering.join();
+            host.stop();
+        }
+    }
+}
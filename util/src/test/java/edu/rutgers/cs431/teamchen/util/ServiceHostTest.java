@@ -0,0 +1,61 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class ServiceHostTest {
+
+    @Test
+    public void testSlowHandlerDoesNotHoldUpOthers() throws Exception {
+        for (ExecutionProfile profile : ExecutionProfile.values()) {
+            ServiceHost host = new ServiceHost("localhost", 18935, profile);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch slowStarted = new CountDownLatch(1);
+            host.createContext("/slow", ex -> {
+                slowStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // answer anyway
+                }
+                ex.sendResponseHeaders(200, -1);
+                ex.close();
+            });
+            host.createContext("/fast", ex -> {
+                ex.sendResponseHeaders(200, -1);
+                ex.close();
+            });
+            host.start();
+            try {
+                URL base = new URL("http://localhost:18935/");
+                Thread slow = new Thread(() -> {
+                    try {
+                        new HttpTransport().call(base, "/slow", "text/plain", new byte[0]);
+                    } catch (Exception e) {
+                        // the assertions below fail
+                    }
+                });
+                slow.start();
+                Assert.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+
+                Assert.assertEquals(200, new HttpTransport().call(base, "/fast", "text/plain", new byte[0]).code);
+                InstrumentedExecutor.Stats stats = host.getExecutor().stats();
+                Assert.assertEquals(profile.available().name().toLowerCase(), stats.profile);
+                // the slow one, and the fast one if it hasn't wound up yet
+                Assert.assertTrue(stats.active >= 1);
+
+                release.countDown();
+                slow.join(5000);
+                Assert.assertTrue(host.getExecutor().stats().peakActive >= 2);
+            } finally {
+                release.countDown();
+                host.stop();
+            }
+        }
+    }
+}
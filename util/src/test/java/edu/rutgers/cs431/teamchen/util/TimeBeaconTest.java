@@ -0,0 +1,27 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TimeBeaconTest {
+
+    @Test
+    public void testRoundTrip() {
+        byte[] buf = new TimeBeacon(42L, 1_500_000_000_123L).encode();
+        TimeBeacon b = TimeBeacon.decode(buf, 0, buf.length);
+
+        Assert.assertEquals(TimeBeacon.SIZE, buf.length);
+        Assert.assertEquals(42L, b.seq);
+        Assert.assertEquals(1_500_000_000_123L, b.timestamp);
+    }
+
+    @Test
+    public void testRejectsForeignDatagrams() {
+        byte[] buf = new TimeBeacon(1L, 2L).encode();
+        buf[0] ^= 1;
+
+        Assert.assertNull(TimeBeacon.decode(buf, 0, buf.length));
+        Assert.assertNull(TimeBeacon.decode(new byte[8], 0, 8));
+    }
+}
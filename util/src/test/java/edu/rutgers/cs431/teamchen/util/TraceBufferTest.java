@@ -0,0 +1,48 @@
+package edu.rutgers.cs431.teamchen.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+
+public class TraceBufferTest {
+
+    @Test
+    public void testBreakdown() {
+        TraceBuffer traces = new TraceBuffer(1000);
+        for (long id = 1; id <= 100; id++) {
+            traces.record(id, TraceBuffer.TOKEN, "gate:1", 1000, 1000 + id);
+            traces.record(id, TraceBuffer.QUEUE, "gate:1", 900, 1000);
+            traces.record(id, TraceBuffer.PARK, "parkingspace", 2000, 2500);
+        }
+        // untraced cars are left out
+        traces.record(0L, TraceBuffer.TOKEN, "gate:1", 1000, 9000);
+
+        List<TraceBuffer.StageSummary> stages = traces.breakdown();
+        Assert.assertEquals(3, stages.size());
+        // in the order the cars go through them
+        Assert.assertEquals(TraceBuffer.QUEUE, stages.get(0).stage);
+        Assert.assertEquals(TraceBuffer.TOKEN, stages.get(1).stage);
+        Assert.assertEquals(TraceBuffer.PARK, stages.get(2).stage);
+        Assert.assertEquals("parkingspace", stages.get(2).component);
+
+        TraceBuffer.StageSummary token = stages.get(1);
+        Assert.assertEquals(100, token.count);
+        Assert.assertEquals(50.5, token.mean, 0.0);
+        Assert.assertEquals(100, token.max);
+        Assert.assertEquals(Long.toHexString(100), token.slowestTrace);
+        Assert.assertEquals(3, traces.trace(42).size());
+    }
+
+    @Test
+    public void testKeepsTheLatest() {
+        TraceBuffer traces = new TraceBuffer(10);
+        for (long id = 1; id <= 25; id++) {
+            traces.record(id, TraceBuffer.QUEUE, "gate:1", 1, 2);
+        }
+        Assert.assertEquals(10, traces.breakdown().get(0).count);
+        Assert.assertTrue(traces.trace(15).isEmpty());
+        Assert.assertEquals(1, traces.trace(16).size());
+    }
+}